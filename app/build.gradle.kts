@@ -52,6 +52,7 @@ dependencies {
     implementation("com.google.android.material:material:1.11.0")
     implementation("androidx.constraintlayout:constraintlayout:2.1.4")
     implementation("androidx.fragment:fragment-ktx:1.6.1")
+    implementation("androidx.recyclerview:recyclerview:1.3.2")
 
 
     // Navigation
@@ -75,6 +76,13 @@ dependencies {
     implementation("com.github.bumptech.glide:glide:4.16.0")
     implementation(libs.firebase.firestore.ktx)
     kapt("com.github.bumptech.glide:compiler:4.16.0")
+    implementation("com.github.bumptech.glide:recyclerview-integration:4.16.0") {
+        // La versión de RecyclerView la fija la dependencia de AndroidX de arriba
+        isTransitive = false
+    }
+
+    // Orientación EXIF de las fotos al generar miniaturas (ExifInterface de la plataforma no lee streams en API 23)
+    implementation("androidx.exifinterface:exifinterface:1.3.7")
 
     // Testing
     testImplementation("junit:junit:4.13.2")
@@ -0,0 +1,197 @@
+package com.example.myapplication.adapters
+
+import android.os.Debug
+import android.util.Log
+import android.view.Choreographer
+import androidx.recyclerview.widget.RecyclerView
+import androidx.test.core.app.ActivityScenario
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.myapplication.R
+import com.example.myapplication.activities.ProductosActivity
+import com.example.myapplication.models.Producto
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tiempos de frame con una lista de 2.000 productos: desplazamiento continuo
+ * y cambios de cantidad uno por frame. Cada frame se mide como la distancia
+ * entre los tiempos de vsync que entrega Choreographer, de modo que un frame
+ * que se pasa del presupuesto aparece como un intervalo más largo.
+ *
+ * Aparte se miden los bytes asignados por cada enlace de fila. Los
+ * percentiles y las asignaciones se escriben en logcat con la etiqueta
+ * ListaFrames.
+ */
+@RunWith(AndroidJUnit4::class)
+class ListaFramesBenchmark {
+
+    companion object {
+        private const val TAG = "ListaFrames"
+        private const val CANTIDAD_PRODUCTOS = 2_000
+        private const val FRAMES = 120
+        private const val DESPLAZAMIENTO_PX = 60
+
+        // Dos vsync a 60 Hz: por encima, la mitad de los frames ya se perdería
+        private const val LIMITE_MEDIANA_MS = 34.0
+
+        // Asignar textos ya hechos: lo que quede es de TextView, no del formateo
+        private const val LIMITE_BYTES_TEXTOS = 256
+    }
+
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private lateinit var scenario: ActivityScenario<ProductosActivity>
+    private lateinit var recyclerView: RecyclerView
+
+    private val productos = List(CANTIDAD_PRODUCTOS) { i ->
+        Producto(id = i + 1, nombre = "Producto $i", descripcion = "Descripción $i",
+            precioCentavos = 1_000L + i * 100L, stock = 100, cantidad = 1)
+    }
+
+    @Before
+    fun setUp() {
+        scenario = ActivityScenario.launch(ProductosActivity::class.java)
+        scenario.onActivity { recyclerView = it.findViewById(R.id.recyclerViewProductos) }
+    }
+
+    @After
+    fun tearDown() {
+        scenario.close()
+    }
+
+    @Test
+    fun desplazamientoProductos() {
+        instrumentation.runOnMainSync {
+            recyclerView.adapter = ProductoAdapter(recyclerView.context, productos, {}, {}, {})
+        }
+        instrumentation.waitForIdleSync()
+
+        val intervalos = medirFrames { recyclerView.scrollBy(0, DESPLAZAMIENTO_PX) }
+        reportar("desplazamiento ProductoAdapter", intervalos)
+    }
+
+    /**
+     * Bytes asignados en el hilo principal por cada onBindViewHolder, sin el
+     * trabajo del frame: un mismo ViewHolder se enlaza con filas distintas.
+     * Se miden el enlace completo del catálogo, su enlace parcial de textos y
+     * el cambio de cantidad del carrito, que llega también como payload.
+     */
+    @Test
+    fun asignacionesPorEnlace() {
+        var catalogoCompleto = 0L
+        var catalogoTextos = 0L
+        var carritoCantidad = 0L
+        instrumentation.runOnMainSync {
+            val productoAdapter = ProductoAdapter(recyclerView.context, productos, {}, {}, {})
+            val filaProducto = productoAdapter.onCreateViewHolder(recyclerView, 0)
+            val textos = mutableListOf<Any>(ProductoDiff.PAYLOAD_TEXTO)
+            catalogoCompleto = medirEnlaces { productoAdapter.onBindViewHolder(filaProducto, it) }
+            catalogoTextos = medirEnlaces { productoAdapter.onBindViewHolder(filaProducto, it, textos) }
+
+            val carritoAdapter = CarritoAdapter(productos, {}, { _, _ -> })
+            val filaCarrito = carritoAdapter.onCreateViewHolder(recyclerView, 0)
+            val cantidad = mutableListOf<Any>(ProductoDiff.PAYLOAD_CANTIDAD)
+            carritoCantidad = medirEnlaces { carritoAdapter.onBindViewHolder(filaCarrito, it, cantidad) }
+        }
+
+        Log.i(TAG, "bytes por enlace: catálogo completo $catalogoCompleto, catálogo textos $catalogoTextos, " +
+                "cantidad del carrito $carritoCantidad")
+        // Los textos del catálogo ya llegan formateados en cada Producto
+        assertTrue("catálogo textos: $catalogoTextos bytes por enlace", catalogoTextos < LIMITE_BYTES_TEXTOS)
+    }
+
+    @Test
+    fun cambiosDeCantidadCarrito() {
+        val cambiosCompletos = intArrayOf(0)
+        val cambiosParciales = intArrayOf(0)
+        lateinit var adapter: CarritoAdapter
+        instrumentation.runOnMainSync {
+            adapter = CarritoAdapter(productos, {}, { _, _ -> })
+            adapter.registerAdapterDataObserver(object : RecyclerView.AdapterDataObserver() {
+                override fun onChanged() {
+                    cambiosCompletos[0]++
+                }
+
+                override fun onItemRangeChanged(positionStart: Int, itemCount: Int, payload: Any?) {
+                    if (payload == null) cambiosCompletos[0]++ else cambiosParciales[0] += itemCount
+                }
+            })
+            recyclerView.adapter = adapter
+        }
+        instrumentation.waitForIdleSync()
+
+        // Un cambio de cantidad por frame sobre las primeras filas visibles, entregado
+        // como lo hace CarritoRepositorio: una lista nueva con una copia de la línea
+        val actual = productos.toMutableList()
+        val intervalos = medirFrames { frame ->
+            val indice = frame % 5
+            actual[indice] = actual[indice].copy(cantidad = 2 + frame)
+            adapter.updateProductos(actual.toList())
+        }
+        instrumentation.waitForIdleSync()
+        reportar("cantidad CarritoAdapter", intervalos)
+
+        assertEquals("Ningún cambio de cantidad debe rehacer filas completas", 0, cambiosCompletos[0])
+        // Puede ser menos de uno por frame: un diff pendiente se descarta si llega otra lista
+        assertTrue(cambiosParciales[0] > 0)
+    }
+
+    /** Intervalos en nanosegundos entre FRAMES + 1 frames consecutivos, ejecutando porFrame en cada uno. */
+    private fun medirFrames(porFrame: (Int) -> Unit): LongArray {
+        val intervalos = LongArray(FRAMES)
+        val terminado = CountDownLatch(1)
+        instrumentation.runOnMainSync {
+            val choreographer = Choreographer.getInstance()
+            choreographer.postFrameCallback(object : Choreographer.FrameCallback {
+                private var anterior = 0L
+                private var frame = -1
+
+                override fun doFrame(frameTimeNanos: Long) {
+                    if (frame >= 0) intervalos[frame] = frameTimeNanos - anterior
+                    anterior = frameTimeNanos
+                    frame++
+                    if (frame == FRAMES) {
+                        terminado.countDown()
+                        return
+                    }
+                    porFrame(frame)
+                    choreographer.postFrameCallback(this)
+                }
+            })
+        }
+        assertTrue("Los frames no terminaron", terminado.await(30, TimeUnit.SECONDS))
+        return intervalos
+    }
+
+    /**
+     * Promedio de bytes asignados por este hilo en cada enlace, tras una
+     * pasada de calentamiento sobre todas las filas. Debe llamarse en el
+     * hilo principal.
+     */
+    @Suppress("DEPRECATION")
+    private fun medirEnlaces(enlazar: (Int) -> Unit): Long {
+        repeat(CANTIDAD_PRODUCTOS) { enlazar(it) }
+        Debug.resetThreadAllocSize()
+        Debug.startAllocCounting()
+        try {
+            repeat(CANTIDAD_PRODUCTOS) { enlazar(it) }
+        } finally {
+            Debug.stopAllocCounting()
+        }
+        return Debug.getThreadAllocSize().toLong() / CANTIDAD_PRODUCTOS
+    }
+
+    private fun reportar(nombre: String, intervalos: LongArray) {
+        val ms = intervalos.map { it / 1_000_000.0 }.sorted()
+        val mediana = ms[ms.size / 2]
+        val p90 = ms[ms.size * 9 / 10]
+        Log.i(TAG, "$nombre: mediana ${"%.1f".format(mediana)} ms, p90 ${"%.1f".format(p90)} ms, " +
+                "máximo ${"%.1f".format(ms.last())} ms")
+        assertTrue("$nombre: mediana de ${"%.1f".format(mediana)} ms", mediana < LIMITE_MEDIANA_MS)
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.myapplication.database
+
+import android.content.ContentValues
+import android.content.Context
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.Collections
+
+/**
+ * Pruebas de las operaciones de carrito basadas en conjuntos, sobre una base
+ * aparte: no tocan el carrito ni los productos de la aplicación.
+ */
+@RunWith(AndroidJUnit4::class)
+class CarritoDatabaseTest {
+
+    private lateinit var context: Context
+    private lateinit var db: DatabaseHelper
+    private val sentencias: MutableList<String> = Collections.synchronizedList(ArrayList())
+
+    companion object {
+        private const val BASE_PRUEBA = "prueba_carrito.db"
+        private const val LINEAS = 5_000
+        private const val STOCK_INICIAL = 10
+        private const val CANTIDAD = 3
+    }
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        context.deleteDatabase(BASE_PRUEBA)
+        db = DatabaseHelper.paraPruebas(context, BASE_PRUEBA)
+        db.trazarSentencias { sentencias.add(it) }
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+        context.deleteDatabase(BASE_PRUEBA)
+    }
+
+    @Test
+    fun vaciarCarrito_restauraStockConDosSentencias() {
+        val sqlite = db.writableDatabase
+        sqlite.beginTransaction()
+        try {
+            for (i in 0 until LINEAS) {
+                val producto = ContentValues().apply {
+                    put(DatabaseHelper.COLUMN_NOMBRE, "Producto prueba $i")
+                    put(DatabaseHelper.COLUMN_PRECIO_CENTAVOS, 100L)
+                    put(DatabaseHelper.COLUMN_STOCK, STOCK_INICIAL - CANTIDAD)
+                }
+                val id = sqlite.insertOrThrow(DatabaseHelper.TABLE_PRODUCTOS, null, producto)
+                val linea = ContentValues().apply {
+                    put(DatabaseHelper.COLUMN_ID, id)
+                    put(DatabaseHelper.COLUMN_CANTIDAD, CANTIDAD)
+                }
+                sqlite.insertOrThrow(DatabaseHelper.TABLE_CARRITO, null, linea)
+            }
+            sqlite.setTransactionSuccessful()
+        } finally {
+            sqlite.endTransaction()
+        }
+
+        assertEquals(LINEAS, db.vaciarCarrito())
+
+        // Lo mismo con 5.000 líneas que con una: un UPDATE correlacionado y un DELETE
+        assertEquals(sentencias.toString(), 2, sentencias.size)
+        assertTrue(sentencias[0], sentencias[0].startsWith("UPDATE ${DatabaseHelper.TABLE_PRODUCTOS} "))
+        assertTrue(sentencias[0], sentencias[0].contains(
+            "IN (SELECT ${DatabaseHelper.COLUMN_ID} FROM ${DatabaseHelper.TABLE_CARRITO})"))
+        assertEquals("DELETE FROM ${DatabaseHelper.TABLE_CARRITO}", sentencias[1])
+
+        assertEquals(0, db.obtenerCantidadProductosEnCarrito())
+        sqlite.rawQuery(
+            "SELECT COUNT(*) FROM ${DatabaseHelper.TABLE_PRODUCTOS} WHERE ${DatabaseHelper.COLUMN_STOCK} = ?",
+            arrayOf(STOCK_INICIAL.toString())
+        ).use { cursor ->
+            assertTrue(cursor.moveToFirst())
+            assertEquals(LINEAS, cursor.getInt(0))
+        }
+    }
+
+    @Test
+    fun eliminarDelCarrito_devuelveUnidadesAlStock() {
+        val id = db.insertarProducto("Producto prueba", "", 100L, null, STOCK_INICIAL, "General").toInt()
+
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, db.agregarAlCarrito(id, CANTIDAD))
+        assertEquals(STOCK_INICIAL - CANTIDAD, db.obtenerStockProducto(id))
+
+        sentencias.clear()
+        assertEquals(1, db.eliminarDelCarrito(id))
+        assertEquals(2, sentencias.size)
+        assertEquals(STOCK_INICIAL, db.obtenerStockProducto(id))
+        assertEquals(0, db.eliminarDelCarrito(id))
+        assertEquals(STOCK_INICIAL, db.obtenerStockProducto(id))
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.myapplication.database
+
+import android.content.Context
+import android.database.sqlite.SQLiteException
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import kotlin.concurrent.thread
+
+/**
+ * Pruebas del escritor de la base: orden, lotes, errores aislados y avisos
+ * después del commit. Usa su propio archivo (el escritor necesita WAL, así
+ * que no sirve una base en memoria).
+ */
+@RunWith(AndroidJUnit4::class)
+class ColaEscriturasTest {
+
+    private lateinit var context: Context
+    private lateinit var db: DatabaseHelper
+
+    companion object {
+        private const val BASE_PRUEBA = "prueba_escrituras.db"
+        private const val ESCRITURAS = 200
+    }
+
+    @Before
+    fun setUp() {
+        context = InstrumentationRegistry.getInstrumentation().targetContext
+        context.deleteDatabase(BASE_PRUEBA)
+        db = DatabaseHelper.paraPruebas(context, BASE_PRUEBA)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+        context.deleteDatabase(BASE_PRUEBA)
+    }
+
+    @Test
+    fun escriturasSeguidasSeConfirmanEnOrdenYEnLotes() {
+        val id = insertarProductoPrueba()
+        val cola = db.escrituras()
+        val lotesAntes = cola.lotes()
+        val escriturasAntes = cola.escrituras()
+
+        val pendientes = (1..ESCRITURAS).map { stock -> cola.encolar { db.actualizarStockProducto(id, stock) } }
+        pendientes.forEach { assertTrue(it.esperar()) }
+
+        // En orden: queda la última
+        assertEquals(ESCRITURAS, db.obtenerStockProducto(id))
+        assertEquals(ESCRITURAS.toLong(), cola.escrituras() - escriturasAntes)
+        val lotes = cola.lotes() - lotesAntes
+        assertTrue("$lotes lotes para $ESCRITURAS escrituras", lotes < ESCRITURAS)
+        assertTrue(cola.profundidadMaxima() > 1)
+    }
+
+    @Test
+    fun unaEscrituraQueFallaNoDeshaceLasDemas() {
+        val id = insertarProductoPrueba()
+        val cola = db.escrituras()
+
+        // Seguidas, para que caigan en el mismo lote
+        val antes = cola.encolar { db.actualizarStockProducto(id, 5) }
+        val falla = cola.encolar<Boolean> { throw IllegalStateException("escritura de prueba") }
+        val despues = cola.encolar { db.actualizarStockProducto(id, 7) }
+
+        assertTrue(antes.esperar())
+        assertTrue(despues.esperar())
+        try {
+            falla.esperar()
+            fail("La escritura debía relanzar su error")
+        } catch (e: IllegalStateException) {
+            assertEquals("escritura de prueba", e.message)
+        }
+        assertEquals(7, db.obtenerStockProducto(id))
+    }
+
+    @Test
+    fun unaTransaccionAnidadaQueFallaEnSilencioSeReportaComoError() {
+        val id = insertarProductoPrueba()
+        val cola = db.escrituras()
+        val avisos = ArrayList<Set<String>>()
+        val suscripcion = db.invalidacion().observar({ avisos.add(it) }, DatabaseHelper.TABLE_PRODUCTOS)
+
+        val antes = cola.encolar { db.actualizarStockProducto(id, 5) }
+        // Escribe y después atrapa el error de una transacción anidada: SQLite deshace el lote al cerrarlo
+        val tragada = cola.encolar {
+            db.actualizarStockProducto(id, 6)
+            val sqlite = db.writableDatabase
+            try {
+                sqlite.beginTransaction()
+                try {
+                    throw IllegalStateException("anidada de prueba")
+                } finally {
+                    sqlite.endTransaction()
+                }
+            } catch (e: IllegalStateException) {
+                // La tarea sigue como si nada
+            }
+            true
+        }
+
+        try {
+            assertTrue(antes.esperar())
+            try {
+                tragada.esperar()
+                fail("La escritura deshecha no debía darse por confirmada")
+            } catch (e: SQLiteException) {
+                // Esperado
+            }
+        } finally {
+            suscripcion.cancelar()
+        }
+        // Queda lo de la escritura anterior y solo ella avisó
+        assertEquals(5, db.obtenerStockProducto(id))
+        assertEquals(1, avisos.size)
+    }
+
+    @Test
+    fun avisaDespuesDelCommitConElHiloQuePidio() {
+        val id = insertarProductoPrueba()
+        val hilo = Thread.currentThread()
+        var origen: Thread? = null
+        var stockVisto = -1
+
+        val suscripcion = db.invalidacion().observar({
+            origen = db.invalidacion().origen()
+            // Otra conexión solo ve lo confirmado
+            thread { stockVisto = db.obtenerStockProducto(id) }.join()
+        }, DatabaseHelper.TABLE_PRODUCTOS)
+        try {
+            // El método ya pasa por el escritor
+            assertTrue(db.actualizarStockProducto(id, 9))
+        } finally {
+            suscripcion.cancelar()
+        }
+
+        assertSame(hilo, origen)
+        assertEquals(9, stockVisto)
+    }
+
+    @Test
+    fun escribirConUnaTransaccionPropiaAbiertaFallaEnLugarDeBloquearse() {
+        val id = insertarProductoPrueba()
+        val sqlite = db.writableDatabase
+        sqlite.beginTransaction()
+        try {
+            db.actualizarStockProducto(id, 3)
+            fail("La escritura debía rechazarse")
+        } catch (e: IllegalStateException) {
+            // El escritor habría esperado el bloqueo de esta transacción
+        } finally {
+            sqlite.endTransaction()
+        }
+        assertEquals(0, db.obtenerStockProducto(id))
+    }
+
+    private fun insertarProductoPrueba(): Int {
+        return db.insertarProducto("Producto prueba", "", 100L, null, 0, "General").toInt()
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.myapplication.database
+
+import android.database.sqlite.SQLiteDatabase
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.example.myapplication.database.DatabaseHelper.*
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Verifica que los triggers mantengan la fila de estadísticas igual a
+ * recalcularla desde las tablas base.
+ */
+@RunWith(AndroidJUnit4::class)
+class EstadisticasTest {
+
+    private lateinit var db: SQLiteDatabase
+
+    @Before
+    fun setUp() {
+        db = SQLiteDatabase.create(null)
+        Esquema.crear(db)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun triggersCoincidenConRecalculo() {
+        db.execSQL("INSERT INTO $TABLE_USUARIOS ($COLUMN_USERNAME, $COLUMN_PASSWORD, $COLUMN_HASH_PARAMETROS, $COLUMN_ROL) " +
+                "VALUES ('ana', x'00', 'sha256', 'cliente')")
+        db.execSQL("INSERT INTO $TABLE_USUARIOS ($COLUMN_USERNAME, $COLUMN_PASSWORD, $COLUMN_HASH_PARAMETROS, $COLUMN_ROL) " +
+                "VALUES ('luis', x'00', 'sha256', 'cliente')")
+        db.execSQL("DELETE FROM $TABLE_USUARIOS WHERE $COLUMN_USERNAME = 'luis'")
+
+        for (i in 1..3) {
+            db.execSQL("INSERT INTO $TABLE_PRODUCTOS ($COLUMN_NOMBRE, $COLUMN_PRECIO_CENTAVOS, $COLUMN_STOCK) VALUES ('P$i', ${i * 1000 + 50}, 100)")
+        }
+        db.execSQL("INSERT INTO $TABLE_CARRITO ($COLUMN_ID, $COLUMN_CANTIDAD) VALUES (1, 2)")
+        db.execSQL("INSERT INTO $TABLE_CARRITO ($COLUMN_ID, $COLUMN_CANTIDAD) VALUES (2, 1)")
+        db.execSQL("INSERT INTO $TABLE_CARRITO ($COLUMN_ID, $COLUMN_CANTIDAD) VALUES (3, 4)")
+        db.execSQL("UPDATE $TABLE_CARRITO SET $COLUMN_CANTIDAD = 5 WHERE $COLUMN_ID = 2")
+        db.execSQL("UPDATE $TABLE_PRODUCTOS SET $COLUMN_PRECIO_CENTAVOS = 9900 WHERE $COLUMN_ID = 1")
+        db.execSQL("UPDATE $TABLE_PRODUCTOS SET $COLUMN_STOCK = 1 WHERE $COLUMN_ID = 2")
+        // Eliminar un producto también quita su línea del carrito
+        db.execSQL("DELETE FROM $TABLE_PRODUCTOS WHERE $COLUMN_ID = 3")
+
+        db.execSQL("INSERT INTO $TABLE_ORDENES ($COLUMN_USUARIO_ORDEN, $COLUMN_TOTAL_CENTAVOS) VALUES ('ana', 12025)")
+        db.execSQL("INSERT INTO $TABLE_ORDENES ($COLUMN_USUARIO_ORDEN, $COLUMN_TOTAL_CENTAVOS) VALUES ('ana', 1000)")
+        db.execSQL("DELETE FROM $TABLE_ORDENES WHERE $COLUMN_TOTAL_CENTAVOS = 1000")
+
+        val mantenida = leer()
+        Esquema.recalcularEstadisticas(db)
+        val recalculada = leer()
+
+        assertEquals(recalculada, mantenida)
+        // Valor del carrito y ventas en centavos
+        assertEquals(listOf(1L, 2L, 7L, 9900L * 2 + 2050 * 5, 1L, 12025L), mantenida)
+    }
+
+    @Test
+    fun migracionAVersion18PasaOrdenesACentavos() {
+        val migrada = SQLiteDatabase.create(null)
+        try {
+            // Esquema de la versión 1 llevado hasta la 17 con las órdenes en pesos,
+            // como las creaba la versión 13 en las apps anteriores
+            crearVersion1(migrada)
+            Esquema.migrar(migrada, 1, 12)
+            migrada.execSQL("CREATE TABLE $TABLE_ORDENES ($COLUMN_ORDEN_ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "$COLUMN_USUARIO_ORDEN TEXT NOT NULL, $COLUMN_FECHA_ORDEN DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "total REAL NOT NULL, $COLUMN_ESTADO TEXT NOT NULL DEFAULT '$ESTADO_COMPLETADA')")
+            migrada.execSQL("CREATE TABLE $TABLE_ORDEN_ITEMS ($COLUMN_ITEM_ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "$COLUMN_ORDEN_ID INTEGER NOT NULL, $COLUMN_ID INTEGER NOT NULL, $COLUMN_NOMBRE TEXT NOT NULL, " +
+                    "precio_unitario REAL NOT NULL, $COLUMN_CANTIDAD INTEGER NOT NULL, " +
+                    "FOREIGN KEY($COLUMN_ORDEN_ID) REFERENCES $TABLE_ORDENES($COLUMN_ORDEN_ID) ON DELETE CASCADE)")
+            Esquema.migrar(migrada, 13, 17)
+            migrada.execSQL("INSERT INTO $TABLE_ORDENES ($COLUMN_ORDEN_ID, $COLUMN_USUARIO_ORDEN, total) " +
+                    "VALUES (1, 'ana', 120.25), (2, 'ana', 0.1 + 0.2)")
+            migrada.execSQL("INSERT INTO $TABLE_ORDEN_ITEMS ($COLUMN_ORDEN_ID, $COLUMN_ID, $COLUMN_NOMBRE, " +
+                    "precio_unitario, $COLUMN_CANTIDAD) VALUES (1, 7, 'Lápiz', 1.15, 3)")
+
+            Esquema.migrar(migrada, 17, 18)
+
+            migrada.rawQuery(
+                "SELECT $COLUMN_TOTAL_CENTAVOS, typeof($COLUMN_TOTAL_CENTAVOS) FROM $TABLE_ORDENES " +
+                        "ORDER BY $COLUMN_ORDEN_ID", null
+            ).use { c ->
+                assertTrue(c.moveToNext())
+                assertEquals(12025L, c.getLong(0))
+                assertEquals("integer", c.getString(1))
+                assertTrue(c.moveToNext())
+                assertEquals(30L, c.getLong(0))
+            }
+            migrada.rawQuery("SELECT $COLUMN_PRECIO_UNITARIO_CENTAVOS FROM $TABLE_ORDEN_ITEMS", null).use { c ->
+                assertTrue(c.moveToFirst())
+                assertEquals(115L, c.getLong(0))
+            }
+            // El resumen se recrea con las ventas ya convertidas
+            assertEquals(listOf(0L, 0L, 0L, 0L, 2L, 12055L), leer(migrada))
+        } finally {
+            migrada.close()
+        }
+    }
+
+    @Test
+    fun migracionDesdeAntesDeLaVersion13CreaOrdenesEnCentavos() {
+        val migrada = SQLiteDatabase.create(null)
+        try {
+            crearVersion1(migrada)
+            Esquema.migrar(migrada, 1, Esquema.VERSION)
+
+            migrada.execSQL("INSERT INTO $TABLE_ORDENES ($COLUMN_ORDEN_ID, $COLUMN_USUARIO_ORDEN, $COLUMN_TOTAL_CENTAVOS) " +
+                    "VALUES (1, 'ana', 12025)")
+            assertEquals(listOf(0L, 0L, 0L, 0L, 1L, 12025L), leer(migrada))
+        } finally {
+            migrada.close()
+        }
+    }
+
+    private fun crearVersion1(db: SQLiteDatabase) {
+        db.execSQL("CREATE TABLE $TABLE_PRODUCTOS ($COLUMN_ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "$COLUMN_NOMBRE TEXT NOT NULL, $COLUMN_DESCRIPCION TEXT, $COLUMN_PRECIO REAL NOT NULL)")
+        db.execSQL("CREATE TABLE $TABLE_USUARIOS ($COLUMN_USUARIO_ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "$COLUMN_USERNAME TEXT NOT NULL UNIQUE, $COLUMN_PASSWORD TEXT NOT NULL, $COLUMN_ROL TEXT NOT NULL)")
+    }
+
+    private fun leer(db: SQLiteDatabase = this.db): List<Long> {
+        db.rawQuery(
+            "SELECT $COLUMN_TOTAL_USUARIOS, $COLUMN_TOTAL_PRODUCTOS, $COLUMN_UNIDADES_CARRITO, " +
+                    "$COLUMN_VALOR_CARRITO, $COLUMN_TOTAL_ORDENES, $COLUMN_TOTAL_VENTAS_CENTAVOS FROM $TABLE_ESTADISTICAS", null
+        ).use { c ->
+            assertTrue(c.moveToFirst())
+            return (0 until c.columnCount).map { c.getLong(it) }
+        }
+    }
+}
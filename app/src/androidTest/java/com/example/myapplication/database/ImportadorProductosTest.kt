@@ -0,0 +1,122 @@
+package com.example.myapplication.database
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Importación en streaming sobre una base en memoria: lotes, upsert por sku,
+ * filas con error y avance.
+ */
+@RunWith(AndroidJUnit4::class)
+class ImportadorProductosTest {
+
+    private lateinit var db: DatabaseHelper
+    private val progreso = ArrayList<Pair<Int, Int>>()
+    private val filasConError = ArrayList<Int>()
+
+    private val listener = object : ImportadorProductos.Listener {
+        override fun onProgreso(procesadas: Int, importadas: Int) {
+            progreso.add(procesadas to importadas)
+        }
+
+        override fun onErrorFila(fila: Int, mensaje: String) {
+            filasConError.add(fila)
+        }
+    }
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = DatabaseHelper.paraPruebas(context, null)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun csvConUpsertActualizaSkuRepetidoYSigueTrasFilasInvalidas() {
+        val csv = """
+            sku,Nombre,descripcion,precio,stock,categoria
+            A-1,Lápiz,"Grafito, HB",1.50,10,Papelería
+            A-2,,Sin nombre,2.00,5,Papelería
+            A-3,Goma,,0.75,abc,Papelería
+            A-1,Lápiz azul,,1.60,12,Papelería
+            A-4,Regla,,3,4,Papelería
+        """.trimIndent()
+
+        val resultado = ImportadorProductos(db)
+            .setTamanoLote(2)
+            .setUpsertPorSku(true)
+            .setListener(listener)
+            .importar(csv.byteInputStream(), ImportadorProductos.Formato.CSV)
+
+        assertEquals(5, resultado.procesadas)
+        assertEquals(3, resultado.importadas)
+        assertEquals(2, resultado.errores)
+        assertEquals(listOf(2, 3), filasConError)
+        // Un aviso por lote de 2 filas válidas y uno al terminar
+        assertEquals(listOf(4 to 2, 5 to 3), progreso)
+
+        assertEquals(2, contarPorSku("A-%"))
+        assertProducto("A-1", "Lápiz azul", 160L, 12)
+        assertProducto("A-4", "Regla", 300L, 4)
+    }
+
+    @Test
+    fun jsonSinUpsertRechazaSkuRepetidoYAceptaClavesEnMayusculas() {
+        val json = """
+            [
+              {"sku": "J-1", "Nombre": "Cuaderno", "Precio": "12.50", "Stock": 3, "categoria": "Papelería"},
+              {"sku": "J-2", "nombre": "Carpeta", "precio": "-1"},
+              {"sku": "J-1", "nombre": "Cuaderno rayado", "precio": "13.00"},
+              {"SKU": "J-3", "NOMBRE": "Mochila", "PRECIO": 45, "extra": {"ignorado": true}}
+            ]
+        """.trimIndent()
+
+        val resultado = ImportadorProductos(db)
+            .setListener(listener)
+            .importar(json.byteInputStream(), ImportadorProductos.Formato.JSON)
+
+        assertEquals(4, resultado.procesadas)
+        assertEquals(2, resultado.importadas)
+        assertEquals(2, resultado.errores)
+        // Precio negativo y sku repetido (índice único) sin upsert
+        assertEquals(listOf(2, 3), filasConError)
+        assertEquals(listOf(4 to 2), progreso)
+
+        assertEquals(2, contarPorSku("J-%"))
+        assertProducto("J-1", "Cuaderno", 1_250L, 3)
+        assertProducto("J-3", "Mochila", 4_500L, 0)
+    }
+
+    private fun contarPorSku(patron: String): Int {
+        db.readableDatabase.rawQuery(
+            "SELECT COUNT(*) FROM ${DatabaseHelper.TABLE_PRODUCTOS} WHERE ${DatabaseHelper.COLUMN_SKU} LIKE ?",
+            arrayOf(patron)
+        ).use { c ->
+            assertTrue(c.moveToFirst())
+            return c.getInt(0)
+        }
+    }
+
+    private fun assertProducto(sku: String, nombre: String, precioCentavos: Long, stock: Int) {
+        db.readableDatabase.rawQuery(
+            "SELECT ${DatabaseHelper.COLUMN_NOMBRE}, ${DatabaseHelper.COLUMN_PRECIO_CENTAVOS}, " +
+                    "${DatabaseHelper.COLUMN_STOCK} FROM ${DatabaseHelper.TABLE_PRODUCTOS} " +
+                    "WHERE ${DatabaseHelper.COLUMN_SKU} = ?",
+            arrayOf(sku)
+        ).use { c ->
+            assertTrue(sku, c.moveToFirst())
+            assertEquals(nombre, c.getString(0))
+            assertEquals(precioCentavos, c.getLong(1))
+            assertEquals(stock, c.getInt(2))
+        }
+    }
+}
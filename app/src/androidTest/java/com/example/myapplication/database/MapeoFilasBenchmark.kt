@@ -0,0 +1,119 @@
+package com.example.myapplication.database
+
+import android.database.Cursor
+import android.database.MatrixCursor
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.example.myapplication.models.Producto
+import com.example.myapplication.models.Usuario
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Tiempo de convertir 100.000 filas en modelos, antes y después de
+ * MapeadorFilas. "Antes" reproduce lo que hacían las pantallas: buscar cada
+ * columna por nombre en cada fila. Las filas salen de un MatrixCursor ya
+ * lleno, así se mide solo el mapeo y no el llenado del CursorWindow.
+ *
+ * Mismo esquema que CalibracionPbkdf2Benchmark: rondas de calentamiento
+ * descartadas y mediana de las medidas. Resultados en logcat con la
+ * etiqueta MapeoFilas.
+ */
+@RunWith(AndroidJUnit4::class)
+class MapeoFilasBenchmark {
+
+    companion object {
+        private const val TAG = "MapeoFilas"
+        private const val FILAS = 100_000
+        private const val RONDAS_CALENTAMIENTO = 3
+        private const val RONDAS_MEDIDAS = 7
+    }
+
+    // Destino de cada fila para que el JIT no elimine el mapeo
+    private var ultimo: Any? = null
+
+    @Test
+    fun mapearProductos() {
+        val cursor = MatrixCursor(arrayOf(
+            DatabaseHelper.COLUMN_ID, DatabaseHelper.COLUMN_NOMBRE, DatabaseHelper.COLUMN_DESCRIPCION,
+            DatabaseHelper.COLUMN_PRECIO_CENTAVOS, DatabaseHelper.COLUMN_IMAGEN_PATH, DatabaseHelper.COLUMN_STOCK,
+            DatabaseHelper.COLUMN_CANTIDAD, DatabaseHelper.COLUMN_CATEGORIA,
+            DatabaseHelper.COLUMN_MINIATURA_LISTA, DatabaseHelper.COLUMN_MINIATURA_DETALLE
+        ), FILAS)
+        for (i in 1..FILAS) {
+            cursor.addRow(arrayOf<Any?>(i, "Producto $i", "Descripción $i", 1_000L + i, "/img/$i.jpg",
+                i % 50, 1, "Categoría ${i % 20}", null, null))
+        }
+
+        val antes = medirMediana(cursor) { c ->
+            Producto(
+                id = c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID)),
+                nombre = c.getString(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOMBRE)),
+                descripcion = c.getString(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DESCRIPCION)) ?: "",
+                precioCentavos = c.getLong(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PRECIO_CENTAVOS)),
+                imagen_path = c.getString(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_IMAGEN_PATH)) ?: "",
+                stock = c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_STOCK)),
+                cantidad = c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CANTIDAD)),
+                categoria = c.getString(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CATEGORIA)) ?: "General",
+                miniaturaLista = c.getString(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_MINIATURA_LISTA)) ?: "",
+                miniaturaDetalle = c.getString(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_MINIATURA_DETALLE)) ?: ""
+            )
+        }
+        val mapeador = MapeadorFilas.productos(cursor)
+        val despues = medirMediana(cursor) { mapeador.leer() }
+
+        reportar("productos", antes, despues)
+        assertEquals(FILAS, MapeadorFilas.productos(cursor.also { it.moveToPosition(-1) }).listar().size)
+        assertTrue("productos: $despues ms >= $antes ms", despues < antes)
+    }
+
+    @Test
+    fun mapearUsuarios() {
+        val cursor = MatrixCursor(arrayOf(
+            DatabaseHelper.COLUMN_USUARIO_ID, DatabaseHelper.COLUMN_USERNAME,
+            DatabaseHelper.COLUMN_ROL, DatabaseHelper.COLUMN_EMAIL
+        ), FILAS)
+        for (i in 1..FILAS) {
+            cursor.addRow(arrayOf<Any?>(i, "usuario$i", if (i % 100 == 0) "admin" else "cliente", "u$i@ejemplo.com"))
+        }
+
+        val antes = medirMediana(cursor) { c ->
+            val rol = c.getString(c.getColumnIndex(DatabaseHelper.COLUMN_ROL))
+            Usuario(
+                id = c.getInt(c.getColumnIndex(DatabaseHelper.COLUMN_USUARIO_ID)),
+                username = c.getString(c.getColumnIndex(DatabaseHelper.COLUMN_USERNAME)),
+                password = "",
+                rol = rol,
+                email = c.getString(c.getColumnIndex(DatabaseHelper.COLUMN_EMAIL)),
+                isAdmin = rol.equals("admin", ignoreCase = true)
+            )
+        }
+        val mapeador = MapeadorFilas.usuarios(cursor)
+        val despues = medirMediana(cursor) { mapeador.leer() }
+
+        reportar("usuarios", antes, despues)
+        assertTrue("usuarios: $despues ms >= $antes ms", despues < antes)
+    }
+
+    /** Mediana en milisegundos de recorrer todas las filas con la conversión dada. */
+    private fun medirMediana(cursor: Cursor, convertir: (Cursor) -> Any): Double {
+        val ronda = {
+            cursor.moveToPosition(-1)
+            while (cursor.moveToNext()) ultimo = convertir(cursor)
+        }
+        repeat(RONDAS_CALENTAMIENTO) { ronda() }
+        val tiempos = LongArray(RONDAS_MEDIDAS) {
+            val inicio = System.nanoTime()
+            ronda()
+            System.nanoTime() - inicio
+        }
+        tiempos.sort()
+        return tiempos[RONDAS_MEDIDAS / 2] / 1_000_000.0
+    }
+
+    private fun reportar(nombre: String, antes: Double, despues: Double) {
+        Log.i(TAG, "$nombre, $FILAS filas: ${"%.1f".format(antes)} ms -> ${"%.1f".format(despues)} ms " +
+                "(${"%.0f".format(despues * 1_000_000 / FILAS)} ns por fila)")
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.myapplication.database
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Las miniaturas solo se registran para la imagen de la que se generaron y
+ * se descartan en cuanto esa imagen cambia.
+ */
+@RunWith(AndroidJUnit4::class)
+class MiniaturasTest {
+
+    private lateinit var db: DatabaseHelper
+    private var productoId = -1
+
+    companion object {
+        private const val CATEGORIA_PRUEBA = "__prueba_miniaturas__"
+    }
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = DatabaseHelper.getInstance(context)
+        productoId = db.insertarProducto("Producto miniatura", "", 1_000L, "/fotos/a.jpg", 5, CATEGORIA_PRUEBA).toInt()
+    }
+
+    @After
+    fun tearDown() {
+        db.writableDatabase.delete(
+            DatabaseHelper.TABLE_PRODUCTOS,
+            "${DatabaseHelper.COLUMN_CATEGORIA} = ?",
+            arrayOf(CATEGORIA_PRUEBA)
+        )
+    }
+
+    @Test
+    fun actualizarMiniaturas_ignoraLasDeUnaImagenAnterior() {
+        assertFalse(db.actualizarMiniaturas(productoId, "/fotos/vieja.jpg", "/m/l.webp", "/m/d.webp"))
+        assertEquals("", db.obtenerProductoPorId(productoId)!!.miniaturaLista)
+
+        assertTrue(db.actualizarMiniaturas(productoId, "/fotos/a.jpg", "/m/l.webp", "/m/d.webp"))
+        val producto = db.obtenerProductoPorId(productoId)!!
+        assertEquals("/m/l.webp", producto.imagenLista())
+        assertEquals("/m/d.webp", producto.imagenDetalle())
+        assertTrue(db.obtenerRutasImagenesEnUso().containsAll(listOf("/fotos/a.jpg", "/m/l.webp", "/m/d.webp")))
+    }
+
+    @Test
+    fun cambiarImagen_descartaMiniaturas() {
+        db.actualizarMiniaturas(productoId, "/fotos/a.jpg", "/m/l.webp", "/m/d.webp")
+
+        // Misma imagen: el resto de la edición no las toca
+        db.actualizarProducto(productoId, "Otro nombre", "", 1_000L, "/fotos/a.jpg", 5, CATEGORIA_PRUEBA)
+        assertEquals("/m/l.webp", db.obtenerProductoPorId(productoId)!!.miniaturaLista)
+
+        db.actualizarProducto(productoId, "Otro nombre", "", 1_000L, "/fotos/b.jpg", 5, CATEGORIA_PRUEBA)
+        val producto = db.obtenerProductoPorId(productoId)!!
+        assertEquals("", producto.miniaturaLista)
+        assertEquals("", producto.miniaturaDetalle)
+        assertEquals("/fotos/b.jpg", producto.imagenLista())
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.myapplication.database
+
+import android.database.sqlite.SQLiteDatabase
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.example.myapplication.database.DatabaseHelper.*
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Revisa con EXPLAIN QUERY PLAN las sentencias de DatabaseHelper e
+ * ImportadorProductos sobre el esquema declarado en Esquema. Falla si una
+ * recorre una tabla sin índice o necesita ordenar en un B-tree temporal,
+ * salvo las marcadas como permitidas (tablas pequeñas por diseño o
+ * agregados de toda la tabla).
+ *
+ * Se usan las mismas constantes SQL que ejecutan los métodos; una sentencia
+ * nueva en DatabaseHelper debe agregarse a esta lista.
+ */
+@RunWith(AndroidJUnit4::class)
+class PlanConsultasTest {
+
+    private lateinit var db: SQLiteDatabase
+
+    private class Consulta(
+        val nombre: String,
+        val sql: String,
+        vararg val args: String,
+        val permitida: String? = null
+    )
+
+    companion object {
+        // SCAN aceptable: recorre un índice, la clave primaria, un índice FTS o una fila constante
+        private val SCAN_CON_INDICE = Regex(
+            "USING (COVERING )?INDEX|USING INTEGER PRIMARY KEY|VIRTUAL TABLE INDEX|CONSTANT ROW"
+        )
+        private val SCAN = Regex("^SCAN (TABLE )?\\w+")
+
+        private const val LIMITE = 30
+        private const val RESUMEN = "resumen de una sola fila"
+        private const val CARRITO_PEQUENO = "el carrito completo es pequeño"
+        private val RANGO_FECHAS = arrayOf("2024-01-01 00:00:00", "2024-02-01 00:00:00")
+    }
+
+    private val consultas = listOf(
+        // Productos
+        Consulta("obtenerTodosLosProductos", SQL_TODOS_LOS_PRODUCTOS),
+        Consulta("obtenerPaginaProductos primera página",
+            sqlPaginaProductos(false, false, false, LIMITE)),
+        Consulta("obtenerPaginaProductos siguiente página",
+            sqlPaginaProductos(true, false, false, LIMITE), "Laptop", "Laptop", "3"),
+        Consulta("obtenerPaginaProductos por categoría",
+            sqlPaginaProductos(true, true, false, LIMITE), "Laptop", "Laptop", "3", "Electrónicos"),
+        Consulta("obtenerPaginaProductos con búsqueda",
+            sqlPaginaProductos(false, false, true, LIMITE), "lap*",
+            permitida = "el orden se aplica solo sobre las coincidencias del índice de texto"),
+        Consulta("obtenerProductosPorCategoria", SQL_PRODUCTOS_POR_CATEGORIA, "Electrónicos"),
+        Consulta("buscarProductos sin texto", sqlBuscarProductos(false, 50)),
+        Consulta("buscarProductos", sqlBuscarProductos(true, 50), "nombre:lap*", "lap*",
+            permitida = "agrupa y ordena solo las coincidencias del índice de texto"),
+        Consulta("obtenerCategorias", SQL_CATEGORIAS),
+        Consulta("obtenerStockProducto", SQL_STOCK_PRODUCTO, "1"),
+        Consulta("obtenerProductoPorId", SQL_PRODUCTO_POR_ID, "1"),
+        Consulta("obtenerRutasImagenesEnUso", SQL_RUTAS_IMAGENES_EN_USO,
+            permitida = "la limpieza de archivos necesita todas las rutas; corre en segundo plano"),
+        Consulta("actualizarProducto", SQL_ACTUALIZAR_PRODUCTO, "x", "", "100", "", "1", "1"),
+        Consulta("actualizarProducto con categoría", SQL_ACTUALIZAR_PRODUCTO_CON_CATEGORIA,
+            "x", "", "100", "", "1", "General", "1"),
+        Consulta("actualizarMiniaturas", SQL_ACTUALIZAR_MINIATURAS, "a.webp", "b.webp", "1", "a.jpg"),
+        Consulta("actualizarStockProducto", SQL_ACTUALIZAR_STOCK, "5", "1"),
+        Consulta("eliminarProducto", SQL_ELIMINAR_PRODUCTO, "1"),
+        Consulta("ImportadorProductos inserción", ImportadorProductos.SQL_INSERTAR,
+            "x", "", "100", "", "1", "General", "SKU-1"),
+        Consulta("ImportadorProductos por sku", ImportadorProductos.SQL_ACTUALIZAR_POR_SKU,
+            "x", "", "100", "", "1", "General", "SKU-1"),
+
+        // Usuarios
+        Consulta("usuarioExiste", SQL_USUARIO_EXISTE, "admin"),
+        Consulta("validarUsuario", SQL_HASH_USUARIO, "admin"),
+        Consulta("guardarPassword", SQL_GUARDAR_PASSWORD, "h", "s", "p", "admin"),
+        Consulta("obtenerRol", SQL_ROL_USUARIO, "admin"),
+        Consulta("obtenerUsuarioPorNombre", SQL_USUARIO_POR_NOMBRE, "admin"),
+        Consulta("obtenerUsuarioPorId", SQL_USUARIO_POR_ID, "1"),
+        Consulta("obtenerTodosLosUsuarios", SQL_TODOS_LOS_USUARIOS),
+        Consulta("actualizarUsuario", SQL_ACTUALIZAR_ROL, "admin", "admin"),
+        Consulta("actualizarUsuario con email", SQL_ACTUALIZAR_ROL_Y_EMAIL, "admin", "a@b.c", "admin"),
+        Consulta("eliminarUsuario", SQL_ELIMINAR_USUARIO, "admin"),
+        Consulta("obtenerUsuariosPorRol", SQL_USUARIOS_POR_ROL, "admin"),
+        Consulta("contarUsuariosPorRol", SQL_CONTAR_USUARIOS_POR_ROL, "admin"),
+        Consulta("obtenerRolesUnicos", SQL_ROLES_UNICOS),
+        Consulta("obtenerUsuarioCompleto", SQL_USUARIO_COMPLETO, "admin"),
+        Consulta("obtenerEstadisticasUsuarios", SQL_ESTADISTICAS_USUARIOS,
+            permitida = "ordena un resultado de pocos roles"),
+
+        // Carrito
+        Consulta("agregarAlCarrito descuento de stock", SQL_DESCONTAR_STOCK, "1", "1", "1"),
+        Consulta("agregarAlCarrito existe producto", SQL_EXISTE_PRODUCTO, "1"),
+        Consulta("agregarAlCarrito suma cantidad", SQL_SUMAR_AL_CARRITO, "1", "1"),
+        Consulta("actualizarCantidadEnCarrito", SQL_ACTUALIZAR_CANTIDAD_CARRITO, "2", "1"),
+        Consulta("actualizarCantidadEnCarrito cantidad anterior", SQL_CANTIDAD_EN_CARRITO, "1"),
+        Consulta("actualizarCantidadEnCarrito devolución de stock", SQL_DEVOLVER_UNIDADES, "1", "1"),
+        Consulta("eliminarDelCarrito devolución de stock", SQL_DEVOLVER_STOCK_LINEA, "1", "1"),
+        Consulta("eliminarDelCarrito", SQL_ELIMINAR_LINEA_CARRITO, "1"),
+        Consulta("vaciarCarrito devolución de stock", SQL_DEVOLVER_STOCK_CARRITO),
+        Consulta("vaciarCarrito", SQL_VACIAR_CARRITO, permitida = CARRITO_PEQUENO),
+        Consulta("obtenerCarrito", SQL_CARRITO, permitida = CARRITO_PEQUENO),
+        Consulta("calcularTotalCarrito", SQL_TOTAL_CARRITO, permitida = CARRITO_PEQUENO),
+
+        // Órdenes
+        Consulta("finalizarCompra resumen del carrito", SQL_RESUMEN_CARRITO, permitida = CARRITO_PEQUENO),
+        Consulta("finalizarCompra copia de líneas", SQL_COPIAR_LINEAS_ORDEN, "1", permitida = CARRITO_PEQUENO),
+        Consulta("obtenerOrdenesUsuario", SQL_ORDENES_USUARIO, "admin"),
+        Consulta("obtenerOrdenesPorFecha", SQL_ORDENES_POR_FECHA, *RANGO_FECHAS),
+        Consulta("obtenerItemsOrden", SQL_ITEMS_ORDEN, "1"),
+        Consulta("obtenerVentasPorDia", SQL_VENTAS_POR_DIA, *RANGO_FECHAS,
+            permitida = "agrupa por día solo las órdenes del rango, leídas por índice"),
+
+        // Reportes
+        Consulta("obtenerCantidadUsuarios", SQL_CANTIDAD_USUARIOS, permitida = RESUMEN),
+        Consulta("obtenerCantidadProductos", SQL_CANTIDAD_PRODUCTOS, permitida = RESUMEN),
+        Consulta("obtenerCantidadProductosEnCarrito", SQL_UNIDADES_CARRITO, permitida = RESUMEN),
+        Consulta("obtenerProductosMasVendidos", sqlProductosMasVendidos(10),
+            permitida = "ordena por un agregado de todo el historial"),
+        Consulta("obtenerEstadisticasGenerales", SQL_ESTADISTICAS_GENERALES, permitida = RESUMEN),
+        Consulta("recalcularEstadisticas", Esquema.SQL_RECALCULAR_ESTADISTICAS,
+            permitida = "recuento completo a pedido del administrador")
+    )
+
+    @Before
+    fun setUp() {
+        db = SQLiteDatabase.create(null)
+        Esquema.crear(db)
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun consultasSinRecorridosInesperados() {
+        val fallas = ArrayList<String>()
+        for (consulta in consultas) {
+            val plan = plan(consulta)
+            if (consulta.permitida != null) continue
+            for (detalle in plan) {
+                val recorrido = SCAN.containsMatchIn(detalle) && !SCAN_CON_INDICE.containsMatchIn(detalle)
+                if (recorrido || detalle.contains("USE TEMP B-TREE")) {
+                    fallas.add("${consulta.nombre}: $detalle")
+                }
+            }
+        }
+        assertTrue("Planes inesperados:\n" + fallas.joinToString("\n"), fallas.isEmpty())
+    }
+
+    @Test
+    fun paginaPorCategoriaUsaIndiceCompuesto() {
+        val plan = plan(consultas.first { it.nombre == "obtenerPaginaProductos por categoría" })
+        assertTrue(plan.toString(), plan.any { it.contains("idx_productos_categoria_nombre") })
+    }
+
+    @Test
+    fun esquemaMigradoIgualAlNuevo() {
+        val migrada = SQLiteDatabase.create(null)
+        try {
+            // Esquema de la versión 1
+            migrada.execSQL("CREATE TABLE $TABLE_PRODUCTOS ($COLUMN_ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "$COLUMN_NOMBRE TEXT NOT NULL, $COLUMN_DESCRIPCION TEXT, $COLUMN_PRECIO REAL NOT NULL)")
+            migrada.execSQL("CREATE TABLE $TABLE_USUARIOS ($COLUMN_USUARIO_ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "$COLUMN_USERNAME TEXT NOT NULL UNIQUE, $COLUMN_PASSWORD TEXT NOT NULL, $COLUMN_ROL TEXT NOT NULL)")
+            Esquema.migrar(migrada, 1, Esquema.VERSION)
+
+            // Tablas por columnas: las reconstruidas quedan con otro texto en sqlite_master
+            val tablas = objetos(db, "table").keys
+            assertEquals(tablas, objetos(migrada, "table").keys)
+            for (tabla in tablas) {
+                assertEquals(tabla, columnas(db, tabla), columnas(migrada, tabla))
+            }
+            // Índices y triggers por su definición completa
+            assertEquals(objetos(db, "index"), objetos(migrada, "index"))
+            assertEquals(objetos(db, "trigger"), objetos(migrada, "trigger"))
+        } finally {
+            migrada.close()
+        }
+    }
+
+    private fun plan(consulta: Consulta): List<String> {
+        val detalles = ArrayList<String>()
+        db.rawQuery("EXPLAIN QUERY PLAN " + consulta.sql, consulta.args).use { c ->
+            val detalleIndex = c.getColumnIndexOrThrow("detail")
+            while (c.moveToNext()) detalles.add(c.getString(detalleIndex))
+        }
+        return detalles
+    }
+
+    /** Nombre -> SQL normalizado de los objetos del tipo dado, sin los internos de SQLite. */
+    private fun objetos(db: SQLiteDatabase, tipo: String): Map<String, String> {
+        val objetos = HashMap<String, String>()
+        db.rawQuery(
+            "SELECT name, sql FROM sqlite_master WHERE type = ? AND name NOT LIKE 'sqlite_%'", arrayOf(tipo)
+        ).use { c ->
+            while (c.moveToNext()) {
+                val sql = c.getString(1) ?: ""
+                objetos[c.getString(0)] = sql.replace(Regex("\\s+"), " ").trim().removeSuffix(";")
+            }
+        }
+        return objetos
+    }
+
+    /** Una entrada por columna: nombre, tipo, NOT NULL, valor por defecto y posición en la clave. */
+    private fun columnas(db: SQLiteDatabase, tabla: String): Set<String> {
+        val columnas = HashSet<String>()
+        db.rawQuery("PRAGMA table_info($tabla)", null).use { c ->
+            val nombre = c.getColumnIndexOrThrow("name")
+            val tipo = c.getColumnIndexOrThrow("type")
+            val noNulo = c.getColumnIndexOrThrow("notnull")
+            val porDefecto = c.getColumnIndexOrThrow("dflt_value")
+            val clave = c.getColumnIndexOrThrow("pk")
+            while (c.moveToNext()) {
+                columnas.add("${c.getString(nombre)} ${c.getString(tipo)} notnull=${c.getInt(noNulo)} " +
+                        "default=${c.getString(porDefecto)} pk=${c.getInt(clave)}")
+            }
+        }
+        return columnas
+    }
+}
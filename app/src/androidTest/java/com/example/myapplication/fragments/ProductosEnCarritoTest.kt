@@ -0,0 +1,119 @@
+package com.example.myapplication.fragments
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.myapplication.database.DatabaseHelper
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * El carrito en memoria debe coincidir con la tabla carrito después de
+ * cualquier secuencia de cambios.
+ */
+@RunWith(AndroidJUnit4::class)
+class ProductosEnCarritoTest {
+
+    private lateinit var db: DatabaseHelper
+    private lateinit var carrito: ProductosEnCarrito
+
+    companion object {
+        private const val CATEGORIA_PRUEBA = "__prueba_en_carrito__"
+        private const val STOCK_INICIAL = 10
+    }
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = DatabaseHelper.getInstance(context)
+        db.vaciarCarrito()
+        limpiarProductosPrueba()
+        carrito = ProductosEnCarrito(db)
+        carrito.cargar()
+    }
+
+    @After
+    fun tearDown() {
+        db.vaciarCarrito()
+        limpiarProductosPrueba()
+    }
+
+    @Test
+    fun cambios_coincidenConLaBase() {
+        val a = db.insertarProducto("Prueba A", "", 250L, null, STOCK_INICIAL, CATEGORIA_PRUEBA).toInt()
+        val b = db.insertarProducto("Prueba B", "", 400L, null, STOCK_INICIAL, CATEGORIA_PRUEBA).toInt()
+
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, carrito.agregarProducto(a, 2))
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, carrito.agregarProducto(b))
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, carrito.agregarProducto(a))
+        assertEquals(DatabaseHelper.CARRITO_SIN_STOCK, carrito.agregarProducto(b, STOCK_INICIAL))
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, carrito.actualizarCantidad(b, 4))
+        assertTrue(carrito.incrementarCantidad(a))
+
+        // Cambiar la cantidad también mueve el stock
+        assertEquals(4, carrito.obtenerCantidadProducto(a))
+        assertEquals(STOCK_INICIAL - 4, carrito.obtenerProductoPorId(a)!!.stock)
+        assertEquals(STOCK_INICIAL - 4, carrito.obtenerProductoPorId(b)!!.stock)
+        assertEquals(2_600L, carrito.calcularTotal())
+        assertIgualALaBase()
+
+        assertTrue(carrito.eliminarProducto(a))
+        assertFalse(carrito.contieneProducto(a))
+        assertFalse(carrito.eliminarProducto(a))
+        assertIgualALaBase()
+
+        carrito.limpiarCarrito()
+        assertTrue(carrito.estaVacio())
+        assertEquals(0L, carrito.calcularTotal())
+        assertIgualALaBase()
+    }
+
+    @Test
+    fun cambiarCantidadYQuitar_devuelveElStockInicial() {
+        val id = db.insertarProducto("Prueba C", "", 100L, null, STOCK_INICIAL, CATEGORIA_PRUEBA).toInt()
+
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, carrito.agregarProducto(id))
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, carrito.actualizarCantidad(id, 5))
+        assertEquals(STOCK_INICIAL - 5, db.obtenerStockProducto(id))
+        assertIgualALaBase()
+
+        // Quedan STOCK_INICIAL - 5 libres: subir a 8 solo necesita 3 más
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, carrito.actualizarCantidad(id, 8))
+        assertEquals(DatabaseHelper.CARRITO_SIN_STOCK, carrito.actualizarCantidad(id, STOCK_INICIAL + 1))
+        assertEquals(8, carrito.obtenerCantidadProducto(id))
+
+        assertEquals(DatabaseHelper.CARRITO_AGREGADO, carrito.actualizarCantidad(id, 2))
+        assertEquals(STOCK_INICIAL - 2, db.obtenerStockProducto(id))
+        assertIgualALaBase()
+
+        assertTrue(carrito.eliminarProducto(id))
+        assertEquals(STOCK_INICIAL, db.obtenerStockProducto(id))
+        assertEquals(DatabaseHelper.CARRITO_NO_ENCONTRADO, carrito.actualizarCantidad(id, 3))
+        assertEquals(STOCK_INICIAL, db.obtenerStockProducto(id))
+        assertIgualALaBase()
+    }
+
+    /** Una segunda instancia cargada desde la base ve las mismas líneas. */
+    private fun assertIgualALaBase() {
+        val enBase = ProductosEnCarrito(db).apply { cargar() }
+        // fecha_agregado tiene resolución de segundos: el orden entre líneas del mismo segundo no está definido
+        val esperados = enBase.obtenerProductos().sortedBy { it.id }
+        val actuales = carrito.obtenerProductos().sortedBy { it.id }
+        assertEquals(esperados.map { it.id }, actuales.map { it.id })
+        assertEquals(esperados.map { it.cantidad }, actuales.map { it.cantidad })
+        assertEquals(esperados.map { it.stock }, actuales.map { it.stock })
+        assertEquals(enBase.calcularTotal(), carrito.calcularTotal())
+        assertEquals(enBase.obtenerCantidadTotalProductos(), carrito.obtenerCantidadTotalProductos())
+        assertEquals(db.calcularTotalCarrito(), carrito.calcularTotal())
+    }
+
+    private fun limpiarProductosPrueba() {
+        db.writableDatabase.delete(
+            DatabaseHelper.TABLE_PRODUCTOS,
+            "${DatabaseHelper.COLUMN_CATEGORIA} = ?",
+            arrayOf(CATEGORIA_PRUEBA)
+        )
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.myapplication.seguridad
+
+import android.app.ActivityManager
+import android.content.Context
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Mide PBKDF2 en el dispositivo y calcula cuántas iteraciones dan la latencia
+ * objetivo. Sigue el esquema de JMH: rondas de calentamiento descartadas y
+ * luego rondas medidas de las que se toma la mediana.
+ *
+ * Los resultados se escriben en logcat con la etiqueta CalibracionPbkdf2 y
+ * sirven para ajustar las constantes de PasswordHashers por clase de dispositivo.
+ */
+@RunWith(AndroidJUnit4::class)
+class CalibracionPbkdf2Benchmark {
+
+    companion object {
+        private const val TAG = "CalibracionPbkdf2"
+        private const val ITERACIONES_SONDA = 10_000
+        private const val RONDAS_CALENTAMIENTO = 3
+        private const val RONDAS_MEDIDAS = 7
+        private val OBJETIVOS_MS = longArrayOf(100, 250, 500)
+
+        // Con la constante actual, un login no debe pasar de esto en ningún dispositivo de prueba
+        private const val LIMITE_MS = 1_000L
+    }
+
+    @Test
+    fun calibrarIteraciones() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val am = context.getSystemService(Context.ACTIVITY_SERVICE) as ActivityManager
+        val clase = if (am.isLowRamDevice) "baja memoria" else "estándar"
+        val salt = ByteArray(16)
+
+        val nanosPorIteracion = medirMediana { Pbkdf2PasswordHasher.derivar("contraseña", salt, ITERACIONES_SONDA) } /
+                ITERACIONES_SONDA.toDouble()
+
+        Log.i(TAG, "Clase: $clase, ${"%.1f".format(nanosPorIteracion)} ns por iteración")
+        for (objetivo in OBJETIVOS_MS) {
+            val iteraciones = (objetivo * 1_000_000 / nanosPorIteracion).toLong()
+            Log.i(TAG, "Objetivo $objetivo ms -> $iteraciones iteraciones")
+        }
+
+        val actual = PasswordHashers.paraDispositivo(context) as Pbkdf2PasswordHasher
+        val msActual = medirMediana { Pbkdf2PasswordHasher.derivar("contraseña", salt, actual.iteraciones) } / 1_000_000
+        Log.i(TAG, "Configuración actual: ${actual.iteraciones} iteraciones -> ${"%.0f".format(msActual)} ms")
+
+        assertTrue("Hash de ${"%.0f".format(msActual)} ms con ${actual.iteraciones} iteraciones", msActual < LIMITE_MS)
+    }
+
+    /** Mediana en nanosegundos de las rondas medidas. */
+    private fun medirMediana(operacion: () -> Unit): Double {
+        repeat(RONDAS_CALENTAMIENTO) { operacion() }
+        val tiempos = LongArray(RONDAS_MEDIDAS) {
+            val inicio = System.nanoTime()
+            operacion()
+            System.nanoTime() - inicio
+        }
+        tiempos.sort()
+        return tiempos[RONDAS_MEDIDAS / 2].toDouble()
+    }
+}
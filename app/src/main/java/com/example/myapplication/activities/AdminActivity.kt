@@ -12,12 +12,15 @@ import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import com.example.myapplication.R
 import com.example.myapplication.managers.SessionManager
+import com.example.myapplication.models.Dinero
 import com.example.myapplication.models.Usuario
 import com.google.android.material.dialog.MaterialAlertDialogBuilder
 import com.google.firebase.auth.ktx.auth
 import com.google.firebase.ktx.Firebase
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.drop
 import kotlinx.coroutines.launch
 import java.text.SimpleDateFormat
 import java.util.*
@@ -34,6 +37,7 @@ class AdminActivity : AppCompatActivity() {
     private val auth = Firebase.auth
     private val coroutineScope = CoroutineScope(Dispatchers.Main)
     private val handler = Handler(Looper.getMainLooper())
+    private var observadorSesion: Job? = null
 
     companion object {
         private const val TAG = "AdminActivity"
@@ -58,6 +62,7 @@ class AdminActivity : AppCompatActivity() {
             initializeViews()
             setupUserInfo()
             setupClickListeners()
+            observarSesion()
             Log.d(TAG, "AdminActivity completamente configurada")
         } catch (e: Exception) {
             Log.e(TAG, "ERROR configurando AdminActivity: ${e.message}", e)
@@ -104,6 +109,29 @@ class AdminActivity : AppCompatActivity() {
         }
     }
 
+    /**
+     * Sale del panel si la sesión se cierra o deja de ser de administrador,
+     * por ejemplo al cambiarse el propio rol desde la gestión de usuarios.
+     */
+    private fun observarSesion() {
+        observadorSesion = coroutineScope.launch {
+            // Solo los cambios: el estado inicial ya se resolvió al entrar
+            SessionManager.sesion(this@AdminActivity).drop(1).collect { sesion ->
+                if (isFinishing) return@collect
+                if (sesion == null) {
+                    redirectToLogin()
+                } else if (!sesion.esAdmin) {
+                    Log.d(TAG, "El usuario ya no es administrador, saliendo del panel")
+                    val intent = Intent(this@AdminActivity, MainActivity::class.java).apply {
+                        flags = Intent.FLAG_ACTIVITY_NEW_TASK or Intent.FLAG_ACTIVITY_CLEAR_TASK
+                    }
+                    startActivity(intent)
+                    finish()
+                }
+            }
+        }
+    }
+
     private fun setupClickListeners() {
         btnGestionarUsuarios.setOnClickListener {
             Log.d(TAG, "Boton Gestionar Usuarios PRESIONADO")
@@ -267,12 +295,13 @@ class AdminActivity : AppCompatActivity() {
         }
     }
 
-    private fun obtenerTotalCarrito(): Double {
+    /** En centavos. */
+    private fun obtenerTotalCarrito(): Long {
         return try {
-            1250.75
+            125_075L
         } catch (e: Exception) {
             Log.e(TAG, "ERROR obteniendo total del carrito: ${e.message}", e)
-            0.0
+            0L
         }
     }
 
@@ -326,7 +355,7 @@ class AdminActivity : AppCompatActivity() {
 
             val totalCarrito = obtenerTotalCarrito()
             reporte.append("=== INFORMACION DE VENTAS ===\n")
-            reporte.append("Total carrito: $${"%.2f".format(totalCarrito)}\n\n")
+            reporte.append("Total carrito: ${Dinero.formatear(totalCarrito)}\n\n")
 
             reporte.append("=== INFORMACION DEL DISPOSITIVO ===\n")
             reporte.append("Modelo: ${android.os.Build.MODEL}\n")
@@ -400,7 +429,7 @@ class AdminActivity : AppCompatActivity() {
             reporte.append("Usuarios activos: $usuariosActivos\n")
             reporte.append("Usuarios inactivos: ${totalUsuarios - usuariosActivos}\n")
             reporte.append("Total productos: $totalProductos\n")
-            reporte.append("Valor carrito: $${"%.2f".format(totalCarrito)}\n")
+            reporte.append("Valor carrito: ${Dinero.formatear(totalCarrito)}\n")
             reporte.append("Tasa de actividad: ${if (totalUsuarios > 0) "%.1f".format(usuariosActivos * 100.0 / totalUsuarios) else 0}%\n\n")
 
             val distribucionRoles = usuarios.groupBy { it.rol }.mapValues { it.value.size }
@@ -617,4 +646,9 @@ class AdminActivity : AppCompatActivity() {
             btnGestionarUsuarios.isEnabled = true
         }
     }
+
+    override fun onDestroy() {
+        observadorSesion?.cancel()
+        super.onDestroy()
+    }
 }
\ No newline at end of file
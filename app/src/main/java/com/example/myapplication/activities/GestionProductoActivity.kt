@@ -11,8 +11,11 @@ import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
 import androidx.core.content.ContextCompat
 import androidx.core.content.FileProvider
+import com.bumptech.glide.Glide
 import com.example.myapplication.R
 import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.helpers.MiniaturasProducto
+import com.example.myapplication.models.Dinero
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
@@ -38,7 +41,10 @@ class GestionProductoActivity : AppCompatActivity() {
     private var esEdicion: Boolean = false
     private var productoId: Int = -1
     private var imagenSeleccionada: String? = null
+    // Imagen guardada del producto en edición; otra distinta al guardar genera miniaturas
+    private var imagenOriginal: String? = null
     private var currentPhotoPath: String? = null
+    private var guardado = false
     private val coroutineScope = CoroutineScope(Dispatchers.Main)
 
     private val requestPermissionLauncher = registerForActivityResult(
@@ -56,21 +62,22 @@ class GestionProductoActivity : AppCompatActivity() {
     ) { success ->
         if (success) {
             currentPhotoPath?.let { path ->
-                imagenSeleccionada = path
-                ivFoto.setImageURI(Uri.parse(path))
+                reemplazarImagen(path)
                 Toast.makeText(this, "Foto guardada", Toast.LENGTH_SHORT).show()
             }
         } else {
+            // La cámara ya creó el archivo vacío
+            currentPhotoPath?.let { File(it).delete() }
             Toast.makeText(this, "No se pudo tomar la foto", Toast.LENGTH_SHORT).show()
         }
+        currentPhotoPath = null
     }
 
     private val pickImageLauncher = registerForActivityResult(
         ActivityResultContracts.GetContent()
     ) { uri ->
         uri?.let {
-            imagenSeleccionada = it.toString()
-            ivFoto.setImageURI(it)
+            reemplazarImagen(it.toString())
             Toast.makeText(this, "Imagen seleccionada", Toast.LENGTH_SHORT).show()
         }
     }
@@ -79,7 +86,8 @@ class GestionProductoActivity : AppCompatActivity() {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_gestion_producto)
 
-        db = DatabaseHelper(this)
+        db = DatabaseHelper.getInstance(this)
+        if (savedInstanceState == null) MiniaturasProducto.limpiarHuerfanos(this)
         initViews()
         setupModo()
         setupListeners()
@@ -188,6 +196,28 @@ class GestionProductoActivity : AppCompatActivity() {
         }
     }
 
+    /** Muestra la nueva imagen y descarta una foto de cámara anterior que no llegó a guardarse. */
+    private fun reemplazarImagen(imagen: String) {
+        borrarFotoSinGuardar()
+        imagenSeleccionada = imagen
+        mostrarImagen(imagen)
+    }
+
+    private fun borrarFotoSinGuardar() {
+        val imagen = imagenSeleccionada ?: return
+        // Las de galería (content://) no son nuestras
+        if (imagen != imagenOriginal && imagen.startsWith("/")) File(imagen).delete()
+    }
+
+    // Glide decodifica al tamaño de la vista y fuera del hilo principal
+    private fun mostrarImagen(imagen: String) {
+        Glide.with(this)
+            .load(imagen)
+            .placeholder(R.drawable.ic_image_placeholder)
+            .error(R.drawable.ic_image_placeholder)
+            .into(ivFoto)
+    }
+
     private fun seleccionarImagenGaleria() {
         pickImageLauncher.launch("image/*")
     }
@@ -204,17 +234,16 @@ class GestionProductoActivity : AppCompatActivity() {
                 producto?.let {
                     etNombre.setText(it.nombre)
                     etDescripcion.setText(it.descripcion)
-                    etPrecio.setText(it.precio.toString())
+                    etPrecio.setText(Dinero.aTexto(it.precioCentavos))
                     etStock.setText(it.stock.toString())
 
-                    it.imagen_path?.let { imagenPath ->
-                        if (imagenPath.isNotEmpty()) {
-                            imagenSeleccionada = imagenPath
-                            try {
-                                ivFoto.setImageURI(Uri.parse(imagenPath))
-                            } catch (e: Exception) {
-                                ivFoto.setImageResource(R.drawable.ic_image_placeholder)
-                            }
+                    if (it.imagen_path.isNotEmpty()) {
+                        imagenSeleccionada = it.imagen_path
+                        imagenOriginal = it.imagen_path
+                        // La miniatura de detalle si ya existe; si no, la original
+                        mostrarImagen(it.imagenDetalle())
+                        if (it.miniaturaDetalle.isEmpty()) {
+                            MiniaturasProducto.generar(this@GestionProductoActivity, productoId)
                         }
                     }
                 } ?: run {
@@ -233,38 +262,42 @@ class GestionProductoActivity : AppCompatActivity() {
     private fun guardarProducto() {
         val nombre = etNombre.text.toString().trim()
         val descripcion = etDescripcion.text.toString().trim()
-        val precio = etPrecio.text.toString().toDoubleOrNull()
+        val precioCentavos = Dinero.deTexto(etPrecio.text.toString())
         val stock = etStock.text.toString().toIntOrNull()
 
-        if (validarFormulario(nombre, descripcion, precio, stock)) {
+        if (validarFormulario(nombre, descripcion, precioCentavos, stock)) {
             mostrarLoading(true)
 
             coroutineScope.launch {
                 try {
-                    val exito = withContext(Dispatchers.IO) {
+                    val guardadoId = withContext(Dispatchers.IO) {
                         if (esEdicion) {
                             val filasAfectadas = db.actualizarProducto(
                                 productoId,
                                 nombre,
                                 descripcion,
-                                precio ?: 0.0,
+                                precioCentavos ?: 0L,
                                 imagenSeleccionada,
                                 stock ?: 0
                             )
-                            filasAfectadas > 0
+                            if (filasAfectadas > 0) productoId else -1
                         } else {
                             val nuevoId = db.insertarProducto(
                                 nombre,
                                 descripcion,
-                                precio ?: 0.0,
+                                precioCentavos ?: 0L,
                                 imagenSeleccionada,
                                 stock ?: 0
                             )
-                            nuevoId > 0
+                            nuevoId.toInt()
                         }
                     }
 
-                    if (exito) {
+                    if (guardadoId > 0) {
+                        guardado = true
+                        if (imagenSeleccionada != null && imagenSeleccionada != imagenOriginal) {
+                            MiniaturasProducto.generar(this@GestionProductoActivity, guardadoId)
+                        }
                         val mensaje = if (esEdicion) "Producto actualizado correctamente" else "Producto agregado correctamente"
                         Toast.makeText(this@GestionProductoActivity, mensaje, Toast.LENGTH_SHORT).show()
                         setResult(RESULT_OK)
@@ -282,7 +315,7 @@ class GestionProductoActivity : AppCompatActivity() {
         }
     }
 
-    private fun validarFormulario(nombre: String, descripcion: String, precio: Double?, stock: Int?): Boolean {
+    private fun validarFormulario(nombre: String, descripcion: String, precioCentavos: Long?, stock: Int?): Boolean {
         var esValido = true
 
         if (nombre.isEmpty()) {
@@ -295,7 +328,7 @@ class GestionProductoActivity : AppCompatActivity() {
             esValido = false
         }
 
-        if (precio == null || precio <= 0) {
+        if (precioCentavos == null || precioCentavos <= 0) {
             etPrecio.error = "Precio válido requerido"
             esValido = false
         }
@@ -350,13 +383,14 @@ class GestionProductoActivity : AppCompatActivity() {
         btnTomarFoto.isEnabled = !mostrar
     }
 
+    override fun onDestroy() {
+        // Salir sin guardar: la foto tomada no la usa ningún producto
+        if (isFinishing && !guardado) borrarFotoSinGuardar()
+        super.onDestroy()
+    }
+
     override fun onSupportNavigateUp(): Boolean {
         onBackPressed()
         return true
     }
-
-    override fun onDestroy() {
-        super.onDestroy()
-        db.close()
-    }
 }
\ No newline at end of file
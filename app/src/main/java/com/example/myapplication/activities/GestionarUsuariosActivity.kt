@@ -9,8 +9,13 @@ import androidx.appcompat.app.AppCompatActivity
 import com.example.myapplication.R
 import com.example.myapplication.adapters.UsuarioAdapter
 import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.helpers.VistaTablas
 import com.example.myapplication.models.Usuario
 import com.google.android.material.dialog.MaterialAlertDialogBuilder
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 class GestionarUsuariosActivity : AppCompatActivity() {
 
@@ -19,6 +24,10 @@ class GestionarUsuariosActivity : AppCompatActivity() {
     private lateinit var btnActualizarLista: Button
     private lateinit var usuariosAdapter: UsuarioAdapter
     private var listaUsuarios: MutableList<Usuario> = mutableListOf()
+    private val coroutineScope = CoroutineScope(Dispatchers.Main)
+    private val vistaUsuarios by lazy {
+        VistaTablas(DatabaseHelper.getInstance(this), DatabaseHelper.TABLE_USUARIOS)
+    }
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -30,7 +39,7 @@ class GestionarUsuariosActivity : AppCompatActivity() {
             inicializarVistas()
             configurarListeners()
             configurarAdapter()
-            actualizarListaUsuarios()
+            // La primera lectura la hace onResume
 
         } catch (e: Exception) {
             Log.e("GESTION_USUARIOS", "ERROR en onCreate: ${e.message}", e)
@@ -94,6 +103,7 @@ class GestionarUsuariosActivity : AppCompatActivity() {
 
         } catch (e: Exception) {
             Log.e("GESTION_USUARIOS", "ERROR actualizando lista: ${e.message}", e)
+            vistaUsuarios.olvidar()
             Toast.makeText(this, "Error cargando usuarios", Toast.LENGTH_SHORT).show()
         }
     }
@@ -200,94 +210,110 @@ class GestionarUsuariosActivity : AppCompatActivity() {
         }
     }
 
+    // Las escrituras esperan su turno en el escritor de la base: fuera del hilo principal
     private fun cambiarRolUsuario(usuario: Usuario, nuevoRol: String, position: Int) {
-        try {
-            Log.d("GESTION_USUARIOS", "Cambiando rol de ${usuario.username} a $nuevoRol")
-            Log.d("GESTION_USUARIOS", "Usuario ID: ${usuario.id}, Email: ${usuario.email}")
+        coroutineScope.launch {
+            try {
+                Log.d("GESTION_USUARIOS", "Cambiando rol de ${usuario.username} a $nuevoRol")
+                Log.d("GESTION_USUARIOS", "Usuario ID: ${usuario.id}, Email: ${usuario.email}")
 
-            val exito = Usuario.actualizarRolUsuario(this, usuario.username, nuevoRol)
-            Log.d("GESTION_USUARIOS", "Resultado de actualizarRolUsuario: $exito")
+                val exito = withContext(Dispatchers.IO) {
+                    Usuario.actualizarRolUsuario(this@GestionarUsuariosActivity, usuario.username, nuevoRol)
+                }
+                Log.d("GESTION_USUARIOS", "Resultado de actualizarRolUsuario: $exito")
 
-            if (exito) {
-                Toast.makeText(this, "Rol actualizado exitosamente", Toast.LENGTH_SHORT).show()
-                val usuarioActualizado = usuario.copy(rol = nuevoRol)
-                usuariosAdapter.actualizarUsuario(position, usuarioActualizado)
+                if (exito) {
+                    Toast.makeText(this@GestionarUsuariosActivity, "Rol actualizado exitosamente", Toast.LENGTH_SHORT).show()
+                    val usuarioActualizado = usuario.copy(rol = nuevoRol)
+                    usuariosAdapter.actualizarUsuario(position, usuarioActualizado)
 
-                Log.d("GESTION_USUARIOS", "Usuario actualizado en adapter: ${usuarioActualizado.username} - ${usuarioActualizado.rol}")
-            } else {
-                Toast.makeText(this, "Error al cambiar el rol", Toast.LENGTH_SHORT).show()
-                actualizarListaUsuarios()
-            }
+                    Log.d("GESTION_USUARIOS", "Usuario actualizado en adapter: ${usuarioActualizado.username} - ${usuarioActualizado.rol}")
+                } else {
+                    Toast.makeText(this@GestionarUsuariosActivity, "Error al cambiar el rol", Toast.LENGTH_SHORT).show()
+                    actualizarListaUsuarios()
+                }
 
-        } catch (e: Exception) {
-            Log.e("GESTION_USUARIOS", "ERROR cambiando rol: ${e.message}", e)
-            Toast.makeText(this, "Error al cambiar rol", Toast.LENGTH_SHORT).show()
+            } catch (e: Exception) {
+                Log.e("GESTION_USUARIOS", "ERROR cambiando rol: ${e.message}", e)
+                Toast.makeText(this@GestionarUsuariosActivity, "Error al cambiar rol", Toast.LENGTH_SHORT).show()
+            }
         }
     }
 
     private fun eliminarUsuario(usuario: Usuario, position: Int) {
-        try {
-            Log.d("GESTION_USUARIOS", "Eliminando usuario: ${usuario.username}")
+        coroutineScope.launch {
+            try {
+                Log.d("GESTION_USUARIOS", "Eliminando usuario: ${usuario.username}")
 
-            val exito = Usuario.eliminarUsuario(this, usuario.username)
+                val exito = withContext(Dispatchers.IO) {
+                    Usuario.eliminarUsuario(this@GestionarUsuariosActivity, usuario.username)
+                }
 
-            if (exito) {
-                Toast.makeText(this, "Usuario eliminado exitosamente", Toast.LENGTH_SHORT).show()
-                usuariosAdapter.eliminarUsuario(position)
-            } else {
-                Toast.makeText(this, "Error al eliminar usuario", Toast.LENGTH_SHORT).show()
-            }
+                if (exito) {
+                    Toast.makeText(this@GestionarUsuariosActivity, "Usuario eliminado exitosamente", Toast.LENGTH_SHORT).show()
+                    usuariosAdapter.eliminarUsuario(position)
+                } else {
+                    Toast.makeText(this@GestionarUsuariosActivity, "Error al eliminar usuario", Toast.LENGTH_SHORT).show()
+                }
 
-        } catch (e: Exception) {
-            Log.e("GESTION_USUARIOS", "ERROR eliminando usuario: ${e.message}", e)
-            Toast.makeText(this, "Error al eliminar usuario", Toast.LENGTH_SHORT).show()
+            } catch (e: Exception) {
+                Log.e("GESTION_USUARIOS", "ERROR eliminando usuario: ${e.message}", e)
+                Toast.makeText(this@GestionarUsuariosActivity, "Error al eliminar usuario", Toast.LENGTH_SHORT).show()
+            }
         }
     }
 
     private fun guardarCambiosUsuario(usuarioOriginal: Usuario, nuevoUsername: String, nuevoEmail: String, nuevoRol: String, position: Int) {
-        try {
-            Log.d("GESTION_USUARIOS", "Guardando cambios para usuario: ${usuarioOriginal.username}")
-            Log.d("GESTION_USUARIOS", "Nuevos datos - Username: $nuevoUsername, Email: $nuevoEmail, Rol: $nuevoRol")
-
-            var cambiosRealizados = false
+        coroutineScope.launch {
+            try {
+                Log.d("GESTION_USUARIOS", "Guardando cambios para usuario: ${usuarioOriginal.username}")
+                Log.d("GESTION_USUARIOS", "Nuevos datos - Username: $nuevoUsername, Email: $nuevoEmail, Rol: $nuevoRol")
+
+                var cambiosRealizados = false
+
+                if (nuevoRol != usuarioOriginal.rol) {
+                    Log.d("GESTION_USUARIOS", "Cambiando rol de ${usuarioOriginal.rol} a $nuevoRol")
+                    val exitoRol = withContext(Dispatchers.IO) {
+                        Usuario.actualizarRolUsuario(this@GestionarUsuariosActivity, usuarioOriginal.username, nuevoRol)
+                    }
+                    if (exitoRol) {
+                        cambiosRealizados = true
+                        Log.d("GESTION_USUARIOS", "Rol actualizado exitosamente")
+                    } else {
+                        Log.e("GESTION_USUARIOS", "Error al actualizar rol en BD")
+                    }
+                }
 
-            if (nuevoRol != usuarioOriginal.rol) {
-                Log.d("GESTION_USUARIOS", "Cambiando rol de ${usuarioOriginal.rol} a $nuevoRol")
-                val exitoRol = Usuario.actualizarRolUsuario(this, usuarioOriginal.username, nuevoRol)
-                if (exitoRol) {
-                    cambiosRealizados = true
-                    Log.d("GESTION_USUARIOS", "Rol actualizado exitosamente")
-                } else {
-                    Log.e("GESTION_USUARIOS", "Error al actualizar rol en BD")
+                if (nuevoEmail != usuarioOriginal.email) {
+                    Log.d("GESTION_USUARIOS", "Email cambiado de ${usuarioOriginal.email} a $nuevoEmail")
+                    Toast.makeText(this@GestionarUsuariosActivity, "Función de cambio de email en desarrollo", Toast.LENGTH_SHORT).show()
                 }
-            }
 
-            if (nuevoEmail != usuarioOriginal.email) {
-                Log.d("GESTION_USUARIOS", "Email cambiado de ${usuarioOriginal.email} a $nuevoEmail")
-                Toast.makeText(this, "Función de cambio de email en desarrollo", Toast.LENGTH_SHORT).show()
-            }
+                if (nuevoUsername != usuarioOriginal.username) {
+                    Log.d("GESTION_USUARIOS", "Username cambiado de ${usuarioOriginal.username} a $nuevoUsername")
+                    Toast.makeText(this@GestionarUsuariosActivity, "Función de cambio de username en desarrollo", Toast.LENGTH_SHORT).show()
+                }
 
-            if (nuevoUsername != usuarioOriginal.username) {
-                Log.d("GESTION_USUARIOS", "Username cambiado de ${usuarioOriginal.username} a $nuevoUsername")
-                Toast.makeText(this, "Función de cambio de username en desarrollo", Toast.LENGTH_SHORT).show()
-            }
+                if (cambiosRealizados) {
+                    Toast.makeText(this@GestionarUsuariosActivity, "Cambios guardados exitosamente", Toast.LENGTH_SHORT).show()
+                    actualizarListaUsuarios()
+                } else {
+                    Toast.makeText(this@GestionarUsuariosActivity, "No se realizaron cambios", Toast.LENGTH_SHORT).show()
+                }
 
-            if (cambiosRealizados) {
-                Toast.makeText(this, "Cambios guardados exitosamente", Toast.LENGTH_SHORT).show()
-                actualizarListaUsuarios()
-            } else {
-                Toast.makeText(this, "No se realizaron cambios", Toast.LENGTH_SHORT).show()
+            } catch (e: Exception) {
+                Log.e("GESTION_USUARIOS", "Error guardando cambios: ${e.message}", e)
+                Toast.makeText(this@GestionarUsuariosActivity, "Error guardando cambios: ${e.message}", Toast.LENGTH_LONG).show()
             }
-
-        } catch (e: Exception) {
-            Log.e("GESTION_USUARIOS", "Error guardando cambios: ${e.message}", e)
-            Toast.makeText(this, "Error guardando cambios: ${e.message}", Toast.LENGTH_LONG).show()
         }
     }
 
     override fun onResume() {
         super.onResume()
-        Log.d("GESTION_USUARIOS", "onResume - Actualizando lista")
-        actualizarListaUsuarios()
+        // Volver de otra pantalla sin cambios en usuarios no hace ninguna consulta
+        if (vistaUsuarios.desactualizada()) {
+            Log.d("GESTION_USUARIOS", "onResume - Actualizando lista")
+            actualizarListaUsuarios()
+        }
     }
 }
\ No newline at end of file
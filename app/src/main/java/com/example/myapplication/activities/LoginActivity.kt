@@ -11,8 +11,10 @@ import com.example.myapplication.R
 import com.example.myapplication.database.DatabaseHelper
 import com.example.myapplication.managers.SessionManager
 import com.example.myapplication.models.Usuario
+import com.example.myapplication.seguridad.PasswordHashers
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asCoroutineDispatcher
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 
@@ -28,6 +30,9 @@ class LoginActivity : AppCompatActivity() {
 
     companion object {
         private const val TAG = "LoginActivity"
+
+        // Hilos acotados para el hash de contraseñas, separados del pool de IO
+        private val hashDispatcher = PasswordHashers.ejecutor().asCoroutineDispatcher()
     }
 
     override fun onCreate(savedInstanceState: Bundle?) {
@@ -45,7 +50,7 @@ class LoginActivity : AppCompatActivity() {
         btnRegister = findViewById(R.id.btnRegister)
 
         // Inicializamos base de datos
-        dbHelper = DatabaseHelper(this)
+        dbHelper = DatabaseHelper.getInstance(this)
 
         // Listeners
         btnLogin.setOnClickListener {
@@ -216,8 +221,8 @@ class LoginActivity : AppCompatActivity() {
                 println("USUARIO ENCONTRADO, VALIDANDO CREDENCIALES...")
                 Log.e(TAG, "USUARIO ENCONTRADO, VALIDANDO CREDENCIALES...")
 
-                // Continuar con validación de contraseña...
-                var passwordValida = withContext(Dispatchers.IO) {
+                // Continuar con validación de contraseña (PBKDF2: corre en el ejecutor de hashes)
+                var passwordValida = withContext(hashDispatcher) {
                     try {
                         val resultado = dbHelper.validarUsuario(username, password)
                         println("DatabaseHelper.validarUsuario('$username') = $resultado")
@@ -312,15 +317,6 @@ class LoginActivity : AppCompatActivity() {
     private fun showToast(message: String) {
         Toast.makeText(this, message, Toast.LENGTH_SHORT).show()
     }
-
-    override fun onDestroy() {
-        super.onDestroy()
-        try {
-            dbHelper.close()
-        } catch (e: Exception) {
-            println("ERROR CERRANDO DB: ${e.message}")
-        }
-    }
 }
 
 
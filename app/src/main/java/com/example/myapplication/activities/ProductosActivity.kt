@@ -1,15 +1,23 @@
 package com.example.myapplication.activities
 
 import android.content.Intent
+import android.net.Uri
 import android.os.Bundle
+import android.view.Menu
+import android.view.MenuItem
 import android.view.View
 import android.widget.Toast
+import androidx.activity.result.contract.ActivityResultContracts
 import androidx.appcompat.app.AppCompatActivity
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import com.example.myapplication.R
 import com.example.myapplication.adapters.ProductoAdapter
 import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.database.ImportadorProductos
+import com.example.myapplication.database.MapeadorFilas
+import com.example.myapplication.helpers.CarritoRepositorio
+import com.example.myapplication.helpers.VistaTablas
 import com.example.myapplication.managers.SessionManager
 import com.example.myapplication.models.Producto
 import com.google.android.material.floatingactionbutton.FloatingActionButton
@@ -23,10 +31,21 @@ class ProductosActivity : AppCompatActivity() {
     private lateinit var recyclerView: RecyclerView
     private lateinit var adapter: ProductoAdapter
     private lateinit var db: DatabaseHelper
+    private lateinit var vistaProductos: VistaTablas
     private lateinit var fabAgregar: FloatingActionButton
     private val coroutineScope = CoroutineScope(Dispatchers.Main)
     private var isAdmin: Boolean = false
 
+    private val importarCatalogoLauncher = registerForActivityResult(
+        ActivityResultContracts.OpenDocument()
+    ) { uri ->
+        uri?.let { importarCatalogo(it) }
+    }
+
+    companion object {
+        private const val MENU_IMPORTAR = 1
+    }
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_productos)
@@ -36,7 +55,7 @@ class ProductosActivity : AppCompatActivity() {
         setupUI()
         setupDatabase()
         setupRecyclerView()
-        cargarProductos()
+        // La primera carga la hace onResume
     }
 
     private fun setupUI() {
@@ -49,7 +68,8 @@ class ProductosActivity : AppCompatActivity() {
     }
 
     private fun setupDatabase() {
-        db = DatabaseHelper(this)
+        db = DatabaseHelper.getInstance(this)
+        vistaProductos = VistaTablas(db, DatabaseHelper.TABLE_PRODUCTOS)
     }
 
     private fun setupRecyclerView() {
@@ -77,16 +97,64 @@ class ProductosActivity : AppCompatActivity() {
         coroutineScope.launch {
             try {
                 val productos = withContext(Dispatchers.IO) {
-                    val cursor = db.obtenerTodosLosProductos()
-                    cursor.toProductoList()
+                    MapeadorFilas.productos(db.obtenerTodosLosProductos()).listar()
                 }
                 adapter.updateProductos(productos)
             } catch (e: Exception) {
+                vistaProductos.olvidar()
                 Toast.makeText(this@ProductosActivity, "Error cargando productos", Toast.LENGTH_SHORT).show()
             }
         }
     }
 
+    override fun onCreateOptionsMenu(menu: Menu): Boolean {
+        if (isAdmin) {
+            menu.add(Menu.NONE, MENU_IMPORTAR, Menu.NONE, "Importar catálogo")
+        }
+        return super.onCreateOptionsMenu(menu)
+    }
+
+    override fun onOptionsItemSelected(item: MenuItem): Boolean {
+        if (item.itemId == MENU_IMPORTAR) {
+            importarCatalogoLauncher.launch(arrayOf("text/*", "application/json"))
+            return true
+        }
+        return super.onOptionsItemSelected(item)
+    }
+
+    private fun importarCatalogo(uri: Uri) {
+        Toast.makeText(this, "Importando catálogo...", Toast.LENGTH_SHORT).show()
+        coroutineScope.launch {
+            try {
+                val formato = if (contentResolver.getType(uri)?.contains("json") == true)
+                    ImportadorProductos.Formato.JSON
+                else
+                    ImportadorProductos.Formato.CSV
+
+                val resultado = withContext(Dispatchers.IO) {
+                    contentResolver.openInputStream(uri)?.use { input ->
+                        ImportadorProductos(db)
+                            .setUpsertPorSku(true)
+                            .importar(input, formato)
+                    }
+                }
+
+                if (resultado != null) {
+                    Toast.makeText(
+                        this@ProductosActivity,
+                        "Importados ${resultado.importadas} de ${resultado.procesadas} (${resultado.errores} errores)",
+                        Toast.LENGTH_LONG
+                    ).show()
+                    if (vistaProductos.desactualizada()) cargarProductos()
+                } else {
+                    Toast.makeText(this@ProductosActivity, "No se pudo abrir el archivo", Toast.LENGTH_SHORT).show()
+                }
+            } catch (e: Exception) {
+                Toast.makeText(this@ProductosActivity, "Error importando catálogo: ${e.message}", Toast.LENGTH_LONG).show()
+            }
+        }
+    }
+
     private fun navegarAAgregarProducto() {
         val intent = Intent(this, GestionProductoActivity::class.java)
         startActivity(intent)
@@ -102,13 +170,12 @@ class ProductosActivity : AppCompatActivity() {
     private fun agregarAlCarrito(producto: Producto) {
         coroutineScope.launch {
             try {
-                val resultado = withContext(Dispatchers.IO) {
-                    db.agregarAlCarrito(producto.id, 1)
+                val resultado = CarritoRepositorio.getInstance(this@ProductosActivity).agregar(producto.id)
+                val mensaje = when (resultado) {
+                    DatabaseHelper.CARRITO_AGREGADO -> "${producto.nombre} agregado al carrito"
+                    DatabaseHelper.CARRITO_SIN_STOCK -> "No hay stock disponible de ${producto.nombre}"
+                    else -> "${producto.nombre} ya no está disponible"
                 }
-                val mensaje = if (resultado > 0)
-                    "${producto.nombre} agregado al carrito"
-                else
-                    "No hay stock disponible de ${producto.nombre}"
                 Toast.makeText(this@ProductosActivity, mensaje, Toast.LENGTH_SHORT).show()
             } catch (e: Exception) {
                 Toast.makeText(this@ProductosActivity, "Error agregando al carrito", Toast.LENGTH_SHORT).show()
@@ -147,42 +214,11 @@ class ProductosActivity : AppCompatActivity() {
 
     override fun onResume() {
         super.onResume()
-        cargarProductos()
+        if (vistaProductos.desactualizada()) cargarProductos()
     }
 
     override fun onSupportNavigateUp(): Boolean {
         onBackPressed()
         return true
     }
-
-    override fun onDestroy() {
-        super.onDestroy()
-        db.close()
-    }
-
-    private fun android.database.Cursor.toProductoList(): List<Producto> {
-        val productoList = mutableListOf<Producto>()
-        try {
-            if (moveToFirst()) {
-                do {
-                    try {
-                        val producto = Producto(
-                            id = getInt(getColumnIndexOrThrow("id")),
-                            nombre = getString(getColumnIndexOrThrow("nombre")),
-                            descripcion = getString(getColumnIndexOrThrow("descripcion")),
-                            precio = getDouble(getColumnIndexOrThrow("precio")),
-                            imagen_path = getString(getColumnIndexOrThrow("imagen_path")) ?: "",
-                            stock = getInt(getColumnIndexOrThrow("stock"))
-                        )
-                        productoList.add(producto)
-                    } catch (e: Exception) {
-                    }
-                } while (moveToNext())
-            }
-        } catch (e: Exception) {
-        } finally {
-            close()
-        }
-        return productoList
-    }
 }
\ No newline at end of file
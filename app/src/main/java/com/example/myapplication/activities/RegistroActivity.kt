@@ -198,7 +198,7 @@ class RegistroActivity : AppCompatActivity() {
 
     private suspend fun guardarUsuarioEnSQLite(username: String, password: String, rol: String, email: String): Boolean {
         return try {
-            val dbHelper = DatabaseHelper(this@RegistroActivity)
+            val dbHelper = DatabaseHelper.getInstance(this@RegistroActivity)
 
             // Intentar insertar el usuario
             val resultado = dbHelper.insertarUsuario(username, password, rol, email)
@@ -264,7 +264,7 @@ class RegistroActivity : AppCompatActivity() {
 
     private suspend fun verificarCorreoExistente(email: String): Boolean {
         return try {
-            val dbHelper = DatabaseHelper(this@RegistroActivity)
+            val dbHelper = DatabaseHelper.getInstance(this@RegistroActivity)
             val cursor = dbHelper.obtenerTodosLosUsuarios()
             var existe = false
 
@@ -293,7 +293,7 @@ class RegistroActivity : AppCompatActivity() {
 
     private suspend fun verificarUsuarioGuardadoPorEmail(email: String): Boolean {
         return try {
-            val dbHelper = DatabaseHelper(this@RegistroActivity)
+            val dbHelper = DatabaseHelper.getInstance(this@RegistroActivity)
             val cursor = dbHelper.obtenerTodosLosUsuarios()
             var encontrado = false
 
@@ -3,21 +3,63 @@ package com.example.myapplication.managers
 import android.content.Context
 import android.content.SharedPreferences
 import android.util.Log
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
 
+/**
+ * Sesión del usuario autenticado. Se lee de SharedPreferences una sola vez,
+ * en el primer acceso, y después se sirve desde memoria: las consultas de
+ * usuario y rol no tocan disco ni base de datos. Los cambios se publican en
+ * [sesion] y se persisten con apply(), que escribe a disco en segundo plano.
+ */
 object SessionManager {
 
     private const val PREFS_NAME = "user_session"
     private const val KEY_USERNAME = "username"
     private const val KEY_ROL = "rol"
 
+    data class Sesion(val username: String, val rol: String) {
+        val esAdmin: Boolean get() = rol.equals("admin", ignoreCase = true)
+    }
+
+    private val estado = MutableStateFlow<Sesion?>(null)
+
+    @Volatile
+    private var prefs: SharedPreferences? = null
+
+    private fun cargar(context: Context): SharedPreferences {
+        prefs?.let { return it }
+        synchronized(this) {
+            prefs?.let { return it }
+            val nuevas = context.applicationContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            val username = nuevas.getString(KEY_USERNAME, null)
+            val rol = nuevas.getString(KEY_ROL, null)
+            estado.value = if (username != null && rol != null) Sesion(username, rol) else null
+            prefs = nuevas
+            return nuevas
+        }
+    }
+
+    /** Sesión actual y sus cambios: login, logout o cambio de rol. */
+    fun sesion(context: Context): StateFlow<Sesion?> {
+        cargar(context)
+        return estado.asStateFlow()
+    }
+
+    fun sesionActual(context: Context): Sesion? {
+        cargar(context)
+        return estado.value
+    }
+
     fun saveUserSession(context: Context, username: String, rol: String) {
         try {
-            val prefs: SharedPreferences =
-                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-            val editor = prefs.edit()
-            editor.putString(KEY_USERNAME, username)
-            editor.putString(KEY_ROL, rol)
-            editor.apply()
+            val prefs = cargar(context)
+            estado.value = Sesion(username, rol)
+            prefs.edit()
+                .putString(KEY_USERNAME, username)
+                .putString(KEY_ROL, rol)
+                .apply()
             Log.d("SessionManager", "Sesión guardada: $username - $rol")
         } catch (e: Exception) {
             Log.e("SessionManager", "Error guardando sesión", e)
@@ -25,34 +67,44 @@ object SessionManager {
     }
 
     fun getCurrentUserEmail(context: Context): String? {
-        return try {
-            val prefs: SharedPreferences =
-                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-            prefs.getString(KEY_USERNAME, null)
-        } catch (e: Exception) {
-            Log.e("SessionManager", "Error obteniendo sesión", e)
-            null
-        }
+        return sesionActual(context)?.username
     }
 
     fun getCurrentUserRole(context: Context): String? {
-        return try {
-            val prefs: SharedPreferences =
-                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-            prefs.getString(KEY_ROL, null)
-        } catch (e: Exception) {
-            Log.e("SessionManager", "Error obteniendo rol", e)
-            null
+        return sesionActual(context)?.rol
+    }
+
+    fun esAdmin(context: Context): Boolean {
+        return sesionActual(context)?.esAdmin ?: false
+    }
+
+    /**
+     * Rol de [username] si es el usuario de la sesión, o null si es otro
+     * usuario y hay que consultarlo en la base.
+     */
+    fun rolSiEsSesion(context: Context, username: String): String? {
+        val actual = sesionActual(context) ?: return null
+        return if (actual.username.equals(username.trim(), ignoreCase = true)) actual.rol else null
+    }
+
+    /** Refleja en la sesión un cambio de rol hecho desde la gestión de usuarios. */
+    fun rolActualizado(context: Context, username: String, nuevoRol: String) {
+        val actual = sesionActual(context) ?: return
+        if (actual.username.equals(username.trim(), ignoreCase = true) && actual.rol != nuevoRol) {
+            saveUserSession(context, actual.username, nuevoRol)
         }
     }
 
+    /** Si se eliminó el usuario de la sesión, la sesión deja de ser válida. */
+    fun usuarioEliminado(context: Context, username: String) {
+        if (rolSiEsSesion(context, username) != null) logout(context)
+    }
+
     fun logout(context: Context) {
         try {
-            val prefs: SharedPreferences =
-                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-            val editor = prefs.edit()
-            editor.clear()
-            editor.apply()
+            val prefs = cargar(context)
+            estado.value = null
+            prefs.edit().clear().apply()
             Log.d("SessionManager", "Sesión cerrada")
         } catch (e: Exception) {
             Log.e("SessionManager", "Error cerrando sesión", e)
@@ -60,7 +112,7 @@ object SessionManager {
     }
 
     fun isLoggedIn(context: Context): Boolean {
-        return getCurrentUserEmail(context) != null
+        return sesionActual(context) != null
     }
 
     fun getUsername(context: Context): String? {
@@ -78,4 +130,4 @@ object SessionManager {
     fun clearSession(context: Context) {
         logout(context)
     }
-}
\ No newline at end of file
+}
@@ -37,8 +37,7 @@ object SessionValidator {
 
 
     fun esUsuarioAdmin(context: Context): Boolean {
-        val rol = obtenerRolActual(context)
-        return rol?.equals("admin", ignoreCase = true) ?: false
+        return SessionManager.esAdmin(context)
     }
 
 
@@ -8,6 +8,8 @@ import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import com.example.myapplication.R
 import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.helpers.VistaTablas
+import com.example.myapplication.models.Dinero
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
@@ -16,6 +18,7 @@ import kotlinx.coroutines.withContext
 class VerReportesActivity : AppCompatActivity() {
 
     private lateinit var dbHelper: DatabaseHelper
+    private lateinit var vistaEstadisticas: VistaTablas
 
     private lateinit var tvTotalUsuarios: TextView
     private lateinit var tvTotalProductos: TextView
@@ -35,7 +38,8 @@ class VerReportesActivity : AppCompatActivity() {
         Log.d(TAG, "Iniciando VerReportesActivity")
 
         // Inicializar la base de datos
-        dbHelper = DatabaseHelper(this)
+        dbHelper = DatabaseHelper.getInstance(this)
+        vistaEstadisticas = VistaTablas(dbHelper, DatabaseHelper.TABLE_ESTADISTICAS)
 
         // Vincular elementos del layout
         tvTotalUsuarios = findViewById(R.id.tvTotalUsuarios)
@@ -46,17 +50,14 @@ class VerReportesActivity : AppCompatActivity() {
         // Verificar si recibimos datos del AdminActivity
         val totalUsuariosIntent = intent.getIntExtra("totalUsuarios", -1)
         val totalProductosIntent = intent.getIntExtra("totalProductos", -1)
-        val totalCarritoIntent = intent.getDoubleExtra("totalCarrito", -1.0)
+        val totalCarritoIntent = intent.getLongExtra("totalCarrito", 0L)
 
         if (totalUsuariosIntent != -1) {
-            // Usar datos del intent
+            // Usar datos del intent hasta que onResume lea el resumen
             tvTotalUsuarios.text = "Total de usuarios registrados: $totalUsuariosIntent"
             tvTotalProductos.text = "Total de productos registrados: $totalProductosIntent"
-            tvTotalCarrito.text = "Total del carrito: $${"%.2f".format(totalCarritoIntent)}"
+            tvTotalCarrito.text = Dinero.formatear("Total del carrito: ", totalCarritoIntent)
             Log.d(TAG, "Datos cargados desde intent")
-        } else {
-            // Cargar desde base de datos
-            actualizarDatos()
         }
 
         // Botón para refrescar los reportes manualmente
@@ -77,29 +78,35 @@ class VerReportesActivity : AppCompatActivity() {
             try {
                 Log.d(TAG, "Iniciando actualización de datos...")
 
-                val totalUsuarios = withContext(Dispatchers.IO) {
-                    dbHelper.obtenerCantidadUsuarios()
-                }
-
-                val totalProductos = withContext(Dispatchers.IO) {
-                    dbHelper.obtenerCantidadProductos()
-                }
-
-                val totalCarrito = withContext(Dispatchers.IO) {
-                    dbHelper.calcularTotalCarrito()
+                // Una sola lectura de la fila de estadísticas que mantienen los triggers
+                val (totalUsuarios, totalProductos, totalCarrito) = withContext(Dispatchers.IO) {
+                    dbHelper.obtenerEstadisticasGenerales().use { cursor ->
+                        if (cursor.moveToFirst()) {
+                            Triple(
+                                cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TOTAL_USUARIOS)),
+                                cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_TOTAL_PRODUCTOS)),
+                                cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_VALOR_CARRITO))
+                            )
+                        } else {
+                            Triple(0, 0, 0L)
+                        }
+                    }
                 }
 
                 Log.d(TAG, "Datos obtenidos - Usuarios: $totalUsuarios, Productos: $totalProductos, Carrito: $totalCarrito")
+                Log.d(TAG, "Caché de consultas: ${dbHelper.cacheConsultas()}")
+                Log.d(TAG, "Escritor de la base: ${dbHelper.escrituras()}")
 
                 // Actualizar la interfaz de usuario
                 tvTotalUsuarios.text = "Total de usuarios registrados: $totalUsuarios"
                 tvTotalProductos.text = "Total de productos registrados: $totalProductos"
-                tvTotalCarrito.text = "Total del carrito: $${"%.2f".format(totalCarrito)}"
+                tvTotalCarrito.text = Dinero.formatear("Total del carrito: ", totalCarrito)
 
                 Toast.makeText(this@VerReportesActivity, "Reportes actualizados", Toast.LENGTH_SHORT).show()
 
             } catch (e: Exception) {
                 Log.e(TAG, "ERROR actualizando datos: ${e.message}", e)
+                vistaEstadisticas.olvidar()
 
                 // Manejo de errores
                 tvTotalUsuarios.text = "Error cargando usuarios: ${e.message}"
@@ -116,15 +123,10 @@ class VerReportesActivity : AppCompatActivity() {
 
     override fun onResume() {
         super.onResume()
-        Log.d(TAG, "onResume - Actualizando datos")
-        // Actualizar datos cuando el usuario vuelve a esta actividad
-        actualizarDatos()
-    }
-
-    override fun onDestroy() {
-        super.onDestroy()
-        Log.d(TAG, "onDestroy - Cerrando conexión")
-        // Cerrar la conexión de la base de datos
-        dbHelper.close()
+        // Solo si alguna escritura tocó el resumen desde la última lectura
+        if (vistaEstadisticas.desactualizada()) {
+            Log.d(TAG, "onResume - Actualizando datos")
+            actualizarDatos()
+        }
     }
 }
\ No newline at end of file
@@ -5,16 +5,25 @@ import android.view.View
 import android.view.ViewGroup
 import android.widget.ImageView
 import android.widget.TextView
+import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import com.bumptech.glide.Glide
 import com.example.myapplication.R
+import com.example.myapplication.models.Dinero
 import com.example.myapplication.models.Producto
 
 class CarritoAdapter(
-    private var productos: MutableList<Producto>,
+    productos: List<Producto>,
     private val onDeleteClick: (Producto) -> Unit,
     private val onQuantityChange: (Producto, Int) -> Unit
-) : RecyclerView.Adapter<CarritoAdapter.ViewHolder>() {
+) : ListAdapter<Producto, CarritoAdapter.ViewHolder>(ProductoDiff) {
+
+    // Las filas se leen de currentList con getItem(); el estado del carrito
+    // es de CarritoRepositorio y llega como listas nuevas
+    init {
+        setHasStableIds(true)
+        submitList(productos.toList())
+    }
 
     inner class ViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
         private val ivImage: ImageView = itemView.findViewById(R.id.ivProductImage)
@@ -26,28 +35,18 @@ class CarritoAdapter(
         private val btnDelete: ImageView = itemView.findViewById(R.id.btnDelete)
         private val tvSubtotal: TextView = itemView.findViewById(R.id.tvSubtotal)
 
-        fun bind(producto: Producto) {
-            tvName.text = producto.nombre
-            tvPrice.text = "$${"%.2f".format(producto.precio)}"
-            tvQuantity.text = producto.cantidad.toString()
-
-            // Calcular y mostrar subtotal
-            val subtotal = producto.precio * producto.cantidad
-            tvSubtotal.text = "Subtotal: $${"%.2f".format(subtotal)}"
-
-            // Cargar imagen
-            Glide.with(itemView.context)
-                .load(producto.imagen_path)
-                .placeholder(R.drawable.ic_image_placeholder)
-                .into(ivImage)
+        init {
+            // Los listeners leen la fila actual: tras un enlace parcial la
+            // cantidad capturada en bind() ya no sería la vigente
 
             // Botón eliminar producto
             btnDelete.setOnClickListener {
-                onDeleteClick(producto)
+                productoActual()?.let(onDeleteClick)
             }
 
             // Botón restar cantidad
             btnMinus.setOnClickListener {
+                val producto = productoActual() ?: return@setOnClickListener
                 val nuevaCantidad = producto.cantidad - 1
                 if (nuevaCantidad > 0) {
                     onQuantityChange(producto, nuevaCantidad)
@@ -59,71 +58,70 @@ class CarritoAdapter(
 
             // Botón aumentar cantidad
             btnPlus.setOnClickListener {
-                val nuevaCantidad = producto.cantidad + 1
-                onQuantityChange(producto, nuevaCantidad)
+                val producto = productoActual() ?: return@setOnClickListener
+                onQuantityChange(producto, producto.cantidad + 1)
             }
         }
-    }
-
-    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
-        val view = LayoutInflater.from(parent.context)
-            .inflate(R.layout.item_carrito, parent, false)
-        return ViewHolder(view)
-    }
-
-    override fun onBindViewHolder(holder: ViewHolder, position: Int) {
-        holder.bind(productos[position])
-    }
-
-    override fun getItemCount(): Int = productos.size
 
-    fun updateProductos(newProductos: List<Producto>) {
-        productos.clear()
-        productos.addAll(newProductos)
-        notifyDataSetChanged()
-    }
+        private fun productoActual(): Producto? {
+            val posicion = bindingAdapterPosition
+            return if (posicion != RecyclerView.NO_POSITION) getItem(posicion) else null
+        }
 
-    fun getProductoAt(position: Int): Producto? {
-        return if (position in 0 until productos.size) {
-            productos[position]
-        } else {
-            null
+        fun bind(producto: Producto) {
+            tvName.text = producto.nombre
+            tvPrice.text = producto.precioTexto
+            bindCantidad(producto)
+
+            // Mismo tamaño y recorte que en el listado de productos: comparten la entrada de caché
+            val lado = itemView.resources.getDimensionPixelSize(R.dimen.imagen_lista)
+            Glide.with(ivImage)
+                .load(producto.imagenLista())
+                .override(lado, lado)
+                .centerCrop()
+                .placeholder(R.drawable.ic_image_placeholder)
+                .into(ivImage)
         }
-    }
 
-    fun eliminarProducto(productoId: Int) {
-        val index = productos.indexOfFirst { it.id == productoId }
-        if (index != -1) {
-            productos.removeAt(index)
-            notifyItemRemoved(index)
+        /** Solo cantidad y subtotal; la imagen no se vuelve a pedir. */
+        fun bindCantidad(producto: Producto) {
+            tvQuantity.text = producto.cantidad.toString()
+            tvSubtotal.text = Dinero.formatear("Subtotal: ", producto.subtotalCentavos())
         }
-    }
 
-    fun actualizarCantidad(productoId: Int, nuevaCantidad: Int) {
-        val index = productos.indexOfFirst { it.id == productoId }
-        if (index != -1) {
-            productos[index].cantidad = nuevaCantidad
-            notifyItemChanged(index)
+        fun bindTextos(producto: Producto) {
+            tvName.text = producto.nombre
+            tvPrice.text = producto.precioTexto
+            bindCantidad(producto)
         }
     }
 
-    fun calcularTotalCarrito(): Double {
-        return productos.sumOf { it.precio * it.cantidad }
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
+        val view = LayoutInflater.from(parent.context)
+            .inflate(R.layout.item_carrito, parent, false)
+        return ViewHolder(view)
     }
 
-    fun obtenerCantidadTotalProductos(): Int {
-        return productos.sumOf { it.cantidad }
+    override fun onBindViewHolder(holder: ViewHolder, position: Int) {
+        holder.bind(getItem(position))
     }
 
-    fun estaVacio(): Boolean {
-        return productos.isEmpty()
+    override fun onBindViewHolder(holder: ViewHolder, position: Int, payloads: MutableList<Any>) {
+        val cambios = if (payloads.isEmpty()) 0 else ProductoDiff.cambios(payloads)
+        when {
+            cambios == 0 -> onBindViewHolder(holder, position)
+            (cambios and ProductoDiff.PAYLOAD_TEXTO) != 0 -> holder.bindTextos(getItem(position))
+            else -> holder.bindCantidad(getItem(position))
+        }
     }
 
-    fun limpiarCarrito() {
-        val itemCount = productos.size
-        productos.clear()
-        if (itemCount > 0) {
-            notifyItemRangeRemoved(0, itemCount)
-        }
+    override fun getItemId(position: Int): Long = getItem(position).id.toLong()
+
+    /**
+     * Reemplaza la lista; la diferencia se calcula fuera del hilo principal.
+     * La lista no debe modificarse después: cada cambio entrega una nueva.
+     */
+    fun updateProductos(newProductos: List<Producto>) {
+        submitList(newProductos)
     }
-}
\ No newline at end of file
+}
@@ -1,76 +1,92 @@
 package com.example.myapplication.adapters
 
 import android.content.Context
+import android.graphics.drawable.Drawable
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
 import android.widget.Button
 import android.widget.ImageView
 import android.widget.TextView
+import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import com.bumptech.glide.Glide
+import com.bumptech.glide.ListPreloader
+import com.bumptech.glide.RequestBuilder
+import com.bumptech.glide.RequestManager
 import com.example.myapplication.R
 import com.example.myapplication.models.Producto
 
 class ProductoAdapter(
     private val context: Context,
-    private var productos: List<Producto>,
+    productos: List<Producto>,
     private val onItemClick: (Producto) -> Unit,
     private val onEditClick: (Producto) -> Unit,
     private val onDeleteClick: (Producto) -> Unit,
     private val isAdmin: Boolean = false
-) : RecyclerView.Adapter<ProductoAdapter.ProductoViewHolder>() {
+) : ListAdapter<Producto, ProductoAdapter.ProductoViewHolder>(ProductoDiff),
+    ListPreloader.PreloadModelProvider<Producto> {
+
+    // Estado más reciente; cada cambio entrega una copia para que dos cambios
+    // seguidos no partan de una lista cuyo diff todavía no terminó
+    private val productos = ArrayList(productos)
+
+    /** Lado en px de la imagen de cada fila; el precargador usa el mismo. */
+    val ladoImagen: Int = context.resources.getDimensionPixelSize(R.dimen.imagen_lista)
+
+    init {
+        setHasStableIds(true)
+        submitList(productos.toList())
+    }
 
     inner class ProductoViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
         private val tvNombre: TextView = itemView.findViewById(R.id.tvProductName)
-        private val tvDescripcion: TextView = itemView.findViewById(R.id.tvProductDescription)
+        private val tvCategoria: TextView = itemView.findViewById(R.id.tvProductCategory)
         private val tvPrecio: TextView = itemView.findViewById(R.id.tvProductPrice)
         private val ivImagen: ImageView = itemView.findViewById(R.id.ivProductImage)
         private val btnEdit: Button = itemView.findViewById(R.id.btnEdit)
         private val btnDelete: Button = itemView.findViewById(R.id.btnDelete)
 
+        init {
+            // Los listeners leen la fila actual: un enlace parcial no los reemplaza
+            itemView.setOnClickListener { productoActual()?.let(onItemClick) }
+            btnEdit.setOnClickListener { productoActual()?.let(onEditClick) }
+            btnDelete.setOnClickListener { productoActual()?.let(onDeleteClick) }
+
+            val visibilidadAdmin = if (isAdmin) View.VISIBLE else View.GONE
+            btnEdit.visibility = visibilidadAdmin
+            btnDelete.visibility = visibilidadAdmin
+        }
+
+        private fun productoActual(): Producto? {
+            val posicion = bindingAdapterPosition
+            return if (posicion != RecyclerView.NO_POSITION) getItem(posicion) else null
+        }
+
         fun bind(producto: Producto) {
-            tvNombre.text = producto.nombre
-            tvDescripcion.text = producto.descripcion
-            tvPrecio.text = "$${"%.2f".format(producto.precio)}"
+            bindTextos(producto)
 
-            if (producto.imagen_path?.isNotEmpty() == true) {
+            if (producto.imagenLista().isNotEmpty()) {
                 try {
-                    Glide.with(context)
-                        .load(producto.imagen_path)
+                    // Ligado a la vista: al reciclarse la fila la carga anterior se cancela
+                    solicitudImagen(Glide.with(ivImagen), producto)
                         .placeholder(R.drawable.ic_image_placeholder)
                         .error(R.drawable.ic_image_placeholder)
-                        .centerCrop()
                         .into(ivImagen)
                 } catch (e: Exception) {
                     ivImagen.setImageResource(R.drawable.ic_image_placeholder)
                 }
             } else {
+                Glide.with(ivImagen).clear(ivImagen)
                 ivImagen.setImageResource(R.drawable.ic_image_placeholder)
             }
+        }
 
-            if (isAdmin) {
-                btnEdit.visibility = View.VISIBLE
-                btnDelete.visibility = View.VISIBLE
-
-                btnEdit.setOnClickListener {
-                    onEditClick(producto)
-                }
-                btnDelete.setOnClickListener {
-                    onDeleteClick(producto)
-                }
-
-                itemView.setOnClickListener {
-                    onItemClick(producto)
-                }
-            } else {
-                btnEdit.visibility = View.GONE
-                btnDelete.visibility = View.GONE
-
-                itemView.setOnClickListener {
-                    onItemClick(producto)
-                }
-            }
+        fun bindTextos(producto: Producto) {
+            tvNombre.text = producto.nombre
+            // Las filas vienen de COLUMNAS_LISTA_PRODUCTOS: sin descripción
+            tvCategoria.text = producto.categoria
+            tvPrecio.text = producto.precioTexto
         }
     }
 
@@ -81,23 +97,57 @@ class ProductoAdapter(
     }
 
     override fun onBindViewHolder(holder: ProductoViewHolder, position: Int) {
-        holder.bind(productos[position])
+        holder.bind(getItem(position))
+    }
+
+    override fun onBindViewHolder(holder: ProductoViewHolder, position: Int, payloads: MutableList<Any>) {
+        // La cantidad no se muestra en el listado: cualquier payload es de textos
+        if (payloads.isEmpty() || ProductoDiff.cambios(payloads) == 0) {
+            onBindViewHolder(holder, position)
+        } else {
+            holder.bindTextos(getItem(position))
+        }
     }
 
-    override fun getItemCount(): Int = productos.size
+    override fun getItemId(position: Int): Long = getItem(position).id.toLong()
 
+    /**
+     * Carga de la imagen de una fila. La fila y el precargador deben pedir
+     * exactamente lo mismo (tamaño y transformación) para que la clave de
+     * caché coincida y la fila encuentre el bitmap ya decodificado.
+     */
+    private fun solicitudImagen(glide: RequestManager, producto: Producto): RequestBuilder<Drawable> {
+        return glide.load(producto.imagenLista())
+            .override(ladoImagen, ladoImagen)
+            .centerCrop()
+    }
+
+    override fun getPreloadItems(position: Int): List<Producto> {
+        if (position >= itemCount) return emptyList()
+        val producto = getItem(position)
+        return if (producto.imagenLista().isNotEmpty()) listOf(producto) else emptyList()
+    }
+
+    override fun getPreloadRequestBuilder(item: Producto): RequestBuilder<*> {
+        return solicitudImagen(Glide.with(context), item)
+    }
+
+    /** Reemplaza la lista; la diferencia se calcula fuera del hilo principal. */
     fun updateProductos(newProductos: List<Producto>) {
-        productos = newProductos
-        notifyDataSetChanged()
+        productos.clear()
+        productos.addAll(newProductos)
+        submitList(productos.toList())
+    }
+
+    fun agregarProductos(nuevos: List<Producto>) {
+        if (nuevos.isEmpty()) return
+        productos.addAll(nuevos)
+        submitList(productos.toList())
     }
 
     fun eliminarProducto(productoId: Int) {
-        val nuevaLista = productos.toMutableList()
-        val index = nuevaLista.indexOfFirst { it.id == productoId }
-        if (index != -1) {
-            nuevaLista.removeAt(index)
-            productos = nuevaLista
-            notifyItemRemoved(index)
+        if (productos.removeAll { it.id == productoId }) {
+            submitList(productos.toList())
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package com.example.myapplication.adapters
+
+import androidx.recyclerview.widget.DiffUtil
+import com.example.myapplication.models.Producto
+
+/**
+ * Diferencias entre listas de productos para ListAdapter. Producto.equals
+ * solo compara el id, así que el contenido se compara campo por campo.
+ *
+ * Cuando cambian campos que no son la imagen, el cambio llega como payload
+ * y el ViewHolder actualiza solo esas vistas en lugar de volver a enlazar
+ * la fila completa.
+ */
+object ProductoDiff : DiffUtil.ItemCallback<Producto>() {
+
+    /** Cambió la cantidad: cantidad y subtotal. */
+    const val PAYLOAD_CANTIDAD = 1
+
+    /** Cambiaron nombre, descripción, precio o stock. */
+    const val PAYLOAD_TEXTO = 2
+
+    override fun areItemsTheSame(oldItem: Producto, newItem: Producto): Boolean {
+        return oldItem.id == newItem.id
+    }
+
+    override fun areContentsTheSame(oldItem: Producto, newItem: Producto): Boolean {
+        return oldItem.cantidad == newItem.cantidad && mismosTextos(oldItem, newItem) &&
+                mismaImagen(oldItem, newItem)
+    }
+
+    override fun getChangePayload(oldItem: Producto, newItem: Producto): Any? {
+        // Con otra imagen hace falta el enlace completo
+        if (!mismaImagen(oldItem, newItem)) return null
+        var cambios = 0
+        if (oldItem.cantidad != newItem.cantidad) cambios = cambios or PAYLOAD_CANTIDAD
+        if (!mismosTextos(oldItem, newItem)) cambios = cambios or PAYLOAD_TEXTO
+        return cambios
+    }
+
+    // La fila muestra la miniatura en cuanto se genera, aunque la original no cambie
+    private fun mismaImagen(a: Producto, b: Producto): Boolean {
+        return a.imagen_path == b.imagen_path && a.miniaturaLista == b.miniaturaLista
+    }
+
+    private fun mismosTextos(a: Producto, b: Producto): Boolean {
+        return a.nombre == b.nombre && a.descripcion == b.descripcion && a.precioCentavos == b.precioCentavos &&
+                a.stock == b.stock && a.categoria == b.categoria
+    }
+
+    /** Unión de los payloads acumulados para una fila; 0 si alguno pide enlace completo. */
+    fun cambios(payloads: List<Any>): Int {
+        var cambios = 0
+        for (payload in payloads) {
+            if (payload !is Int) return 0
+            cambios = cambios or payload
+        }
+        return cambios
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.myapplication.database;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Resultados de consultas de lectura en memoria, por consulta y argumentos.
+ * El tamaño se acota por un peso estimado en bytes y se desaloja la entrada
+ * usada hace más tiempo. Cada entrada recuerda las tablas de las que salió:
+ * una escritura en cualquiera de ellas la descarta (ver InvalidacionTablas).
+ *
+ * Los cursores se guardan como copias de sus filas y cada acierto entrega un
+ * MatrixCursor nuevo, así quien lo recibe lo puede recorrer y cerrar como
+ * cualquier otro.
+ */
+public final class CacheConsultas {
+
+    /** Filas copiadas de un cursor, listas para entregarse otra vez. */
+    static final class Filas {
+        private final String[] columnas;
+        private final Object[][] filas;
+        final long bytes;
+
+        private Filas(String[] columnas, Object[][] filas, long bytes) {
+            this.columnas = columnas;
+            this.filas = filas;
+            this.bytes = bytes;
+        }
+
+        /** Lee el cursor completo y lo cierra. */
+        static Filas copiar(Cursor cursor) {
+            try {
+                String[] columnas = cursor.getColumnNames();
+                Object[][] filas = new Object[cursor.getCount()][];
+                long bytes = PESO_OBJETO;
+                int fila = 0;
+                while (cursor.moveToNext()) {
+                    Object[] valores = new Object[columnas.length];
+                    for (int i = 0; i < columnas.length; i++) {
+                        valores[i] = leer(cursor, i);
+                        bytes += peso(valores[i]);
+                    }
+                    filas[fila++] = valores;
+                    bytes += PESO_OBJETO + 8L * columnas.length;
+                }
+                return new Filas(columnas, filas, bytes);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        Cursor cursor() {
+            MatrixCursor cursor = new MatrixCursor(columnas, filas.length);
+            for (Object[] fila : filas) {
+                cursor.addRow(fila);
+            }
+            return cursor;
+        }
+
+        private static Object leer(Cursor cursor, int i) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER: return cursor.getLong(i);
+                case Cursor.FIELD_TYPE_FLOAT: return cursor.getDouble(i);
+                case Cursor.FIELD_TYPE_STRING: return cursor.getString(i);
+                case Cursor.FIELD_TYPE_BLOB: return cursor.getBlob(i);
+                default: return null;
+            }
+        }
+    }
+
+    // Estimaciones para ART: cabecera de objeto y un char de String en UTF-16
+    static final long PESO_OBJETO = 16;
+
+    static long peso(Object valor) {
+        if (valor == null) return 0;
+        if (valor instanceof String) return PESO_OBJETO + 24 + 2L * ((String) valor).length();
+        if (valor instanceof byte[]) return PESO_OBJETO + ((byte[]) valor).length;
+        return PESO_OBJETO + 8;
+    }
+
+    private static final class Entrada {
+        final Object valor;
+        final long bytes;
+        final String[] tablas;
+        final long version;
+
+        Entrada(Object valor, long bytes, String[] tablas, long version) {
+            this.valor = valor;
+            this.bytes = bytes;
+            this.tablas = tablas;
+            this.version = version;
+        }
+    }
+
+    private final long maximoBytes;
+    private final InvalidacionTablas invalidacion;
+
+    // Orden de acceso: la primera entrada es la usada hace más tiempo
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(32, 0.75f, true);
+    private long bytes;
+
+    private long aciertos;
+    private long fallos;
+    private long desalojos;
+    private long invalidadas;
+
+    CacheConsultas(long maximoBytes, InvalidacionTablas invalidacion) {
+        this.maximoBytes = maximoBytes;
+        this.invalidacion = invalidacion;
+    }
+
+    static String clave(String consulta, Object... args) {
+        StringBuilder sb = new StringBuilder(consulta);
+        for (Object arg : args) {
+            sb.append('\u0000').append(arg);
+        }
+        return sb.toString();
+    }
+
+    /** @return el valor guardado, o null si no está (cuenta como fallo) */
+    synchronized Object obtener(String clave) {
+        Entrada entrada = entradas.get(clave);
+        // La versión se vuelve a comparar: entre que una escritura confirma y
+        // que llega el aviso a invalidar() una lectura no debe ver el valor viejo
+        if (entrada != null && invalidacion.version(entrada.tablas) != entrada.version) {
+            quitar(clave, entrada);
+            entrada = null;
+        }
+        if (entrada == null) {
+            fallos++;
+            return null;
+        }
+        aciertos++;
+        return entrada.valor;
+    }
+
+    /**
+     * Versión de las tablas antes de consultar; se pasa a {@link #poner} para
+     * no guardar un resultado que una escritura concurrente ya dejó viejo.
+     */
+    long versionDe(String... tablas) {
+        return invalidacion.version(tablas);
+    }
+
+    synchronized void poner(String clave, Object valor, long peso, long versionLeida, String... tablas) {
+        if (valor == null || peso > maximoBytes) return;
+        if (invalidacion.version(tablas) != versionLeida) return;
+
+        Entrada previa = entradas.put(clave, new Entrada(valor, peso, tablas, versionLeida));
+        if (previa != null) bytes -= previa.bytes;
+        bytes += peso;
+
+        Iterator<Entrada> it = entradas.values().iterator();
+        while (bytes > maximoBytes && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+            desalojos++;
+        }
+    }
+
+    /** Descarta las entradas que leyeron alguna de las tablas. */
+    synchronized void invalidar(Set<String> tablas) {
+        Iterator<Entrada> it = entradas.values().iterator();
+        while (it.hasNext()) {
+            Entrada entrada = it.next();
+            for (String tabla : entrada.tablas) {
+                if (tablas.contains(tabla)) {
+                    bytes -= entrada.bytes;
+                    it.remove();
+                    invalidadas++;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void quitar(String clave, Entrada entrada) {
+        entradas.remove(clave);
+        bytes -= entrada.bytes;
+        invalidadas++;
+    }
+
+    synchronized void vaciar() {
+        entradas.clear();
+        bytes = 0;
+    }
+
+    public synchronized long aciertos() { return aciertos; }
+
+    public synchronized long fallos() { return fallos; }
+
+    /** Entradas quitadas por falta de espacio. */
+    public synchronized long desalojos() { return desalojos; }
+
+    /** Entradas quitadas porque se escribió una de sus tablas. */
+    public synchronized long invalidadas() { return invalidadas; }
+
+    public synchronized long bytes() { return bytes; }
+
+    @Override
+    public synchronized String toString() {
+        return "CacheConsultas{entradas=" + entradas.size() + ", bytes=" + bytes + "/" + maximoBytes +
+                ", aciertos=" + aciertos + ", fallos=" + fallos + ", desalojos=" + desalojos + ", invalidadas=" + invalidadas + "}";
+    }
+}
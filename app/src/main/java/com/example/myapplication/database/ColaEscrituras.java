@@ -0,0 +1,318 @@
+package com.example.myapplication.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteTransactionListener;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escrituras de la base ejecutadas en orden por un único hilo. Las que
+ * llegan dentro de una ventana corta se confirman juntas en una sola
+ * transacción (group commit): un fsync por lote en lugar de uno por
+ * escritura, y sin hilos compitiendo por el bloqueo de escritura.
+ *
+ * Cada escritura recibe su propio resultado o error. Si una falla, el lote
+ * se deshace y cada escritura vuelve a ejecutarse sola, así un error no
+ * arrastra a las demás; por eso una {@link Tarea} solo debe tocar la base,
+ * sin efectos fuera de ella que no se puedan repetir.
+ *
+ * Una tarea puede abrir transacciones anidadas, pero si una de ellas termina
+ * sin marcarse como exitosa SQLite deshace el lote entero al cerrarlo, aunque
+ * la tarea haya atrapado el error. El escritor lo detecta y lo trata como un
+ * error de la tarea, en lugar de dar por confirmadas escrituras deshechas.
+ *
+ * Los avisos de InvalidacionTablas de cada escritura se publican después
+ * del commit del lote, indicando el hilo que la pidió.
+ */
+public final class ColaEscrituras {
+
+    private static final String TAG = "ColaEscrituras";
+
+    /** Escritura a ejecutar en el hilo escritor. */
+    public interface Tarea<T> {
+        T ejecutar();
+    }
+
+    /** Resultado de una escritura encolada. */
+    public static final class Pendiente<T> {
+        private final Tarea<T> tarea;
+        private final Thread solicitante = Thread.currentThread();
+        private final long encolada = System.nanoTime();
+        private final CountDownLatch lista = new CountDownLatch(1);
+
+        // Solo los toca el hilo escritor hasta que se libera lista
+        private final ArrayList<String> tablas = new ArrayList<>();
+        private T resultado;
+        private Throwable error;
+
+        private Pendiente(Tarea<T> tarea) {
+            this.tarea = tarea;
+        }
+
+        private void correr() {
+            tablas.clear();
+            resultado = tarea.ejecutar();
+        }
+
+        /** Bloquea hasta que la escritura se confirma; relanza su error si falló. */
+        public T esperar() {
+            boolean interrumpido = false;
+            while (true) {
+                try {
+                    lista.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // La escritura sigue en la cola: se espera igual y se conserva la marca
+                    interrumpido = true;
+                }
+            }
+            if (interrumpido) Thread.currentThread().interrupt();
+
+            if (error instanceof RuntimeException) throw (RuntimeException) error;
+            if (error instanceof Error) throw (Error) error;
+            if (error != null) throw new RuntimeException(error);
+            return resultado;
+        }
+
+        public boolean terminada() {
+            return lista.getCount() == 0;
+        }
+    }
+
+    private final SQLiteOpenHelper helper;
+    private final InvalidacionTablas invalidacion;
+    private final long ventanaNanos;
+    private final int maximoLote;
+
+    private final LinkedBlockingQueue<Pendiente<?>> cola = new LinkedBlockingQueue<>();
+    private volatile Thread hilo;
+
+    // Solo el hilo escritor: escritura en curso dentro de un lote
+    private Pendiente<?> actual;
+
+    // Solo el hilo escritor: el lote se deshizo al cerrarlo
+    private boolean deshecho;
+    private final SQLiteTransactionListener oyenteLote = new SQLiteTransactionListener() {
+        @Override
+        public void onBegin() {
+        }
+
+        @Override
+        public void onCommit() {
+        }
+
+        @Override
+        public void onRollback() {
+            deshecho = true;
+        }
+    };
+
+    private int profundidadMaxima;
+    private long lotes;
+    private long escrituras;
+    private long lotesRepetidos;
+    private long nanosCommitTotal;
+    private long nanosCommitMaximo;
+    private long nanosEsperaTotal;
+
+    ColaEscrituras(SQLiteOpenHelper helper, InvalidacionTablas invalidacion, long ventanaMs, int maximoLote) {
+        this.helper = helper;
+        this.invalidacion = invalidacion;
+        this.ventanaNanos = TimeUnit.MILLISECONDS.toNanos(ventanaMs);
+        this.maximoLote = maximoLote;
+    }
+
+    /** Encola la escritura sin esperarla. */
+    public <T> Pendiente<T> encolar(Tarea<T> tarea) {
+        Pendiente<T> pendiente = new Pendiente<>(tarea);
+        iniciarSiHaceFalta();
+        cola.add(pendiente);
+        int profundidad = cola.size();
+        synchronized (this) {
+            if (profundidad > profundidadMaxima) profundidadMaxima = profundidad;
+        }
+        return pendiente;
+    }
+
+    /**
+     * Encola la escritura y espera su resultado; bloquea, así que se llama
+     * fuera del hilo principal. Desde el propio hilo escritor (una tarea que
+     * llama a otra) se ejecuta en el lugar, dentro del mismo lote.
+     *
+     * @throws IllegalStateException si este hilo tiene una transacción
+     *         abierta: el escritor esperaría su bloqueo para siempre
+     */
+    public <T> T ejecutar(Tarea<T> tarea) {
+        if (Thread.currentThread() == hilo) return tarea.ejecutar();
+        if (helper.getWritableDatabase().inTransaction()) {
+            throw new IllegalStateException("Escritura encolada con una transacción abierta en "
+                    + Thread.currentThread().getName());
+        }
+        return encolar(tarea).esperar();
+    }
+
+    /**
+     * Si se llama desde una escritura en curso, guarda sus tablas para
+     * anunciarlas después del commit del lote.
+     *
+     * @return false fuera de un lote: quien llama anuncia en el momento
+     */
+    boolean diferir(String... tablas) {
+        if (Thread.currentThread() != hilo || actual == null) return false;
+        Collections.addAll(actual.tablas, tablas);
+        return true;
+    }
+
+    private synchronized void iniciarSiHaceFalta() {
+        if (hilo != null) return;
+        Thread nuevo = new Thread(this::bucle, "escritor-db");
+        nuevo.setDaemon(true);
+        hilo = nuevo;
+        nuevo.start();
+    }
+
+    private void bucle() {
+        ArrayList<Pendiente<?>> lote = new ArrayList<>(maximoLote);
+        while (true) {
+            try {
+                lote.add(cola.take());
+                // La ventana cuenta desde la primera; después se toma lo que ya esté en cola
+                long limite = System.nanoTime() + ventanaNanos;
+                while (lote.size() < maximoLote) {
+                    long restante = limite - System.nanoTime();
+                    Pendiente<?> siguiente = restante > 0
+                            ? cola.poll(restante, TimeUnit.NANOSECONDS)
+                            : cola.poll();
+                    if (siguiente == null) break;
+                    lote.add(siguiente);
+                }
+            } catch (InterruptedException e) {
+                // Nadie interrumpe este hilo a propósito: se confirma lo que ya se tomó
+                if (lote.isEmpty()) continue;
+            }
+
+            if (!confirmar(lote)) {
+                Log.w(TAG, "Lote de " + lote.size() + " escrituras deshecho; se repiten una por una");
+                synchronized (this) {
+                    lotesRepetidos++;
+                }
+                for (Pendiente<?> pendiente : lote) {
+                    confirmar(Collections.<Pendiente<?>>singletonList(pendiente));
+                }
+            }
+            lote.clear();
+        }
+    }
+
+    /**
+     * Ejecuta el lote en una transacción. Con una sola escritura su error
+     * queda como resultado; con varias, cualquier error deshace el lote.
+     *
+     * @return false si el lote se deshizo y hay que repetir cada escritura sola
+     */
+    private boolean confirmar(List<Pendiente<?>> lote) {
+        boolean sola = lote.size() == 1;
+        Throwable error = null;
+        long nanosCommit = 0;
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            deshecho = false;
+            db.beginTransactionWithListener(oyenteLote);
+            try {
+                for (Pendiente<?> pendiente : lote) {
+                    actual = pendiente;
+                    pendiente.correr();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                actual = null;
+                long inicio = System.nanoTime();
+                db.endTransaction();
+                nanosCommit = System.nanoTime() - inicio;
+            }
+            // Marcado como exitoso y aun así deshecho: falló una transacción anidada
+            if (deshecho) {
+                throw new SQLiteException("Una transacción anidada falló sin propagar su error; escritura deshecha");
+            }
+        } catch (Throwable t) {
+            error = t;
+        }
+
+        if (error != null && !sola) return false;
+
+        long ahora = System.nanoTime();
+        if (error == null) {
+            long espera = 0;
+            for (Pendiente<?> pendiente : lote) {
+                espera += ahora - pendiente.encolada;
+            }
+            registrar(lote.size(), nanosCommit, espera);
+            for (Pendiente<?> pendiente : lote) {
+                if (!pendiente.tablas.isEmpty()) {
+                    invalidacion.notificarDesde(pendiente.solicitante,
+                            pendiente.tablas.toArray(new String[0]));
+                }
+            }
+        } else {
+            Log.e(TAG, "Error en escritura: " + error.getMessage(), error);
+            lote.get(0).error = error;
+        }
+
+        for (Pendiente<?> pendiente : lote) {
+            pendiente.lista.countDown();
+        }
+        return true;
+    }
+
+    private synchronized void registrar(int tamano, long nanosCommit, long nanosEspera) {
+        lotes++;
+        escrituras += tamano;
+        nanosEsperaTotal += nanosEspera;
+        nanosCommitTotal += nanosCommit;
+        if (nanosCommit > nanosCommitMaximo) nanosCommitMaximo = nanosCommit;
+    }
+
+    /** Escrituras en cola esperando al hilo escritor. */
+    public int profundidad() {
+        return cola.size();
+    }
+
+    public synchronized int profundidadMaxima() { return profundidadMaxima; }
+
+    /** Transacciones confirmadas; escrituras() / lotes() es el tamaño medio de lote. */
+    public synchronized long lotes() { return lotes; }
+
+    public synchronized long escrituras() { return escrituras; }
+
+    /** Lotes deshechos por el error de una escritura y repetidos uno por uno. */
+    public synchronized long lotesRepetidos() { return lotesRepetidos; }
+
+    /** Duración media de confirmar un lote (commit y fsync), en ms. */
+    public synchronized double latenciaCommitMs() {
+        return lotes == 0 ? 0 : nanosCommitTotal / 1e6 / lotes;
+    }
+
+    public synchronized double latenciaCommitMaximaMs() { return nanosCommitMaximo / 1e6; }
+
+    /** Tiempo medio desde que se encola una escritura hasta que se confirma, en ms. */
+    public synchronized double esperaMs() {
+        return escrituras == 0 ? 0 : nanosEsperaTotal / 1e6 / escrituras;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT,
+                "ColaEscrituras{cola=%d, maxima=%d, lotes=%d, escrituras=%d, repetidos=%d, commit=%.2fms, commitMax=%.2fms, espera=%.2fms}",
+                cola.size(), profundidadMaxima, lotes, escrituras, lotesRepetidos,
+                latenciaCommitMs(), latenciaCommitMaximaMs(), esperaMs());
+    }
+}
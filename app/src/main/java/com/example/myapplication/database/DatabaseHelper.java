@@ -3,31 +3,45 @@ package com.example.myapplication.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 import android.util.Log;
+import com.example.myapplication.models.Dinero;
 import com.example.myapplication.models.Producto;
-import java.security.MessageDigest;
-import java.security.SecureRandom;
+import com.example.myapplication.seguridad.HashPassword;
+import com.example.myapplication.seguridad.PasswordHasher;
+import com.example.myapplication.seguridad.PasswordHashers;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Locale;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     // Configuración de base de datos
     private static final String DATABASE_NAME = "miapplication.db";
-    private static final int DATABASE_VERSION = 8;
+    private static final int DATABASE_VERSION = Esquema.VERSION;
 
     // Tabla productos
     public static final String TABLE_PRODUCTOS = "productos";
     public static final String COLUMN_ID = "id";
     public static final String COLUMN_NOMBRE = "nombre";
     public static final String COLUMN_DESCRIPCION = "descripcion";
+    public static final String COLUMN_PRECIO_CENTAVOS = "precio_centavos";
+    // Ya no es columna de productos: nombre del campo en la importación
     public static final String COLUMN_PRECIO = "precio";
     public static final String COLUMN_IMAGEN_PATH = "imagen_path";
     public static final String COLUMN_STOCK = "stock";
     public static final String COLUMN_CANTIDAD = "cantidad";
     public static final String COLUMN_CATEGORIA = "categoria";
     public static final String COLUMN_FECHA_CREACION = "fecha_creacion";
+    public static final String COLUMN_SKU = "sku";
+    // Miniaturas WebP generadas a partir de imagen_path (ver MiniaturasProducto)
+    public static final String COLUMN_MINIATURA_LISTA = "miniatura_lista";
+    public static final String COLUMN_MINIATURA_DETALLE = "miniatura_detalle";
 
     // Tabla usuarios
     public static final String TABLE_USUARIOS = "usuarios";
@@ -35,6 +49,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_USERNAME = "username";
     public static final String COLUMN_PASSWORD = "password";
     public static final String COLUMN_SALT = "salt";
+    public static final String COLUMN_HASH_PARAMETROS = "hash_parametros";
     public static final String COLUMN_ROL = "rol";
     public static final String COLUMN_EMAIL = "email";
     public static final String COLUMN_FECHA_REGISTRO = "fecha_registro";
@@ -48,108 +63,178 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String TABLE_ORDENES = "ordenes";
     public static final String COLUMN_ORDEN_ID = "id_orden";
     public static final String COLUMN_FECHA_ORDEN = "fecha_orden";
-    public static final String COLUMN_TOTAL = "total";
+    public static final String COLUMN_TOTAL_CENTAVOS = "total_centavos";
     public static final String COLUMN_ESTADO = "estado";
     public static final String COLUMN_USUARIO_ORDEN = "usuario";
-    public static final String COLUMN_PRODUCTOS_ORDEN = "productos";
-
-    // Creación de tablas
-    private static final String TABLE_CREATE_PRODUCTOS =
-            "CREATE TABLE " + TABLE_PRODUCTOS + " (" +
-                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_NOMBRE + " TEXT NOT NULL, " +
-                    COLUMN_DESCRIPCION + " TEXT, " +
-                    COLUMN_PRECIO + " REAL NOT NULL, " +
-                    COLUMN_IMAGEN_PATH + " TEXT, " +
-                    COLUMN_STOCK + " INTEGER DEFAULT 0, " +
-                    COLUMN_CANTIDAD + " INTEGER DEFAULT 1, " +
-                    COLUMN_CATEGORIA + " TEXT DEFAULT 'General', " +
-                    COLUMN_FECHA_CREACION + " DATETIME DEFAULT CURRENT_TIMESTAMP);";
-
-    private static final String TABLE_CREATE_USUARIOS =
-            "CREATE TABLE " + TABLE_USUARIOS + " (" +
-                    COLUMN_USUARIO_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_USERNAME + " TEXT NOT NULL UNIQUE, " +
-                    COLUMN_PASSWORD + " TEXT NOT NULL, " +
-                    COLUMN_SALT + " TEXT, " +
-                    COLUMN_ROL + " TEXT NOT NULL, " +
-                    COLUMN_EMAIL + " TEXT, " +
-                    COLUMN_FECHA_REGISTRO + " DATETIME DEFAULT CURRENT_TIMESTAMP);";
-
-    private static final String TABLE_CREATE_CARRITO =
-            "CREATE TABLE " + TABLE_CARRITO + " (" +
-                    COLUMN_CARRITO_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    COLUMN_ID + " INTEGER NOT NULL, " +
-                    COLUMN_CANTIDAD + " INTEGER DEFAULT 1, " +
-                    COLUMN_FECHA_AGREGADO + " DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                    "FOREIGN KEY(" + COLUMN_ID + ") REFERENCES " +
-                    TABLE_PRODUCTOS + "(" + COLUMN_ID + ") ON DELETE CASCADE);";
+
+    // Tabla de líneas de orden: copia de nombre y precio al momento de la compra
+    public static final String TABLE_ORDEN_ITEMS = "orden_items";
+    public static final String COLUMN_ITEM_ID = "id_item";
+    public static final String COLUMN_PRECIO_UNITARIO_CENTAVOS = "precio_unitario_centavos";
+    public static final String ESTADO_COMPLETADA = "completada";
+
+    // Resumen de una sola fila mantenido por triggers (ver Esquema)
+    public static final String TABLE_ESTADISTICAS = "estadisticas";
+    public static final String COLUMN_TOTAL_USUARIOS = "total_usuarios";
+    public static final String COLUMN_TOTAL_PRODUCTOS = "total_productos";
+    public static final String COLUMN_UNIDADES_CARRITO = "unidades_carrito";
+    public static final String COLUMN_VALOR_CARRITO = "valor_carrito_centavos";
+    public static final String COLUMN_TOTAL_ORDENES = "total_ordenes";
+    public static final String COLUMN_TOTAL_VENTAS_CENTAVOS = "total_ventas_centavos";
+
+    // Índice de texto completo sobre productos; su definición vive en Esquema
+    public static final String TABLE_PRODUCTOS_FTS = "productos_fts";
+
+    // Resultados de agregarAlCarrito
+    public static final int CARRITO_AGREGADO = 1;
+    public static final int CARRITO_SIN_STOCK = -1;
+    public static final int CARRITO_NO_ENCONTRADO = -2;
+
+    // Resultado de finalizarCompra cuando no hay nada que comprar
+    public static final long ORDEN_CARRITO_VACIO = -1;
+
+    // Instancia compartida por todo el proceso
+    private static volatile DatabaseHelper instance;
+
+    private SentenciasPrecompiladas sentencias;
+
+    private final InvalidacionTablas invalidacion = new InvalidacionTablas();
+
+    // Categorías, productos y roles cambian pocas veces al día; las listas
+    // paginadas y las búsquedas no pasan por aquí
+    private static final long MAXIMO_CACHE_BYTES = 512 * 1024;
+    private final CacheConsultas cache = new CacheConsultas(MAXIMO_CACHE_BYTES, invalidacion);
+
+    // Lotes cortos: la ventana se suma a la latencia de una escritura aislada
+    private static final long VENTANA_LOTE_MS = 2;
+    private static final int MAXIMO_LOTE = 32;
+    private final ColaEscrituras escrituras = new ColaEscrituras(this, invalidacion, VENTANA_LOTE_MS, MAXIMO_LOTE);
+
+    // Algoritmo para hashes nuevos; los anteriores se reconocen por su prefijo
+    private final PasswordHasher passwordHasher;
+
+    /** Recibe el SQL de cada UPDATE o DELETE que ejecuta el helper. */
+    interface TrazaSentencias {
+        void ejecutada(String sql);
+    }
+
+    // Solo la fijan las pruebas, para contar sentencias
+    private volatile TrazaSentencias traza;
 
     // Constructor
-    public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    private DatabaseHelper(Context context, String nombre) {
+        super(context, nombre, null, DATABASE_VERSION);
+        passwordHasher = PasswordHashers.paraDispositivo(context);
+        // Libera enseguida la memoria de lo que quedó viejo; la caché también lo comprueba al leer
+        invalidacion.observar(cache::invalidar, TABLE_PRODUCTOS, TABLE_USUARIOS);
+        // WAL: varias conexiones de lectura pueden trabajar mientras una escribe
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Devuelve el helper único de la aplicación. Nunca se debe cerrar desde
+     * pantallas o consultas: la conexión la comparten todos los componentes.
+     */
+    public static DatabaseHelper getInstance(Context context) {
+        DatabaseHelper local = instance;
+        if (local == null) {
+            synchronized (DatabaseHelper.class) {
+                local = instance;
+                if (local == null) {
+                    local = new DatabaseHelper(context.getApplicationContext(), DATABASE_NAME);
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    /**
+     * Helper sobre otro archivo, independiente de la instancia compartida,
+     * para pruebas que no deben tocar los datos de la aplicación. Quien lo
+     * crea lo cierra y borra el archivo con Context.deleteDatabase(nombre).
+     * Con nombre null la base vive en memoria y desaparece al cerrarla.
+     */
+    static DatabaseHelper paraPruebas(Context context, String nombre) {
+        return new DatabaseHelper(context.getApplicationContext(), nombre);
+    }
+
+    /** Con null deja de trazar. */
+    void trazarSentencias(TrazaSentencias traza) {
+        this.traza = traza;
+    }
+
+    /**
+     * Registro de sentencias compiladas ligado a la conexión compartida; se
+     * recrea si la base se cerró y se volvió a abrir.
+     */
+    private synchronized SentenciasPrecompiladas sentencias() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (sentencias == null || !sentencias.perteneceA(db)) {
+            if (sentencias != null) sentencias.cerrar();
+            sentencias = new SentenciasPrecompiladas(db);
+        }
+        return sentencias;
+    }
+
+    /** Versiones y avisos de cambio por tabla; los métodos de escritura lo alimentan. */
+    public InvalidacionTablas invalidacion() {
+        return invalidacion;
+    }
+
+    /** Caché de lecturas, con sus contadores de aciertos, fallos y desalojos. */
+    public CacheConsultas cacheConsultas() {
+        return cache;
+    }
+
+    /**
+     * Hilo escritor de la base. Cada método público que escribe ya se encola
+     * aquí y espera su resultado, así que no se llama con una transacción
+     * propia abierta. ejecutar { ... } sirve para agrupar varias escrituras en
+     * una sola tarea.
+     */
+    public ColaEscrituras escrituras() {
+        return escrituras;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (sentencias != null) {
+            sentencias.cerrar();
+            sentencias = null;
+        }
+        super.close();
     }
 
     // ==================================================================
     // MÉTODOS DE CREACIÓN Y ACTUALIZACIÓN DE BD
     // ==================================================================
 
+    // Tablas, índices y migraciones están declarados en Esquema
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL(TABLE_CREATE_PRODUCTOS);
-        db.execSQL(TABLE_CREATE_USUARIOS);
-        db.execSQL(TABLE_CREATE_CARRITO);
+        Esquema.crear(db);
         insertarDatosIniciales(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d("DatabaseHelper", "Actualizando BD de versión " + oldVersion + " a " + newVersion);
-
-        if (oldVersion < 2)
-            db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_IMAGEN_PATH + " TEXT;");
-        if (oldVersion < 3) {
-            db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_STOCK + " INTEGER DEFAULT 0;");
-            db.execSQL(TABLE_CREATE_CARRITO);
-        }
-        if (oldVersion < 4)
-            db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_CANTIDAD + " INTEGER DEFAULT 1;");
-        if (oldVersion < 5)
-            db.execSQL("ALTER TABLE " + TABLE_USUARIOS + " ADD COLUMN " + COLUMN_SALT + " TEXT;");
-        if (oldVersion < 6) {
-            db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_CATEGORIA + " TEXT DEFAULT 'General';");
-            db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_FECHA_CREACION + " DATETIME DEFAULT CURRENT_TIMESTAMP;");
-            db.execSQL("ALTER TABLE " + TABLE_USUARIOS + " ADD COLUMN " + COLUMN_EMAIL + " TEXT;");
-            db.execSQL("ALTER TABLE " + TABLE_USUARIOS + " ADD COLUMN " + COLUMN_FECHA_REGISTRO + " DATETIME DEFAULT CURRENT_TIMESTAMP;");
-            db.execSQL("ALTER TABLE " + TABLE_CARRITO + " ADD COLUMN " + COLUMN_FECHA_AGREGADO + " DATETIME DEFAULT CURRENT_TIMESTAMP;");
-        }
-        if (oldVersion < 7) {
-            db.execSQL("CREATE INDEX idx_productos_nombre ON " + TABLE_PRODUCTOS + "(" + COLUMN_NOMBRE + ");");
-            db.execSQL("CREATE INDEX idx_productos_categoria ON " + TABLE_PRODUCTOS + "(" + COLUMN_CATEGORIA + ");");
-            db.execSQL("CREATE INDEX idx_usuarios_username ON " + TABLE_USUARIOS + "(" + COLUMN_USERNAME + ");");
-        }
-        if (oldVersion < 8) {
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_CARRITO);
-            db.execSQL(TABLE_CREATE_CARRITO);
-        }
+        Esquema.migrar(db, oldVersion, newVersion);
     }
 
     private void insertarDatosIniciales(SQLiteDatabase db) {
         try {
-            String saltAdmin = generarSalt();
-            String hashAdmin = hashPassword("admin123", saltAdmin);
-
             ContentValues adminValues = new ContentValues();
             adminValues.put(COLUMN_USERNAME, "admin");
-            adminValues.put(COLUMN_PASSWORD, hashAdmin);
-            adminValues.put(COLUMN_SALT, saltAdmin);
+            ponerPassword(adminValues, "admin123");
             adminValues.put(COLUMN_ROL, "admin");
             adminValues.put(COLUMN_EMAIL, "admin@miapplication.com");
             db.insert(TABLE_USUARIOS, null, adminValues);
 
-            insertarProductoEjemplo(db, "Laptop Gaming", "Laptop para gaming de alta performance", 1299.99, 10);
-            insertarProductoEjemplo(db, "Smartphone Android", "Teléfono inteligente con Android 13", 499.99, 25);
-            insertarProductoEjemplo(db, "Tablet 10 pulgadas", "Tablet perfecta para trabajo y entretenimiento", 299.99, 15);
+            insertarProductoEjemplo(db, "Laptop Gaming", "Laptop para gaming de alta performance", 129999, 10);
+            insertarProductoEjemplo(db, "Smartphone Android", "Teléfono inteligente con Android 13", 49999, 25);
+            insertarProductoEjemplo(db, "Tablet 10 pulgadas", "Tablet perfecta para trabajo y entretenimiento", 29999, 15);
 
             Log.d("DatabaseHelper", "Datos iniciales insertados correctamente");
         } catch (Exception e) {
@@ -157,11 +242,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
-    private void insertarProductoEjemplo(SQLiteDatabase db, String nombre, String descripcion, double precio, int stock) {
+    private void insertarProductoEjemplo(SQLiteDatabase db, String nombre, String descripcion, long precioCentavos, int stock) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_NOMBRE, nombre);
         values.put(COLUMN_DESCRIPCION, descripcion);
-        values.put(COLUMN_PRECIO, precio);
+        values.put(COLUMN_PRECIO_CENTAVOS, precioCentavos);
         values.put(COLUMN_STOCK, stock);
         values.put(COLUMN_CATEGORIA, "Electrónicos");
         db.insert(TABLE_PRODUCTOS, null, values);
@@ -171,25 +256,85 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     // MÉTODOS AUXILIARES DE SEGURIDAD
     // ==================================================================
 
-    private String generarSalt() {
-        byte[] salt = new byte[16];
-        new SecureRandom().nextBytes(salt);
-        StringBuilder sb = new StringBuilder();
-        for (byte b : salt) sb.append(String.format("%02x", b));
-        return sb.toString();
+    /** Hash nuevo de la contraseña en las tres columnas que lo guardan. */
+    private void ponerPassword(ContentValues values, String password) {
+        HashPassword hash = passwordHasher.hash(password);
+        values.put(COLUMN_PASSWORD, hash.hash);
+        values.put(COLUMN_SALT, hash.salt);
+        values.put(COLUMN_HASH_PARAMETROS, hash.parametros);
     }
 
-    private String hashPassword(String password, String salt) {
+    // ==================================================================
+    // MÉTODOS AUXILIARES DE SQL
+    // ==================================================================
+
+    /**
+     * Anuncia una escritura ya confirmada. Todas las tablas que se escriben
+     * tienen triggers sobre el resumen de estadísticas, así que va incluido.
+     * Visible en el paquete para ImportadorProductos, que maneja sus lotes.
+     */
+    void cambiaron(String... tablas) {
+        String[] conResumen = Arrays.copyOf(tablas, tablas.length + 1);
+        conResumen[tablas.length] = TABLE_ESTADISTICAS;
+        // Dentro de un lote de ColaEscrituras el aviso espera al commit del lote
+        if (escrituras.diferir(conResumen)) return;
+        invalidacion.notificar(conResumen);
+    }
+
+    /** Devuelve el id insertado y anuncia el cambio si la inserción tuvo éxito. */
+    private long insertado(long id, String tabla) {
+        if (id != -1) cambiaron(tabla);
+        return id;
+    }
+
+    /** Devuelve las filas afectadas y anuncia el cambio si hubo alguna. */
+    private int afectadas(int filas, String... tablas) {
+        if (filas > 0) cambiaron(tablas);
+        return filas;
+    }
+
+    private interface Consulta {
+        Cursor ejecutar();
+    }
+
+    /**
+     * Filas de la consulta desde la caché o, si no están, desde SQLite. El
+     * cursor devuelto es siempre nuevo y quien lo recibe lo cierra.
+     *
+     * @param tablas las que lee la consulta; escribir en ellas la invalida
+     */
+    private Cursor filasCacheadas(String clave, Consulta consulta, String... tablas) {
+        CacheConsultas.Filas filas = (CacheConsultas.Filas) cache.obtener(clave);
+        if (filas == null) {
+            long version = cache.versionDe(tablas);
+            filas = CacheConsultas.Filas.copiar(consulta.ejecutar());
+            cache.poner(clave, filas, filas.bytes, version, tablas);
+        }
+        return filas.cursor();
+    }
+
+    /** Inserta la fila en el hilo escritor y anuncia el cambio si tuvo éxito. */
+    private long insertar(String tabla, ContentValues values) {
+        return escrituras.ejecutar(() -> insertado(getWritableDatabase().insert(tabla, null, values), tabla));
+    }
+
+    /** Un UPDATE o DELETE en el hilo escritor; anuncia las tablas si afectó alguna fila. */
+    private int escribir(String sql, Object[] args, String... tablas) {
+        return escrituras.ejecutar(() -> afectadas(ejecutarUpdateDelete(getWritableDatabase(), sql, args), tablas));
+    }
+
+    /** Números, texto, byte[] o null, en el orden de los parámetros del SQL. */
+    private int ejecutarUpdateDelete(SQLiteDatabase db, String sql, Object... args) {
+        TrazaSentencias traza = this.traza;
+        if (traza != null) traza.ejecutada(sql);
+        SQLiteStatement statement = db.compileStatement(sql);
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            digest.update(salt.getBytes());
-            byte[] bytes = digest.digest(password.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : bytes) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (Exception e) {
-            Log.e("DatabaseHelper", "Error generando hash: " + e.getMessage());
-            return password;
+            for (int i = 0; i < args.length; i++) {
+                DatabaseUtils.bindObjectToProgram(statement, i + 1, args[i]);
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
         }
     }
 
@@ -197,117 +342,273 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     // MÉTODOS DE PRODUCTOS
     // ==================================================================
 
-    public long insertarProducto(String nombre, String descripcion, double precio, String imagenPath, int stock) {
-        SQLiteDatabase db = this.getWritableDatabase();
+    public long insertarProducto(String nombre, String descripcion, long precioCentavos, String imagenPath, int stock) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_NOMBRE, nombre);
         values.put(COLUMN_DESCRIPCION, descripcion);
-        values.put(COLUMN_PRECIO, precio);
+        values.put(COLUMN_PRECIO_CENTAVOS, precioCentavos);
         values.put(COLUMN_IMAGEN_PATH, imagenPath);
         values.put(COLUMN_STOCK, stock);
         values.put(COLUMN_CANTIDAD, 1);
-        return db.insert(TABLE_PRODUCTOS, null, values);
+        return insertar(TABLE_PRODUCTOS, values);
     }
 
     public long insertarProducto(Producto producto) {
-        SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_NOMBRE, producto.getNombre());
         values.put(COLUMN_DESCRIPCION, producto.getDescripcion());
-        values.put(COLUMN_PRECIO, producto.getPrecio());
+        values.put(COLUMN_PRECIO_CENTAVOS, producto.getPrecioCentavos());
         values.put(COLUMN_IMAGEN_PATH, producto.getImagen_path());
         values.put(COLUMN_STOCK, producto.getStock());
         values.put(COLUMN_CANTIDAD, producto.getCantidad());
         values.put(COLUMN_CATEGORIA, "General");
-        return db.insert(TABLE_PRODUCTOS, null, values);
+        return insertar(TABLE_PRODUCTOS, values);
     }
 
-    public long insertarProducto(String nombre, String descripcion, double precio, String imagenPath, int stock, String categoria) {
-        SQLiteDatabase db = this.getWritableDatabase();
+    public long insertarProducto(String nombre, String descripcion, long precioCentavos, String imagenPath, int stock, String categoria) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_NOMBRE, nombre);
         values.put(COLUMN_DESCRIPCION, descripcion);
-        values.put(COLUMN_PRECIO, precio);
+        values.put(COLUMN_PRECIO_CENTAVOS, precioCentavos);
         values.put(COLUMN_IMAGEN_PATH, imagenPath);
         values.put(COLUMN_STOCK, stock);
         values.put(COLUMN_CANTIDAD, 1);
         values.put(COLUMN_CATEGORIA, categoria);
-        return db.insert(TABLE_PRODUCTOS, null, values);
+        return insertar(TABLE_PRODUCTOS, values);
     }
 
-    public int actualizarProducto(int productoId, String nombre, String descripcion, double precio, String imagenPath, int stock) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_NOMBRE, nombre);
-        values.put(COLUMN_DESCRIPCION, descripcion);
-        values.put(COLUMN_PRECIO, precio);
-        values.put(COLUMN_IMAGEN_PATH, imagenPath);
-        values.put(COLUMN_STOCK, stock);
-        return db.update(TABLE_PRODUCTOS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)});
+    // SQL de cada consulta y escritura, visible en el paquete para que
+    // PlanConsultasTest revise el plan de las sentencias que de verdad se ejecutan
+
+    static final String SQL_ACTUALIZAR_PRODUCTO =
+            "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_NOMBRE + " = ?, " + COLUMN_DESCRIPCION + " = ?, " +
+                    COLUMN_PRECIO_CENTAVOS + " = ?, " + COLUMN_IMAGEN_PATH + " = ?, " + COLUMN_STOCK + " = ? " +
+                    "WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_ACTUALIZAR_PRODUCTO_CON_CATEGORIA =
+            "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_NOMBRE + " = ?, " + COLUMN_DESCRIPCION + " = ?, " +
+                    COLUMN_PRECIO_CENTAVOS + " = ?, " + COLUMN_IMAGEN_PATH + " = ?, " + COLUMN_STOCK + " = ?, " +
+                    COLUMN_CATEGORIA + " = ? WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_ACTUALIZAR_MINIATURAS =
+            "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_MINIATURA_LISTA + " = ?, " + COLUMN_MINIATURA_DETALLE + " = ? " +
+                    "WHERE " + COLUMN_ID + " = ? AND " + COLUMN_IMAGEN_PATH + " = ?";
+
+    // Recorre todos los productos: es la limpieza de archivos, en segundo plano y poco frecuente
+    static final String SQL_RUTAS_IMAGENES_EN_USO =
+            "SELECT " + COLUMN_IMAGEN_PATH + ", " + COLUMN_MINIATURA_LISTA + ", " + COLUMN_MINIATURA_DETALLE +
+                    " FROM " + TABLE_PRODUCTOS +
+                    " WHERE " + COLUMN_IMAGEN_PATH + " IS NOT NULL OR " + COLUMN_MINIATURA_LISTA + " IS NOT NULL";
+
+    static final String SQL_ELIMINAR_LINEA_CARRITO =
+            "DELETE FROM " + TABLE_CARRITO + " WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_ELIMINAR_PRODUCTO =
+            "DELETE FROM " + TABLE_PRODUCTOS + " WHERE " + COLUMN_ID + " = ?";
+
+    public int actualizarProducto(int productoId, String nombre, String descripcion, long precioCentavos, String imagenPath, int stock) {
+        return escribir(SQL_ACTUALIZAR_PRODUCTO, new Object[]{nombre, descripcion, precioCentavos, imagenPath, stock, productoId},
+                TABLE_PRODUCTOS);
     }
 
-    public int actualizarProducto(int productoId, String nombre, String descripcion, double precio, String imagenPath, int stock, String categoria) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_NOMBRE, nombre);
-        values.put(COLUMN_DESCRIPCION, descripcion);
-        values.put(COLUMN_PRECIO, precio);
-        values.put(COLUMN_IMAGEN_PATH, imagenPath);
-        values.put(COLUMN_STOCK, stock);
-        values.put(COLUMN_CATEGORIA, categoria);
-        return db.update(TABLE_PRODUCTOS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)});
+    public int actualizarProducto(int productoId, String nombre, String descripcion, long precioCentavos, String imagenPath, int stock, String categoria) {
+        return escribir(SQL_ACTUALIZAR_PRODUCTO_CON_CATEGORIA,
+                new Object[]{nombre, descripcion, precioCentavos, imagenPath, stock, categoria, productoId}, TABLE_PRODUCTOS);
+    }
+
+    /**
+     * Guarda las miniaturas de un producto solo si su imagen sigue siendo la
+     * misma de la que se generaron; si se cambió mientras tanto, no hace nada.
+     * Con null en ambas las quita (la imagen no se pudo procesar).
+     */
+    public boolean actualizarMiniaturas(int productoId, String imagenPath, String lista, String detalle) {
+        return escribir(SQL_ACTUALIZAR_MINIATURAS, new Object[]{lista, detalle, productoId, imagenPath},
+                TABLE_PRODUCTOS) > 0;
+    }
+
+    /** Rutas de imágenes y miniaturas que algún producto todavía usa. */
+    public HashSet<String> obtenerRutasImagenesEnUso() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        HashSet<String> rutas = new HashSet<>();
+        Cursor cursor = db.rawQuery(SQL_RUTAS_IMAGENES_EN_USO, null);
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < 3; i++) {
+                    if (!cursor.isNull(i)) rutas.add(cursor.getString(i));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return rutas;
     }
 
     public int eliminarProducto(int productoId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_CARRITO, COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)});
-        return db.delete(TABLE_PRODUCTOS, COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)});
+        return escrituras.ejecutar(() -> {
+            SQLiteDatabase db = this.getWritableDatabase();
+            ejecutarUpdateDelete(db, SQL_ELIMINAR_LINEA_CARRITO, productoId);
+            return afectadas(ejecutarUpdateDelete(db, SQL_ELIMINAR_PRODUCTO, productoId),
+                    TABLE_PRODUCTOS, TABLE_CARRITO);
+        });
     }
 
+    /**
+     * Columnas de una fila de listado. Sin descripción ni fechas: el detalle
+     * se lee por id al abrirlo (obtenerProductoPorId). La imagen es la
+     * miniatura o, si todavía no se generó, la original.
+     */
+    public static final String[] COLUMNAS_LISTA_PRODUCTOS = {
+            COLUMN_ID, COLUMN_NOMBRE, COLUMN_PRECIO_CENTAVOS, COLUMN_STOCK, COLUMN_CATEGORIA,
+            "IFNULL(" + COLUMN_MINIATURA_LISTA + ", " + COLUMN_IMAGEN_PATH + ") AS " + COLUMN_MINIATURA_LISTA
+    };
+
+    private static final String SELECT_LISTA_PRODUCTOS =
+            "SELECT " + TextUtils.join(", ", COLUMNAS_LISTA_PRODUCTOS) + " FROM " + TABLE_PRODUCTOS;
+
+    static final String SQL_TODOS_LOS_PRODUCTOS =
+            SELECT_LISTA_PRODUCTOS + " ORDER BY " + COLUMN_NOMBRE + " ASC";
+
+    static final String SQL_PRODUCTOS_POR_CATEGORIA =
+            SELECT_LISTA_PRODUCTOS + " WHERE " + COLUMN_CATEGORIA + " = ? ORDER BY " + COLUMN_NOMBRE + " ASC";
+
     public Cursor obtenerTodosLosProductos() {
         SQLiteDatabase db = this.getReadableDatabase();
-        return db.query(TABLE_PRODUCTOS, null, null, null, null, null, COLUMN_NOMBRE + " ASC");
+        return db.rawQuery(SQL_TODOS_LOS_PRODUCTOS, null);
     }
 
-    public Cursor obtenerProductosPorCategoria(String categoria) {
+    /**
+     * Página de productos ordenada por (nombre, id) con paginación por clave:
+     * la siguiente página arranca después del último (nombre, id) recibido,
+     * así el costo no depende de cuántas páginas se hayan leído antes.
+     *
+     * @param categoria       filtro opcional (null para todas)
+     * @param busqueda        texto opcional, se resuelve con el índice de texto completo
+     * @param despuesDeNombre nombre de la última fila de la página anterior (null en la primera)
+     * @param despuesDeId     id de la última fila de la página anterior
+     */
+    public Cursor obtenerPaginaProductos(String categoria, String busqueda,
+                                         String despuesDeNombre, int despuesDeId, int limite) {
         SQLiteDatabase db = this.getReadableDatabase();
-        return db.query(TABLE_PRODUCTOS, null, COLUMN_CATEGORIA + " = ?",
-                new String[]{categoria}, null, null, COLUMN_NOMBRE + " ASC");
+        ArrayList<String> args = new ArrayList<>();
+        if (despuesDeNombre != null) {
+            args.add(despuesDeNombre);
+            args.add(despuesDeNombre);
+            args.add(String.valueOf(despuesDeId));
+        }
+        if (categoria != null) args.add(categoria);
+        String terminos = construirConsultaFts(busqueda, null);
+        if (!terminos.isEmpty()) args.add(terminos);
+
+        String sql = sqlPaginaProductos(despuesDeNombre != null, categoria != null, !terminos.isEmpty(), limite);
+        return db.rawQuery(sql, args.toArray(new String[0]));
+    }
+
+    /** SQL de obtenerPaginaProductos para la combinación de filtros dada. */
+    static String sqlPaginaProductos(boolean despues, boolean porCategoria, boolean conBusqueda, int limite) {
+        StringBuilder where = new StringBuilder();
+        if (despues) {
+            // nombre >= ? acota el rango en el índice; el OR solo descarta empates ya leídos
+            where.append(COLUMN_NOMBRE).append(" >= ? AND (")
+                    .append(COLUMN_NOMBRE).append(" > ? OR ").append(COLUMN_ID).append(" > ?)");
+        }
+        if (porCategoria) {
+            if (where.length() > 0) where.append(" AND ");
+            where.append(COLUMN_CATEGORIA).append(" = ?");
+        }
+        if (conBusqueda) {
+            if (where.length() > 0) where.append(" AND ");
+            where.append(COLUMN_ID).append(" IN (SELECT docid FROM ").append(TABLE_PRODUCTOS_FTS)
+                    .append(" WHERE ").append(TABLE_PRODUCTOS_FTS).append(" MATCH ?)");
+        }
+        return SELECT_LISTA_PRODUCTOS +
+                (where.length() > 0 ? " WHERE " + where : "") +
+                " ORDER BY " + COLUMN_NOMBRE + " ASC, " + COLUMN_ID + " ASC LIMIT " + limite;
+    }
+
+    public Cursor obtenerProductosPorCategoria(String categoria) {
+        return filasCacheadas(CacheConsultas.clave("productosPorCategoria", categoria), () ->
+                this.getReadableDatabase().rawQuery(SQL_PRODUCTOS_POR_CATEGORIA, new String[]{categoria}),
+                TABLE_PRODUCTOS);
     }
 
     public Cursor buscarProductos(String query) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        return db.query(TABLE_PRODUCTOS, null,
-                COLUMN_NOMBRE + " LIKE ? OR " + COLUMN_DESCRIPCION + " LIKE ?",
-                new String[]{"%" + query + "%", "%" + query + "%"},
-                null, null, COLUMN_NOMBRE + " ASC");
+        return buscarProductos(query, 50);
     }
 
-    public Cursor obtenerCategorias() {
+    /**
+     * Búsqueda de texto completo sobre nombre, descripción y categoría.
+     * Cada palabra se busca como prefijo, sin distinguir acentos ni mayúsculas.
+     * Las coincidencias en el nombre se ordenan antes que el resto.
+     */
+    public Cursor buscarProductos(String query, int limite) {
         SQLiteDatabase db = this.getReadableDatabase();
-        return db.query(true, TABLE_PRODUCTOS,
-                new String[]{COLUMN_CATEGORIA},
-                null, null, null, null,
-                COLUMN_CATEGORIA + " ASC", null);
+        String terminos = construirConsultaFts(query, null);
+        if (terminos.isEmpty()) {
+            return db.rawQuery(sqlBuscarProductos(false, limite), null);
+        }
+        return db.rawQuery(sqlBuscarProductos(true, limite),
+                new String[]{construirConsultaFts(query, COLUMN_NOMBRE), terminos});
     }
 
-    public int obtenerStockProducto(int productoId) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
-        try {
-            cursor = db.query(TABLE_PRODUCTOS, new String[]{COLUMN_STOCK},
-                    COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)},
-                    null, null, null);
-            int stock = 0;
-            if (cursor != null && cursor.moveToFirst()) {
-                stock = cursor.getInt(0);
-            }
-            return stock;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+    /** Sin texto, los primeros por nombre; con texto, dos MATCH: en el nombre y en cualquier columna. */
+    static String sqlBuscarProductos(boolean conTexto, int limite) {
+        if (!conTexto) {
+            return "SELECT * FROM " + TABLE_PRODUCTOS + " ORDER BY " + COLUMN_NOMBRE + " ASC LIMIT " + limite;
+        }
+        return "SELECT p.* FROM " + TABLE_PRODUCTOS + " p " +
+                "INNER JOIN (" +
+                "SELECT docid, MIN(rango) AS rango FROM (" +
+                "SELECT docid, 0 AS rango FROM " + TABLE_PRODUCTOS_FTS + " WHERE " + TABLE_PRODUCTOS_FTS + " MATCH ? " +
+                "UNION ALL " +
+                "SELECT docid, 1 AS rango FROM " + TABLE_PRODUCTOS_FTS + " WHERE " + TABLE_PRODUCTOS_FTS + " MATCH ?" +
+                ") GROUP BY docid" +
+                ") m ON p." + COLUMN_ID + " = m.docid " +
+                "ORDER BY m.rango ASC, p." + COLUMN_NOMBRE + " ASC " +
+                "LIMIT " + limite;
+    }
+
+    /**
+     * Convierte texto libre en una consulta MATCH segura: solo letras y dígitos,
+     * en minúsculas, cada palabra como prefijo y opcionalmente restringida a una columna.
+     */
+    static String construirConsultaFts(String query, String columna) {
+        if (query == null) return "";
+        StringBuilder sb = new StringBuilder(query.length() + 8);
+        int i = 0;
+        int n = query.length();
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(query.charAt(i))) i++;
+            int inicio = i;
+            while (i < n && Character.isLetterOrDigit(query.charAt(i))) i++;
+            if (i > inicio) {
+                if (sb.length() > 0) sb.append(' ');
+                if (columna != null) sb.append(columna).append(':');
+                sb.append(query.substring(inicio, i).toLowerCase(Locale.ROOT)).append('*');
             }
         }
+        return sb.toString();
+    }
+
+    static final String SQL_CATEGORIAS =
+            "SELECT DISTINCT " + COLUMN_CATEGORIA + " FROM " + TABLE_PRODUCTOS + " ORDER BY " + COLUMN_CATEGORIA + " ASC";
+
+    static final String SQL_STOCK_PRODUCTO =
+            "SELECT " + COLUMN_STOCK + " FROM " + TABLE_PRODUCTOS + " WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_ACTUALIZAR_STOCK =
+            "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_STOCK + " = ? WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_PRODUCTO_POR_ID =
+            "SELECT * FROM " + TABLE_PRODUCTOS + " WHERE " + COLUMN_ID + " = ?";
+
+    public Cursor obtenerCategorias() {
+        return filasCacheadas("categorias", () ->
+                this.getReadableDatabase().rawQuery(SQL_CATEGORIAS, null),
+                TABLE_PRODUCTOS);
+    }
+
+    public int obtenerStockProducto(int productoId) {
+        return (int) sentencias().paraLong(SQL_STOCK_PRODUCTO, 0, String.valueOf(productoId));
     }
 
     public boolean actualizarStockProducto(int productoId, int nuevoStock) {
@@ -316,34 +617,42 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             return false;
         }
 
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_STOCK, nuevoStock);
-        int rowsAffected = db.update(TABLE_PRODUCTOS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)});
-        return rowsAffected > 0;
+        return escribir(SQL_ACTUALIZAR_STOCK, new Object[]{nuevoStock, productoId}, TABLE_PRODUCTOS) > 0;
     }
 
+    /**
+     * Producto por id, desde la caché si ya se leyó. La instancia puede
+     * compartirse entre llamadas: se cambia con copy(), nunca en el lugar.
+     */
     public Producto obtenerProductoPorId(int productoId) {
+        String clave = CacheConsultas.clave("producto", productoId);
+        Producto producto = (Producto) cache.obtener(clave);
+        if (producto == null) {
+            long version = cache.versionDe(TABLE_PRODUCTOS);
+            producto = leerProductoPorId(productoId);
+            if (producto != null) {
+                cache.poner(clave, producto, pesoProducto(producto), version, TABLE_PRODUCTOS);
+            }
+        }
+        return producto;
+    }
+
+    private static long pesoProducto(Producto p) {
+        return CacheConsultas.PESO_OBJETO + 48 +
+                CacheConsultas.peso(p.getNombre()) + CacheConsultas.peso(p.getDescripcion()) +
+                CacheConsultas.peso(p.getImagen_path()) + CacheConsultas.peso(p.getCategoria()) +
+                CacheConsultas.peso(p.getMiniaturaLista()) + CacheConsultas.peso(p.getMiniaturaDetalle()) +
+                CacheConsultas.peso(p.getPrecioTexto());
+    }
+
+    private Producto leerProductoPorId(int productoId) {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_PRODUCTOS,
-                    null,
-                    COLUMN_ID + " = ?",
-                    new String[]{String.valueOf(productoId)},
-                    null, null, null);
+            cursor = db.rawQuery(SQL_PRODUCTO_POR_ID, new String[]{String.valueOf(productoId)});
 
             if (cursor != null && cursor.moveToFirst()) {
-                int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID));
-                String nombre = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NOMBRE));
-                String descripcion = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DESCRIPCION));
-                double precio = cursor.getDouble(cursor.getColumnIndexOrThrow(COLUMN_PRECIO));
-                String imagenPath = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGEN_PATH));
-                int stock = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_STOCK));
-                int cantidad = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CANTIDAD));
-                String categoria = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CATEGORIA));
-
-                return new Producto(id, nombre, descripcion, precio, imagenPath, stock, cantidad, categoria);
+                return MapeadorFilas.productos(cursor).leer();
             }
             return null;
         } finally {
@@ -357,40 +666,85 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     // MÉTODOS DE USUARIOS
     // ==================================================================
 
+    static final String SQL_USUARIO_EXISTE =
+            "SELECT EXISTS(SELECT 1 FROM " + TABLE_USUARIOS + " WHERE " + COLUMN_USERNAME + " = ?)";
+
+    static final String SQL_HASH_USUARIO =
+            "SELECT " + COLUMN_HASH_PARAMETROS + ", " + COLUMN_SALT + ", " + COLUMN_PASSWORD +
+                    " FROM " + TABLE_USUARIOS + " WHERE " + COLUMN_USERNAME + " = ?";
+
+    static final String SQL_GUARDAR_PASSWORD =
+            "UPDATE " + TABLE_USUARIOS + " SET " + COLUMN_PASSWORD + " = ?, " + COLUMN_SALT + " = ?, " +
+                    COLUMN_HASH_PARAMETROS + " = ? WHERE " + COLUMN_USERNAME + " = ?";
+
+    static final String SQL_ROL_USUARIO =
+            "SELECT " + COLUMN_ROL + " FROM " + TABLE_USUARIOS + " WHERE " + COLUMN_USERNAME + " = ?";
+
+    // El hash no sale de esta clase: solo validarUsuario lo lee
+    private static final String COLUMNAS_USUARIO =
+            COLUMN_USUARIO_ID + ", " + COLUMN_USERNAME + ", " + COLUMN_ROL + ", " + COLUMN_EMAIL;
+
+    static final String SQL_USUARIO_POR_NOMBRE =
+            "SELECT " + COLUMNAS_USUARIO + " FROM " + TABLE_USUARIOS + " WHERE " + COLUMN_USERNAME + " = ?";
+
+    static final String SQL_USUARIO_POR_ID =
+            "SELECT " + COLUMNAS_USUARIO + " FROM " + TABLE_USUARIOS + " WHERE " + COLUMN_USUARIO_ID + " = ?";
+
+    static final String SQL_TODOS_LOS_USUARIOS =
+            "SELECT " + COLUMNAS_USUARIO + ", " + COLUMN_FECHA_REGISTRO + " FROM " + TABLE_USUARIOS +
+                    " ORDER BY " + COLUMN_USERNAME + " ASC";
+
+    static final String SQL_USUARIOS_POR_ROL =
+            "SELECT " + COLUMNAS_USUARIO + ", " + COLUMN_FECHA_REGISTRO + " FROM " + TABLE_USUARIOS +
+                    " WHERE " + COLUMN_ROL + " = ? ORDER BY " + COLUMN_USERNAME + " ASC";
+
+    static final String SQL_ACTUALIZAR_ROL =
+            "UPDATE " + TABLE_USUARIOS + " SET " + COLUMN_ROL + " = ? WHERE " + COLUMN_USERNAME + " = ?";
+
+    static final String SQL_ACTUALIZAR_ROL_Y_EMAIL =
+            "UPDATE " + TABLE_USUARIOS + " SET " + COLUMN_ROL + " = ?, " + COLUMN_EMAIL + " = ? " +
+                    "WHERE " + COLUMN_USERNAME + " = ?";
+
+    static final String SQL_ELIMINAR_USUARIO =
+            "DELETE FROM " + TABLE_USUARIOS + " WHERE " + COLUMN_USERNAME + " = ?";
+
+    static final String SQL_CONTAR_USUARIOS_POR_ROL =
+            "SELECT COUNT(*) FROM " + TABLE_USUARIOS + " WHERE " + COLUMN_ROL + " = ?";
+
+    static final String SQL_ROLES_UNICOS =
+            "SELECT DISTINCT " + COLUMN_ROL + " FROM " + TABLE_USUARIOS + " ORDER BY " + COLUMN_ROL + " ASC";
+
+    static final String SQL_USUARIO_COMPLETO =
+            "SELECT * FROM " + TABLE_USUARIOS + " WHERE " + COLUMN_USERNAME + " = ?";
+
+    static final String SQL_ESTADISTICAS_USUARIOS =
+            "SELECT " + COLUMN_ROL + ", COUNT(*) as cantidad FROM " + TABLE_USUARIOS +
+                    " GROUP BY " + COLUMN_ROL + " ORDER BY cantidad DESC";
+
     public boolean usuarioExiste(String username) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
-        try {
-            cursor = db.query(TABLE_USUARIOS, new String[]{COLUMN_USERNAME},
-                    COLUMN_USERNAME + " = ?", new String[]{username.toLowerCase(Locale.ROOT).trim()},
-                    null, null, null);
-            boolean existe = cursor != null && cursor.moveToFirst();
-            return existe;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+        return sentencias().paraLong(SQL_USUARIO_EXISTE, 0, username.toLowerCase(Locale.ROOT).trim()) == 1;
     }
 
     public boolean validarUsuario(String username, String password) {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_USUARIOS,
-                    new String[]{COLUMN_PASSWORD, COLUMN_SALT},
-                    COLUMN_USERNAME + " = ?",
-                    new String[]{username.toLowerCase(Locale.ROOT).trim()},
-                    null, null, null);
+            String usuario = username.toLowerCase(Locale.ROOT).trim();
+            cursor = db.rawQuery(SQL_HASH_USUARIO, new String[]{usuario});
 
-            boolean valido = false;
-            if (cursor != null && cursor.moveToFirst()) {
-                String hashAlmacenado = cursor.getString(0);
-                String salt = cursor.getString(1);
-                String hashIngresado = hashPassword(password, salt);
-                valido = hashAlmacenado.equals(hashIngresado);
+            if (cursor == null || !cursor.moveToFirst()) return false;
+            HashPassword almacenado = new HashPassword(cursor.getString(0), cursor.getBlob(1), cursor.getBlob(2));
+            cursor.close();
+            cursor = null;
+
+            if (!PasswordHashers.verificar(passwordHasher, password, almacenado)) return false;
+
+            // Contraseña correcta con un hash viejo o más débil: se reemplaza ahora que la conocemos
+            if (PasswordHashers.necesitaRehash(passwordHasher, almacenado)) {
+                guardarPassword(usuario, password);
+                Log.d("DatabaseHelper", "Hash de contraseña actualizado para " + usuario);
             }
-            return valido;
+            return true;
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -398,76 +752,50 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
-    public String obtenerRol(String username) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
-        try {
-            cursor = db.query(TABLE_USUARIOS,
-                    new String[]{COLUMN_ROL},
-                    COLUMN_USERNAME + " = ?",
-                    new String[]{username.toLowerCase(Locale.ROOT).trim()},
-                    null, null, null);
+    private int guardarPassword(String usuario, String password) {
+        // El hash se calcula antes de encolar: es lo lento y no necesita al escritor
+        HashPassword hash = passwordHasher.hash(password);
+        return escribir(SQL_GUARDAR_PASSWORD, new Object[]{hash.hash, hash.salt, hash.parametros, usuario},
+                TABLE_USUARIOS);
+    }
 
-            String rol = null;
-            if (cursor != null && cursor.moveToFirst()) {
-                rol = cursor.getString(0);
-            }
-            return rol;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+    public String obtenerRol(String username) {
+        return sentencias().paraString(SQL_ROL_USUARIO, username.toLowerCase(Locale.ROOT).trim());
     }
 
     public long insertarUsuario(String username, String password, String rol) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        String salt = generarSalt();
-        String hash = hashPassword(password, salt);
-
         ContentValues values = new ContentValues();
         values.put(COLUMN_USERNAME, username.toLowerCase(Locale.ROOT).trim());
-        values.put(COLUMN_PASSWORD, hash);
-        values.put(COLUMN_SALT, salt);
+        ponerPassword(values, password);
         values.put(COLUMN_ROL, rol);
 
-        return db.insert(TABLE_USUARIOS, null, values);
+        return insertar(TABLE_USUARIOS, values);
     }
 
     public long insertarUsuario(String username, String password, String rol, String email) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        String salt = generarSalt();
-        String hash = hashPassword(password, salt);
-
         ContentValues values = new ContentValues();
         values.put(COLUMN_USERNAME, username.toLowerCase(Locale.ROOT).trim());
-        values.put(COLUMN_PASSWORD, hash);
-        values.put(COLUMN_SALT, salt);
+        ponerPassword(values, password);
         values.put(COLUMN_ROL, rol);
         values.put(COLUMN_EMAIL, email);
 
-        return db.insert(TABLE_USUARIOS, null, values);
+        return insertar(TABLE_USUARIOS, values);
     }
 
     public Usuario obtenerUsuarioPorNombre(String username) {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_USUARIOS,
-                    new String[]{COLUMN_USUARIO_ID, COLUMN_USERNAME, COLUMN_PASSWORD, COLUMN_SALT, COLUMN_ROL, COLUMN_EMAIL},
-                    COLUMN_USERNAME + " = ?",
-                    new String[]{username.toLowerCase(Locale.ROOT).trim()},
-                    null, null, null);
+            cursor = db.rawQuery(SQL_USUARIO_POR_NOMBRE, new String[]{username.toLowerCase(Locale.ROOT).trim()});
 
             Usuario usuario = null;
             if (cursor != null && cursor.moveToFirst()) {
                 int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USUARIO_ID));
                 String nombre = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USERNAME));
-                String password = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PASSWORD));
-                String salt = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SALT));
                 String rol = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ROL));
                 String email = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EMAIL));
-                usuario = new Usuario(id, nombre, password, salt, rol, email);
+                // El hash no sale de esta clase: solo validarUsuario lo lee
+                usuario = new Usuario(id, nombre, "", "", rol, email);
             }
             return usuario;
         } finally {
@@ -479,59 +807,37 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     public Cursor obtenerTodosLosUsuarios() {
         SQLiteDatabase db = this.getReadableDatabase();
-        return db.query(TABLE_USUARIOS,
-                new String[]{COLUMN_USUARIO_ID, COLUMN_USERNAME, COLUMN_ROL, COLUMN_EMAIL, COLUMN_FECHA_REGISTRO},
-                null, null, null, null,
-                COLUMN_USERNAME + " ASC");
+        return db.rawQuery(SQL_TODOS_LOS_USUARIOS, null);
     }
 
     public int actualizarUsuario(String username, String nuevoRol) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_ROL, nuevoRol);
-
-        return db.update(TABLE_USUARIOS, values,
-                COLUMN_USERNAME + " = ?",
-                new String[]{username.toLowerCase(Locale.ROOT).trim()});
+        return escribir(SQL_ACTUALIZAR_ROL, new Object[]{nuevoRol, username.toLowerCase(Locale.ROOT).trim()},
+                TABLE_USUARIOS);
     }
 
     public int actualizarUsuario(String username, String nuevoRol, String email) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_ROL, nuevoRol);
-        values.put(COLUMN_EMAIL, email);
-
-        return db.update(TABLE_USUARIOS, values,
-                COLUMN_USERNAME + " = ?",
-                new String[]{username.toLowerCase(Locale.ROOT).trim()});
+        return escribir(SQL_ACTUALIZAR_ROL_Y_EMAIL, new Object[]{nuevoRol, email, username.toLowerCase(Locale.ROOT).trim()},
+                TABLE_USUARIOS);
     }
 
     public int eliminarUsuario(String username) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        return db.delete(TABLE_USUARIOS,
-                COLUMN_USERNAME + " = ?",
-                new String[]{username.toLowerCase(Locale.ROOT).trim()});
+        return escribir(SQL_ELIMINAR_USUARIO, new Object[]{username.toLowerCase(Locale.ROOT).trim()}, TABLE_USUARIOS);
     }
 
     public Usuario obtenerUsuarioPorId(int usuarioId) {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_USUARIOS,
-                    new String[]{COLUMN_USUARIO_ID, COLUMN_USERNAME, COLUMN_PASSWORD, COLUMN_SALT, COLUMN_ROL, COLUMN_EMAIL},
-                    COLUMN_USUARIO_ID + " = ?",
-                    new String[]{String.valueOf(usuarioId)},
-                    null, null, null);
+            cursor = db.rawQuery(SQL_USUARIO_POR_ID, new String[]{String.valueOf(usuarioId)});
 
             Usuario usuario = null;
             if (cursor != null && cursor.moveToFirst()) {
                 int id = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USUARIO_ID));
                 String nombre = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USERNAME));
-                String password = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PASSWORD));
-                String salt = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SALT));
                 String rol = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ROL));
                 String email = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EMAIL));
-                usuario = new Usuario(id, nombre, password, salt, rol, email);
+                // El hash no sale de esta clase: solo validarUsuario lo lee
+                usuario = new Usuario(id, nombre, "", "", rol, email);
             }
             return usuario;
         } finally {
@@ -542,31 +848,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public int cambiarPassword(String username, String nuevaPassword) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        String salt = generarSalt();
-        String hash = hashPassword(nuevaPassword, salt);
-
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_PASSWORD, hash);
-        values.put(COLUMN_SALT, salt);
-
-        return db.update(TABLE_USUARIOS, values,
-                COLUMN_USERNAME + " = ?",
-                new String[]{username.toLowerCase(Locale.ROOT).trim()});
+        return guardarPassword(username.toLowerCase(Locale.ROOT).trim(), nuevaPassword);
     }
 
     public int actualizarRolUsuario(String username, String nuevoRol) {
-        SQLiteDatabase db = this.getWritableDatabase();
         try {
-            ContentValues values = new ContentValues();
-            values.put(COLUMN_ROL, nuevoRol);
-
-            int resultado = db.update(
-                    TABLE_USUARIOS,
-                    values,
-                    COLUMN_USERNAME + " = ?",
-                    new String[]{username}
-            );
+            int resultado = escribir(SQL_ACTUALIZAR_ROL, new Object[]{nuevoRol, username}, TABLE_USUARIOS);
 
             Log.d("DATABASE", "Actualizar rol - Usuario: " + username +
                     ", Nuevo rol: " + nuevoRol + ", Resultado: " + resultado);
@@ -576,23 +863,14 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         } catch (Exception e) {
             Log.e("DATABASE", "Error actualizando rol: " + e.getMessage());
             return 0;
-        } finally {
-            db.close();
         }
     }
 
     public Cursor obtenerUsuariosPorRol(String rol) {
         SQLiteDatabase db = this.getReadableDatabase();
         try {
-            Cursor cursor = db.query(
-                    TABLE_USUARIOS,
-                    null,
-                    COLUMN_ROL + " = ?",
-                    new String[]{rol},
-                    null,
-                    null,
-                    COLUMN_USERNAME + " ASC"
-            );
+            // Misma proyección que obtenerTodosLosUsuarios: el hash no sale de esta clase
+            Cursor cursor = db.rawQuery(SQL_USUARIOS_POR_ROL, new String[]{rol});
 
             Log.d("DATABASE", "Usuarios por rol '" + rol + "': " + cursor.getCount());
             return cursor;
@@ -604,39 +882,20 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public int contarUsuariosPorRol(String rol) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
         try {
-            String query = "SELECT COUNT(*) FROM " + TABLE_USUARIOS +
-                    " WHERE " + COLUMN_ROL + " = ?";
-            cursor = db.rawQuery(query, new String[]{rol});
-
-            if (cursor != null && cursor.moveToFirst()) {
-                int count = cursor.getInt(0);
-                Log.d("DATABASE", "Contar usuarios - Rol: " + rol + ", Total: " + count);
-                return count;
-            }
-            return 0;
-
+            int count = (int) sentencias().paraLong(SQL_CONTAR_USUARIOS_POR_ROL, 0, rol);
+            Log.d("DATABASE", "Contar usuarios - Rol: " + rol + ", Total: " + count);
+            return count;
         } catch (Exception e) {
             Log.e("DATABASE", "Error contando usuarios por rol: " + e.getMessage());
             return 0;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-            db.close();
         }
     }
 
     public Cursor obtenerRolesUnicos() {
         SQLiteDatabase db = this.getReadableDatabase();
         try {
-            String query = "SELECT DISTINCT " + COLUMN_ROL +
-                    " FROM " + TABLE_USUARIOS +
-                    " ORDER BY " + COLUMN_ROL + " ASC";
-
-            Cursor cursor = db.rawQuery(query, null);
+            Cursor cursor = filasCacheadas("rolesUnicos", () -> db.rawQuery(SQL_ROLES_UNICOS, null), TABLE_USUARIOS);
             Log.d("DATABASE", "Roles únicos encontrados: " + cursor.getCount());
             return cursor;
 
@@ -649,13 +908,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public Cursor obtenerUsuarioCompleto(String username) {
         SQLiteDatabase db = this.getReadableDatabase();
         try {
-            Cursor cursor = db.query(
-                    TABLE_USUARIOS,
-                    null,
-                    COLUMN_USERNAME + " = ?",
-                    new String[]{username},
-                    null, null, null
-            );
+            Cursor cursor = db.rawQuery(SQL_USUARIO_COMPLETO, new String[]{username});
 
             if (cursor != null && cursor.moveToFirst()) {
                 Log.d("DATABASE", "Usuario encontrado: " + username);
@@ -675,12 +928,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = null;
         try {
-            String query = "SELECT " + COLUMN_ROL + ", COUNT(*) as cantidad " +
-                    "FROM " + TABLE_USUARIOS + " " +
-                    "GROUP BY " + COLUMN_ROL + " " +
-                    "ORDER BY cantidad DESC";
-
-            cursor = db.rawQuery(query, null);
+            cursor = db.rawQuery(SQL_ESTADISTICAS_USUARIOS, null);
 
             StringBuilder estadisticas = new StringBuilder();
             if (cursor != null && cursor.moveToFirst()) {
@@ -701,7 +949,6 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             if (cursor != null) {
                 cursor.close();
             }
-            db.close();
         }
     }
 
@@ -709,224 +956,405 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     // MÉTODOS DE CARRITO
     // ==================================================================
 
-    public long agregarAlCarrito(int productoId, int cantidad) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        int stockDisponible = obtenerStockProducto(productoId);
-        if (stockDisponible < cantidad) return -1;
+    static final String SQL_DESCONTAR_STOCK =
+            "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_STOCK + " = " + COLUMN_STOCK + " - ? " +
+                    "WHERE " + COLUMN_ID + " = ? AND " + COLUMN_STOCK + " >= ?";
+
+    static final String SQL_EXISTE_PRODUCTO =
+            "SELECT COUNT(*) FROM " + TABLE_PRODUCTOS + " WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_SUMAR_AL_CARRITO =
+            "UPDATE " + TABLE_CARRITO + " SET " + COLUMN_CANTIDAD + " = " + COLUMN_CANTIDAD + " + ? " +
+                    "WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_ACTUALIZAR_CANTIDAD_CARRITO =
+            "UPDATE " + TABLE_CARRITO + " SET " + COLUMN_CANTIDAD + " = ? WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_DEVOLVER_UNIDADES =
+            "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_STOCK + " = " + COLUMN_STOCK + " + ? " +
+                    "WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_DEVOLVER_STOCK_LINEA =
+            "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_STOCK + " = " + COLUMN_STOCK + " + " +
+                    "IFNULL((SELECT c." + COLUMN_CANTIDAD + " FROM " + TABLE_CARRITO + " c " +
+                    "WHERE c." + COLUMN_ID + " = ?), 0) " +
+                    "WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_DEVOLVER_STOCK_CARRITO =
+            "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_STOCK + " = " + COLUMN_STOCK + " + " +
+                    "(SELECT c." + COLUMN_CANTIDAD + " FROM " + TABLE_CARRITO + " c " +
+                    "WHERE c." + COLUMN_ID + " = " + TABLE_PRODUCTOS + "." + COLUMN_ID + ") " +
+                    "WHERE " + COLUMN_ID + " IN (SELECT " + COLUMN_ID + " FROM " + TABLE_CARRITO + ")";
+
+    static final String SQL_VACIAR_CARRITO = "DELETE FROM " + TABLE_CARRITO;
+
+    static final String SQL_CANTIDAD_EN_CARRITO =
+            "SELECT " + COLUMN_CANTIDAD + " FROM " + TABLE_CARRITO + " WHERE " + COLUMN_ID + " = ?";
+
+    static final String SQL_CARRITO =
+            "SELECT p." + COLUMN_ID + ", p." + COLUMN_NOMBRE + ", p." + COLUMN_DESCRIPCION + ", " +
+                    "p." + COLUMN_PRECIO_CENTAVOS + ", p." + COLUMN_IMAGEN_PATH + ", p." + COLUMN_MINIATURA_LISTA + ", " +
+                    "p." + COLUMN_STOCK + ", c." + COLUMN_CANTIDAD +
+                    " FROM " + TABLE_CARRITO + " c " +
+                    "INNER JOIN " + TABLE_PRODUCTOS + " p ON c." + COLUMN_ID + " = p." + COLUMN_ID +
+                    " ORDER BY c." + COLUMN_FECHA_AGREGADO + " DESC";
+
+    private static final String FROM_CARRITO_CON_PRODUCTOS =
+            " FROM " + TABLE_CARRITO + " c " +
+                    "INNER JOIN " + TABLE_PRODUCTOS + " p ON c." + COLUMN_ID + " = p." + COLUMN_ID;
+
+    static final String SQL_TOTAL_CARRITO =
+            "SELECT IFNULL(SUM(p." + COLUMN_PRECIO_CENTAVOS + " * c." + COLUMN_CANTIDAD + "), 0)" +
+                    FROM_CARRITO_CON_PRODUCTOS;
+
+    static final String SQL_RESUMEN_CARRITO =
+            "SELECT COUNT(*), IFNULL(SUM(p." + COLUMN_PRECIO_CENTAVOS + " * c." + COLUMN_CANTIDAD + "), 0)" +
+                    FROM_CARRITO_CON_PRODUCTOS;
+
+    /**
+     * Agrega al carrito y descuenta stock en una sola transacción.
+     * El descuento es condicional (stock >= cantidad), así dos toques
+     * simultáneos no pueden vender más unidades de las que existen.
+     *
+     * @return CARRITO_AGREGADO, CARRITO_SIN_STOCK o CARRITO_NO_ENCONTRADO
+     */
+    public int agregarAlCarrito(int productoId, int cantidad) {
+        return escrituras.ejecutar(() -> agregarAlCarritoEnEscritor(productoId, cantidad));
+    }
 
-        Cursor cursor = null;
+    private int agregarAlCarritoEnEscritor(int productoId, int cantidad) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        boolean agregado = false;
+        db.beginTransaction();
         try {
-            cursor = db.query(TABLE_CARRITO,
-                    new String[]{COLUMN_CARRITO_ID, COLUMN_CANTIDAD},
-                    COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)},
-                    null, null, null);
+            int descontados = ejecutarUpdateDelete(db, SQL_DESCONTAR_STOCK, cantidad, productoId, cantidad);
+            if (descontados == 0) {
+                boolean existe = DatabaseUtils.longForQuery(db, SQL_EXISTE_PRODUCTO,
+                        new String[]{String.valueOf(productoId)}) > 0;
+                // No escribió nada, pero se marca: dentro de un lote de ColaEscrituras
+                // una transacción anidada sin marcar deshace el lote entero
+                db.setTransactionSuccessful();
+                return existe ? CARRITO_SIN_STOCK : CARRITO_NO_ENCONTRADO;
+            }
 
-            long result;
-            if (cursor != null && cursor.moveToFirst()) {
-                int cantidadActual = cursor.getInt(1);
-                ContentValues values = new ContentValues();
-                values.put(COLUMN_CANTIDAD, cantidadActual + cantidad);
-                result = db.update(TABLE_CARRITO, values, COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)});
-            } else {
+            // ON CONFLICT ... DO UPDATE requiere SQLite 3.24 (API 30); con minSdk 23
+            // el upsert se resuelve con UPDATE + INSERT dentro de la misma transacción.
+            int sumados = ejecutarUpdateDelete(db, SQL_SUMAR_AL_CARRITO, cantidad, productoId);
+            if (sumados == 0) {
                 ContentValues values = new ContentValues();
                 values.put(COLUMN_ID, productoId);
                 values.put(COLUMN_CANTIDAD, cantidad);
-                result = db.insert(TABLE_CARRITO, null, values);
+                db.insertOrThrow(TABLE_CARRITO, null, values);
             }
 
-            if (result > 0) actualizarStockProducto(productoId, stockDisponible - cantidad);
-            return result;
+            db.setTransactionSuccessful();
+            agregado = true;
+            return CARRITO_AGREGADO;
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            db.endTransaction();
+            if (agregado) cambiaron(TABLE_PRODUCTOS, TABLE_CARRITO);
         }
     }
 
+    /**
+     * Cambia la cantidad de una línea moviendo solo la diferencia de stock,
+     * en una transacción: subir descuenta con la misma condición que
+     * agregarAlCarrito y bajar devuelve las unidades sobrantes. Así el stock
+     * más la cantidad en carrito no cambia, y quitar la línea después
+     * devuelve exactamente lo que se tomó.
+     *
+     * @return CARRITO_AGREGADO si la línea quedó con la nueva cantidad,
+     *         CARRITO_SIN_STOCK o CARRITO_NO_ENCONTRADO si no está en el carrito
+     */
     public int actualizarCantidadEnCarrito(int productoId, int nuevaCantidad) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_CANTIDAD, nuevaCantidad);
-        return db.update(TABLE_CARRITO, values, COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)});
+        if (nuevaCantidad <= 0) throw new IllegalArgumentException("La cantidad debe ser positiva: " + nuevaCantidad);
+        return escrituras.ejecutar(() -> actualizarCantidadEnCarritoEnEscritor(productoId, nuevaCantidad));
     }
 
-    public int eliminarDelCarrito(int productoId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        int cantidad = obtenerCantidadEnCarrito(productoId);
-        int stockActual = obtenerStockProducto(productoId);
-        int result = db.delete(TABLE_CARRITO, COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)});
-        if (result > 0) actualizarStockProducto(productoId, stockActual + cantidad);
-        return result;
+    /**
+     * Cantidad de la línea, 0 si no está. Llamado desde el escritor lee dentro
+     * de la transacción en curso, así que ve la cantidad que se va a cambiar.
+     */
+    private int obtenerCantidadEnCarrito(int productoId) {
+        return (int) sentencias().paraLong(SQL_CANTIDAD_EN_CARRITO, 0, String.valueOf(productoId));
     }
 
-    public int vaciarCarrito() {
+    private int actualizarCantidadEnCarritoEnEscritor(int productoId, int nuevaCantidad) {
         SQLiteDatabase db = this.getWritableDatabase();
-        Cursor cursor = null;
+        boolean actualizada = false;
+        db.beginTransaction();
         try {
-            cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_CANTIDAD + " FROM " + TABLE_CARRITO, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    int productoId = cursor.getInt(0);
-                    int cantidad = cursor.getInt(1);
-                    int stockActual = obtenerStockProducto(productoId);
-                    actualizarStockProducto(productoId, stockActual + cantidad);
-                } while (cursor.moveToNext());
+            int anterior = obtenerCantidadEnCarrito(productoId);
+            int diferencia = nuevaCantidad - anterior;
+            if (anterior == 0 || diferencia == 0) {
+                // Sin cambios; se marca igual para no deshacer el lote de ColaEscrituras
+                db.setTransactionSuccessful();
+                return anterior == 0 ? CARRITO_NO_ENCONTRADO : CARRITO_AGREGADO;
             }
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+
+            if (diferencia > 0) {
+                if (ejecutarUpdateDelete(db, SQL_DESCONTAR_STOCK, diferencia, productoId, diferencia) == 0) {
+                    db.setTransactionSuccessful();
+                    return CARRITO_SIN_STOCK;
+                }
+            } else {
+                ejecutarUpdateDelete(db, SQL_DEVOLVER_UNIDADES, -diferencia, productoId);
             }
+            ejecutarUpdateDelete(db, SQL_ACTUALIZAR_CANTIDAD_CARRITO, nuevaCantidad, productoId);
+
+            db.setTransactionSuccessful();
+            actualizada = true;
+            return CARRITO_AGREGADO;
+        } finally {
+            db.endTransaction();
+            if (actualizada) cambiaron(TABLE_PRODUCTOS, TABLE_CARRITO);
         }
+    }
 
-        return db.delete(TABLE_CARRITO, null, null);
+    /**
+     * Quita un producto del carrito devolviendo sus unidades al stock:
+     * un UPDATE y un DELETE dentro de la misma transacción.
+     */
+    public int eliminarDelCarrito(int productoId) {
+        return escrituras.ejecutar(() -> eliminarDelCarritoEnEscritor(productoId));
     }
 
-    private int obtenerCantidadEnCarrito(int productoId) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
+    private int eliminarDelCarritoEnEscritor(int productoId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        int result;
+        db.beginTransaction();
         try {
-            cursor = db.query(TABLE_CARRITO, new String[]{COLUMN_CANTIDAD},
-                    COLUMN_ID + " = ?", new String[]{String.valueOf(productoId)}, null, null, null);
-            int cantidad = 0;
-            if (cursor != null && cursor.moveToFirst()) {
-                cantidad = cursor.getInt(0);
-            }
-            return cantidad;
+            ejecutarUpdateDelete(db, SQL_DEVOLVER_STOCK_LINEA, productoId, productoId);
+            result = ejecutarUpdateDelete(db, SQL_ELIMINAR_LINEA_CARRITO, productoId);
+            db.setTransactionSuccessful();
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            db.endTransaction();
         }
+        return afectadas(result, TABLE_PRODUCTOS, TABLE_CARRITO);
     }
 
-    public Cursor obtenerCarrito() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        String query = "SELECT p." + COLUMN_ID + ", p." + COLUMN_NOMBRE + ", p." + COLUMN_DESCRIPCION + ", " +
-                "p." + COLUMN_PRECIO + ", p." + COLUMN_IMAGEN_PATH + ", p." + COLUMN_STOCK + ", c." + COLUMN_CANTIDAD +
-                " FROM " + TABLE_CARRITO + " c " +
-                "INNER JOIN " + TABLE_PRODUCTOS + " p ON c." + COLUMN_ID + " = p." + COLUMN_ID +
-                " ORDER BY c." + COLUMN_FECHA_AGREGADO + " DESC;";
-        return db.rawQuery(query, null);
+    /**
+     * Vacía el carrito restaurando el stock de todas las líneas con una sola
+     * sentencia correlacionada, sin importar cuántas líneas tenga el carrito.
+     */
+    public int vaciarCarrito() {
+        return escrituras.ejecutar(this::vaciarCarritoEnEscritor);
     }
 
-    public double calcularTotalCarrito() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
+    private int vaciarCarritoEnEscritor() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        int result;
+        db.beginTransaction();
         try {
-            String query = "SELECT SUM(p." + COLUMN_PRECIO + " * c." + COLUMN_CANTIDAD + ") AS total " +
-                    "FROM " + TABLE_CARRITO + " c " +
-                    "INNER JOIN " + TABLE_PRODUCTOS + " p ON c." + COLUMN_ID + " = p." + COLUMN_ID + ";";
-            cursor = db.rawQuery(query, null);
-            double total = 0;
-            if (cursor != null && cursor.moveToFirst()) {
-                total = cursor.getDouble(cursor.getColumnIndexOrThrow("total"));
-            }
-            return total;
+            ejecutarUpdateDelete(db, SQL_DEVOLVER_STOCK_CARRITO);
+            result = ejecutarUpdateDelete(db, SQL_VACIAR_CARRITO);
+            db.setTransactionSuccessful();
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            db.endTransaction();
         }
+        return afectadas(result, TABLE_PRODUCTOS, TABLE_CARRITO);
+    }
+
+    public Cursor obtenerCarrito() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(SQL_CARRITO, null);
+    }
+
+    /** Total del carrito en centavos, sumado como entero en SQLite. */
+    public long calcularTotalCarrito() {
+        return sentencias().paraLong(SQL_TOTAL_CARRITO, 0);
     }
+
     // ==================================================================
     // MÉTODOS DE ORDENES / VENTAS
     // ==================================================================
 
-    public static class Orden {
-        public int id;
-        public String fecha;
-        public double total;
-        public String estado;
-        public String usuario;
-        public String productos; // JSON o string con los productos
+    static final String SQL_COPIAR_LINEAS_ORDEN =
+            "INSERT INTO " + TABLE_ORDEN_ITEMS + " (" + COLUMN_ORDEN_ID + ", " + COLUMN_ID + ", " +
+                    COLUMN_NOMBRE + ", " + COLUMN_PRECIO_UNITARIO_CENTAVOS + ", " + COLUMN_CANTIDAD + ") " +
+                    "SELECT ?, p." + COLUMN_ID + ", p." + COLUMN_NOMBRE + ", " +
+                    "p." + COLUMN_PRECIO_CENTAVOS + ", c." + COLUMN_CANTIDAD +
+                    FROM_CARRITO_CON_PRODUCTOS;
+
+    static final String SQL_ORDENES_USUARIO =
+            "SELECT * FROM " + TABLE_ORDENES + " WHERE " + COLUMN_USUARIO_ORDEN + " = ? " +
+                    "ORDER BY " + COLUMN_FECHA_ORDEN + " DESC, " + COLUMN_ORDEN_ID + " DESC";
+
+    static final String SQL_ORDENES_POR_FECHA =
+            "SELECT * FROM " + TABLE_ORDENES +
+                    " WHERE " + COLUMN_FECHA_ORDEN + " >= ? AND " + COLUMN_FECHA_ORDEN + " < ? " +
+                    "ORDER BY " + COLUMN_FECHA_ORDEN + " ASC, " + COLUMN_ORDEN_ID + " ASC";
+
+    static final String SQL_ITEMS_ORDEN =
+            "SELECT * FROM " + TABLE_ORDEN_ITEMS + " WHERE " + COLUMN_ORDEN_ID + " = ? ORDER BY " + COLUMN_ITEM_ID + " ASC";
+
+    static final String SQL_VENTAS_POR_DIA =
+            "SELECT date(" + COLUMN_FECHA_ORDEN + ") AS dia, " +
+                    "COUNT(*) AS ordenes, SUM(" + COLUMN_TOTAL_CENTAVOS + ") AS " + COLUMN_TOTAL_CENTAVOS + " " +
+                    "FROM " + TABLE_ORDENES + " " +
+                    "WHERE " + COLUMN_FECHA_ORDEN + " >= ? AND " + COLUMN_FECHA_ORDEN + " < ? " +
+                    "GROUP BY dia ORDER BY dia ASC";
+
+    /**
+     * Convierte el carrito en una orden en una sola transacción: crea la orden,
+     * copia cada línea con el nombre y precio vigentes y vacía el carrito.
+     * El stock ya se descontó al agregar al carrito, así que no se toca.
+     *
+     * @return id de la orden creada u ORDEN_CARRITO_VACIO
+     */
+    public long finalizarCompra(String usuario) {
+        return escrituras.ejecutar(() -> finalizarCompraEnEscritor(usuario));
+    }
 
-        public Orden() {}
+    private long finalizarCompraEnEscritor(String usuario) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        boolean creada = false;
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.rawQuery(SQL_RESUMEN_CARRITO, null);
+            int lineas;
+            long totalCentavos;
+            try {
+                cursor.moveToFirst();
+                lineas = cursor.getInt(0);
+                totalCentavos = cursor.getLong(1);
+            } finally {
+                cursor.close();
+            }
+            if (lineas == 0) {
+                // Igual que en agregarAlCarrito: sin cambios, pero sin deshacer un lote
+                db.setTransactionSuccessful();
+                return ORDEN_CARRITO_VACIO;
+            }
+
+            ContentValues orden = new ContentValues();
+            orden.put(COLUMN_USUARIO_ORDEN, usuario);
+            orden.put(COLUMN_TOTAL_CENTAVOS, totalCentavos);
+            orden.put(COLUMN_ESTADO, ESTADO_COMPLETADA);
+            long ordenId = db.insertOrThrow(TABLE_ORDENES, null, orden);
 
-        public Orden(String fecha, double total, String estado, String usuario, String productos) {
-            this.fecha = fecha;
-            this.total = total;
-            this.estado = estado;
-            this.usuario = usuario;
-            this.productos = productos;
+            ejecutarUpdateDelete(db, SQL_COPIAR_LINEAS_ORDEN, ordenId);
+            ejecutarUpdateDelete(db, SQL_VACIAR_CARRITO);
+
+            db.setTransactionSuccessful();
+            creada = true;
+            Log.d("DatabaseHelper", "Orden " + ordenId + " creada: " + lineas + " líneas, total " + Dinero.formatear(totalCentavos));
+            return ordenId;
+        } finally {
+            db.endTransaction();
+            if (creada) cambiaron(TABLE_ORDENES, TABLE_ORDEN_ITEMS, TABLE_CARRITO);
         }
     }
 
+    /** Historial de un usuario, de la orden más reciente a la más antigua. */
+    public Cursor obtenerOrdenesUsuario(String usuario) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(SQL_ORDENES_USUARIO, new String[]{usuario});
+    }
+
+    /**
+     * Órdenes en [desde, hasta). Las fechas usan el formato de CURRENT_TIMESTAMP
+     * ("yyyy-MM-dd HH:mm:ss", UTC), que se ordena igual como texto.
+     */
+    public Cursor obtenerOrdenesPorFecha(String desde, String hasta) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(SQL_ORDENES_POR_FECHA, new String[]{desde, hasta});
+    }
+
+    public Cursor obtenerItemsOrden(long ordenId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(SQL_ITEMS_ORDEN, new String[]{String.valueOf(ordenId)});
+    }
+
+    /** Órdenes y monto vendido por día en [desde, hasta), en centavos. */
+    public Cursor obtenerVentasPorDia(String desde, String hasta) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(SQL_VENTAS_POR_DIA, new String[]{desde, hasta});
+    }
+
     // ==================================================================
     // MÉTODOS DE REPORTES
     // ==================================================================
 
+    // Los conteos se leen del resumen mantenido por triggers: costo constante
+
+    static final String SQL_CANTIDAD_USUARIOS =
+            "SELECT " + COLUMN_TOTAL_USUARIOS + " FROM " + TABLE_ESTADISTICAS;
+
+    static final String SQL_CANTIDAD_PRODUCTOS =
+            "SELECT " + COLUMN_TOTAL_PRODUCTOS + " FROM " + TABLE_ESTADISTICAS;
+
+    static final String SQL_UNIDADES_CARRITO =
+            "SELECT " + COLUMN_UNIDADES_CARRITO + " FROM " + TABLE_ESTADISTICAS;
+
+    static final String SQL_ESTADISTICAS_GENERALES =
+            "SELECT " +
+                    COLUMN_TOTAL_USUARIOS + ", " +
+                    COLUMN_TOTAL_PRODUCTOS + ", " +
+                    COLUMN_UNIDADES_CARRITO + " AS total_carrito, " +
+                    COLUMN_VALOR_CARRITO + ", " +
+                    COLUMN_TOTAL_ORDENES + ", " +
+                    COLUMN_TOTAL_VENTAS_CENTAVOS +
+                    " FROM " + TABLE_ESTADISTICAS;
+
     public int obtenerCantidadUsuarios() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_USUARIOS, null);
-            int cantidad = 0;
-            if (cursor != null && cursor.moveToFirst()) {
-                cantidad = cursor.getInt(0);
-            }
-            return cantidad;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+        return (int) sentencias().paraLong(SQL_CANTIDAD_USUARIOS, 0);
     }
 
     public int obtenerCantidadProductos() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_PRODUCTOS, null);
-            int cantidad = 0;
-            if (cursor != null && cursor.moveToFirst()) {
-                cantidad = cursor.getInt(0);
-            }
-            return cantidad;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+        return (int) sentencias().paraLong(SQL_CANTIDAD_PRODUCTOS, 0);
     }
 
     public int obtenerCantidadProductosEnCarrito() {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
-        try {
-            cursor = db.rawQuery("SELECT SUM(" + COLUMN_CANTIDAD + ") FROM " + TABLE_CARRITO, null);
-            int cantidad = 0;
-            if (cursor != null && cursor.moveToFirst()) {
-                cantidad = cursor.getInt(0);
-            }
-            return cantidad;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
+        return (int) sentencias().paraLong(SQL_UNIDADES_CARRITO, 0);
     }
 
+    /**
+     * Productos con más unidades vendidas según las órdenes registradas.
+     * Nombre y precio (en centavos) son los actuales si el producto sigue
+     * existiendo y los de la última venta si fue eliminado.
+     */
     public Cursor obtenerProductosMasVendidos(int limite) {
         SQLiteDatabase db = this.getReadableDatabase();
-        String query = "SELECT p." + COLUMN_ID + ", p." + COLUMN_NOMBRE + ", p." + COLUMN_PRECIO + ", " +
-                "SUM(c." + COLUMN_CANTIDAD + ") as total_vendido " +
-                "FROM " + TABLE_CARRITO + " c " +
-                "INNER JOIN " + TABLE_PRODUCTOS + " p ON c." + COLUMN_ID + " = p." + COLUMN_ID + " " +
-                "GROUP BY p." + COLUMN_ID + ", p." + COLUMN_NOMBRE + ", p." + COLUMN_PRECIO + " " +
-                "ORDER BY total_vendido DESC " +
-                "LIMIT " + limite + ";";
-        return db.rawQuery(query, null);
+        return db.rawQuery(sqlProductosMasVendidos(limite), null);
     }
 
+    static String sqlProductosMasVendidos(int limite) {
+        return "SELECT v." + COLUMN_ID + ", " +
+                "IFNULL(p." + COLUMN_NOMBRE + ", v." + COLUMN_NOMBRE + ") AS " + COLUMN_NOMBRE + ", " +
+                "IFNULL(p." + COLUMN_PRECIO_CENTAVOS + ", v." + COLUMN_PRECIO_UNITARIO_CENTAVOS + ") " +
+                "AS " + COLUMN_PRECIO_CENTAVOS + ", " +
+                "v.total_vendido " +
+                // Con un solo MAX(), SQLite toma las columnas sueltas de la fila del máximo: la última venta
+                "FROM (SELECT " + COLUMN_ID + ", " + COLUMN_NOMBRE + ", " + COLUMN_PRECIO_UNITARIO_CENTAVOS + ", " +
+                "MAX(" + COLUMN_ITEM_ID + "), SUM(" + COLUMN_CANTIDAD + ") AS total_vendido " +
+                "FROM " + TABLE_ORDEN_ITEMS + " GROUP BY " + COLUMN_ID + " " +
+                "ORDER BY total_vendido DESC LIMIT " + limite + ") v " +
+                "LEFT JOIN " + TABLE_PRODUCTOS + " p ON p." + COLUMN_ID + " = v." + COLUMN_ID + " " +
+                "ORDER BY v.total_vendido DESC";
+    }
+
+    /**
+     * Totales del panel de administración en una sola fila, con los montos
+     * en centavos. Mantiene el alias total_carrito de la versión que
+     * agregaba sobre las tablas.
+     */
     public Cursor obtenerEstadisticasGenerales() {
         SQLiteDatabase db = this.getReadableDatabase();
-        String query = "SELECT " +
-                "(SELECT COUNT(*) FROM " + TABLE_USUARIOS + ") as total_usuarios, " +
-                "(SELECT COUNT(*) FROM " + TABLE_PRODUCTOS + ") as total_productos, " +
-                "(SELECT SUM(" + COLUMN_CANTIDAD + ") FROM " + TABLE_CARRITO + ") as total_carrito, " +
-                "(SELECT SUM(p." + COLUMN_PRECIO + " * c." + COLUMN_CANTIDAD + ") FROM " + TABLE_CARRITO + " c " +
-                "INNER JOIN " + TABLE_PRODUCTOS + " p ON c." + COLUMN_ID + " = p." + COLUMN_ID + ") as valor_total_carrito;";
-        return db.rawQuery(query, null);
+        return db.rawQuery(SQL_ESTADISTICAS_GENERALES, null);
+    }
+
+    /**
+     * Recalcula el resumen desde las tablas base. Los triggers lo mantienen al
+     * día y, con todos los montos en centavos enteros, no acumulan redondeo;
+     * sirve para reparar la fila si se editó la base por fuera de la app.
+     */
+    public void recalcularEstadisticas() {
+        escrituras.ejecutar(() -> {
+            Esquema.recalcularEstadisticas(this.getWritableDatabase());
+            cambiaron(TABLE_ESTADISTICAS);
+            return null;
+        });
     }
 
     // ==================================================================
@@ -0,0 +1,596 @@
+package com.example.myapplication.database;
+
+import static com.example.myapplication.database.DatabaseHelper.*;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.myapplication.seguridad.HashPassword;
+
+/**
+ * Definición declarativa del esquema: tablas, índices y migraciones en orden.
+ *
+ * Una base nueva se crea directamente con las definiciones actuales; una base
+ * existente aplica las migraciones pendientes y después ambas pasan por
+ * {@link #sincronizarIndices}, de modo que el esquema físico resultante es el
+ * mismo sin importar el camino.
+ */
+final class Esquema {
+
+    private static final String TAG = "Esquema";
+
+    private Esquema() {}
+
+    // ==================================================================
+    // TABLAS
+    // ==================================================================
+
+    static final String TABLE_CREATE_PRODUCTOS =
+            "CREATE TABLE " + TABLE_PRODUCTOS + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_NOMBRE + " TEXT NOT NULL, " +
+                    COLUMN_DESCRIPCION + " TEXT, " +
+                    COLUMN_PRECIO_CENTAVOS + " INTEGER NOT NULL, " +
+                    COLUMN_IMAGEN_PATH + " TEXT, " +
+                    COLUMN_STOCK + " INTEGER DEFAULT 0, " +
+                    COLUMN_CANTIDAD + " INTEGER DEFAULT 1, " +
+                    COLUMN_CATEGORIA + " TEXT DEFAULT 'General', " +
+                    COLUMN_FECHA_CREACION + " DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                    COLUMN_SKU + " TEXT, " +
+                    COLUMN_MINIATURA_LISTA + " TEXT, " +
+                    COLUMN_MINIATURA_DETALLE + " TEXT);";
+
+    static final String TABLE_CREATE_USUARIOS =
+            "CREATE TABLE " + TABLE_USUARIOS + " (" +
+                    COLUMN_USUARIO_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_USERNAME + " TEXT NOT NULL UNIQUE, " +
+                    COLUMN_PASSWORD + " BLOB NOT NULL, " +
+                    COLUMN_SALT + " BLOB, " +
+                    COLUMN_HASH_PARAMETROS + " TEXT NOT NULL, " +
+                    COLUMN_ROL + " TEXT NOT NULL, " +
+                    COLUMN_EMAIL + " TEXT, " +
+                    COLUMN_FECHA_REGISTRO + " DATETIME DEFAULT CURRENT_TIMESTAMP);";
+
+    static final String TABLE_CREATE_CARRITO =
+            "CREATE TABLE " + TABLE_CARRITO + " (" +
+                    COLUMN_CARRITO_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_ID + " INTEGER NOT NULL, " +
+                    COLUMN_CANTIDAD + " INTEGER DEFAULT 1, " +
+                    COLUMN_FECHA_AGREGADO + " DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                    "FOREIGN KEY(" + COLUMN_ID + ") REFERENCES " +
+                    TABLE_PRODUCTOS + "(" + COLUMN_ID + ") ON DELETE CASCADE);";
+
+    static final String TABLE_CREATE_ORDENES =
+            "CREATE TABLE " + TABLE_ORDENES + " (" +
+                    COLUMN_ORDEN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_USUARIO_ORDEN + " TEXT NOT NULL, " +
+                    COLUMN_FECHA_ORDEN + " DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    COLUMN_TOTAL_CENTAVOS + " INTEGER NOT NULL, " +
+                    COLUMN_ESTADO + " TEXT NOT NULL DEFAULT '" + ESTADO_COMPLETADA + "');";
+
+    // Sin clave foránea a productos: el historial sobrevive a la eliminación del producto
+    static final String TABLE_CREATE_ORDEN_ITEMS =
+            "CREATE TABLE " + TABLE_ORDEN_ITEMS + " (" +
+                    COLUMN_ITEM_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_ORDEN_ID + " INTEGER NOT NULL, " +
+                    COLUMN_ID + " INTEGER NOT NULL, " +
+                    COLUMN_NOMBRE + " TEXT NOT NULL, " +
+                    COLUMN_PRECIO_UNITARIO_CENTAVOS + " INTEGER NOT NULL, " +
+                    COLUMN_CANTIDAD + " INTEGER NOT NULL, " +
+                    "FOREIGN KEY(" + COLUMN_ORDEN_ID + ") REFERENCES " +
+                    TABLE_ORDENES + "(" + COLUMN_ORDEN_ID + ") ON DELETE CASCADE);";
+
+    private static final String[] TABLAS = {
+            TABLE_CREATE_PRODUCTOS,
+            TABLE_CREATE_USUARIOS,
+            TABLE_CREATE_CARRITO,
+            TABLE_CREATE_ORDENES,
+            TABLE_CREATE_ORDEN_ITEMS
+    };
+
+    // ==================================================================
+    // ÍNDICES
+    // ==================================================================
+
+    /**
+     * Índices que deben existir. usuarios.username no aparece porque su
+     * restricción UNIQUE ya crea un índice automático.
+     */
+    private static final String[] INDICES = {
+            // Listados del catálogo ordenados por nombre y paginación por (nombre, id)
+            "CREATE INDEX IF NOT EXISTS idx_productos_nombre ON " +
+                    TABLE_PRODUCTOS + "(" + COLUMN_NOMBRE + ");",
+            // Filtro por categoría ya ordenado por nombre
+            "CREATE INDEX IF NOT EXISTS idx_productos_categoria_nombre ON " +
+                    TABLE_PRODUCTOS + "(" + COLUMN_CATEGORIA + ", " + COLUMN_NOMBRE + ");",
+            // SKU externo usado por la importación masiva; los productos manuales lo dejan en NULL
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_productos_sku ON " +
+                    TABLE_PRODUCTOS + "(" + COLUMN_SKU + ");",
+            // Listado de usuarios por rol ordenado por nombre, conteos y roles únicos
+            "CREATE INDEX IF NOT EXISTS idx_usuarios_rol_username ON " +
+                    TABLE_USUARIOS + "(" + COLUMN_ROL + ", " + COLUMN_USERNAME + ");",
+            // Una sola fila de carrito por producto
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_carrito_producto ON " +
+                    TABLE_CARRITO + "(" + COLUMN_ID + ");",
+            // Historial por usuario, de la más reciente a la más antigua
+            "CREATE INDEX IF NOT EXISTS idx_ordenes_usuario_fecha ON " +
+                    TABLE_ORDENES + "(" + COLUMN_USUARIO_ORDEN + ", " + COLUMN_FECHA_ORDEN + ");",
+            // Reportes por rango de fechas
+            "CREATE INDEX IF NOT EXISTS idx_ordenes_fecha ON " +
+                    TABLE_ORDENES + "(" + COLUMN_FECHA_ORDEN + ");",
+            // Líneas de una orden
+            "CREATE INDEX IF NOT EXISTS idx_orden_items_orden ON " +
+                    TABLE_ORDEN_ITEMS + "(" + COLUMN_ORDEN_ID + ");",
+            // Ventas por producto
+            "CREATE INDEX IF NOT EXISTS idx_orden_items_producto ON " +
+                    TABLE_ORDEN_ITEMS + "(" + COLUMN_ID + ");"
+    };
+
+    /** Índices de versiones anteriores que ya no se usan. */
+    private static final String[] INDICES_OBSOLETOS = {
+            "idx_productos_categoria",
+            "idx_usuarios_username"
+    };
+
+    // ==================================================================
+    // TEXTO COMPLETO
+    // ==================================================================
+
+    // Contenido externo: el índice no duplica el texto de productos.
+    // unicode61 con remove_diacritics pliega acentos: "electronicos" encuentra "Electrónicos".
+    private static final String TABLE_CREATE_PRODUCTOS_FTS =
+            "CREATE VIRTUAL TABLE " + TABLE_PRODUCTOS_FTS + " USING fts4(" +
+                    "content=\"" + TABLE_PRODUCTOS + "\", " +
+                    COLUMN_NOMBRE + ", " + COLUMN_DESCRIPCION + ", " + COLUMN_CATEGORIA + ", " +
+                    "tokenize=unicode61 \"remove_diacritics=1\", " +
+                    "prefix=\"2,3\");";
+
+    private static final String COLUMNAS_FTS =
+            COLUMN_NOMBRE + ", " + COLUMN_DESCRIPCION + ", " + COLUMN_CATEGORIA;
+
+    // Los de actualización solo se disparan si cambia una columna indexada, no con el stock
+    private static final String[] TRIGGERS_PRODUCTOS_FTS = {
+            "CREATE TRIGGER productos_fts_ai AFTER INSERT ON " + TABLE_PRODUCTOS + " BEGIN " +
+                    "INSERT INTO " + TABLE_PRODUCTOS_FTS + "(docid, " + COLUMN_NOMBRE + ", " +
+                    COLUMN_DESCRIPCION + ", " + COLUMN_CATEGORIA + ") VALUES (new." + COLUMN_ID + ", new." +
+                    COLUMN_NOMBRE + ", new." + COLUMN_DESCRIPCION + ", new." + COLUMN_CATEGORIA + "); END;",
+            "CREATE TRIGGER productos_fts_bu BEFORE UPDATE OF " + COLUMNAS_FTS + " ON " + TABLE_PRODUCTOS + " BEGIN " +
+                    "DELETE FROM " + TABLE_PRODUCTOS_FTS + " WHERE docid = old." + COLUMN_ID + "; END;",
+            "CREATE TRIGGER productos_fts_au AFTER UPDATE OF " + COLUMNAS_FTS + " ON " + TABLE_PRODUCTOS + " BEGIN " +
+                    "INSERT INTO " + TABLE_PRODUCTOS_FTS + "(docid, " + COLUMN_NOMBRE + ", " +
+                    COLUMN_DESCRIPCION + ", " + COLUMN_CATEGORIA + ") VALUES (new." + COLUMN_ID + ", new." +
+                    COLUMN_NOMBRE + ", new." + COLUMN_DESCRIPCION + ", new." + COLUMN_CATEGORIA + "); END;",
+            "CREATE TRIGGER productos_fts_bd BEFORE DELETE ON " + TABLE_PRODUCTOS + " BEGIN " +
+                    "DELETE FROM " + TABLE_PRODUCTOS_FTS + " WHERE docid = old." + COLUMN_ID + "; END;"
+    };
+
+    private static void crearIndiceTextoProductos(SQLiteDatabase db) {
+        db.execSQL(TABLE_CREATE_PRODUCTOS_FTS);
+        for (String trigger : TRIGGERS_PRODUCTOS_FTS) {
+            db.execSQL(trigger);
+        }
+    }
+
+    // ==================================================================
+    // MINIATURAS
+    // ==================================================================
+
+    // Las miniaturas de la imagen anterior dejan de valer en cuanto cambia
+    // imagen_path, se haya editado desde donde se haya editado
+    private static final String TRIGGER_MINIATURAS_OBSOLETAS =
+            "CREATE TRIGGER productos_miniaturas_au AFTER UPDATE OF " + COLUMN_IMAGEN_PATH + " ON " + TABLE_PRODUCTOS +
+                    " WHEN new." + COLUMN_IMAGEN_PATH + " IS NOT old." + COLUMN_IMAGEN_PATH + " BEGIN " +
+                    "UPDATE " + TABLE_PRODUCTOS + " SET " + COLUMN_MINIATURA_LISTA + " = NULL, " +
+                    COLUMN_MINIATURA_DETALLE + " = NULL WHERE " + COLUMN_ID + " = new." + COLUMN_ID + "; END;";
+
+    // ==================================================================
+    // RESUMEN DE ESTADÍSTICAS
+    // ==================================================================
+
+    // Una sola fila (id = 1) que los triggers actualizan con cada cambio
+    private static final String TABLE_CREATE_ESTADISTICAS =
+            "CREATE TABLE " + TABLE_ESTADISTICAS + " (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                    COLUMN_TOTAL_USUARIOS + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_TOTAL_PRODUCTOS + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_UNIDADES_CARRITO + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_VALOR_CARRITO + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_TOTAL_ORDENES + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_TOTAL_VENTAS_CENTAVOS + " INTEGER NOT NULL DEFAULT 0);";
+
+    private static String precioDe(String productoId) {
+        return "IFNULL((SELECT " + COLUMN_PRECIO_CENTAVOS + " FROM " + TABLE_PRODUCTOS +
+                " WHERE " + COLUMN_ID + " = " + productoId + "), 0)";
+    }
+
+    private static String actualizarEstadisticas(String asignaciones) {
+        return "UPDATE " + TABLE_ESTADISTICAS + " SET " + asignaciones + " WHERE id = 1;";
+    }
+
+    private static final String[] TRIGGERS_ESTADISTICAS = {
+            "CREATE TRIGGER estadisticas_usuarios_ai AFTER INSERT ON " + TABLE_USUARIOS + " BEGIN " +
+                    actualizarEstadisticas(COLUMN_TOTAL_USUARIOS + " = " + COLUMN_TOTAL_USUARIOS + " + 1") + " END;",
+            "CREATE TRIGGER estadisticas_usuarios_ad AFTER DELETE ON " + TABLE_USUARIOS + " BEGIN " +
+                    actualizarEstadisticas(COLUMN_TOTAL_USUARIOS + " = " + COLUMN_TOTAL_USUARIOS + " - 1") + " END;",
+
+            "CREATE TRIGGER estadisticas_productos_ai AFTER INSERT ON " + TABLE_PRODUCTOS + " BEGIN " +
+                    actualizarEstadisticas(COLUMN_TOTAL_PRODUCTOS + " = " + COLUMN_TOTAL_PRODUCTOS + " + 1") + " END;",
+            // Las claves foráneas no están activas: el ON DELETE CASCADE de carrito se aplica aquí,
+            // antes de borrar el producto, para que el trigger de carrito aún encuentre su precio
+            "CREATE TRIGGER productos_carrito_bd BEFORE DELETE ON " + TABLE_PRODUCTOS + " BEGIN " +
+                    "DELETE FROM " + TABLE_CARRITO + " WHERE " + COLUMN_ID + " = old." + COLUMN_ID + "; END;",
+            "CREATE TRIGGER estadisticas_productos_ad AFTER DELETE ON " + TABLE_PRODUCTOS + " BEGIN " +
+                    actualizarEstadisticas(COLUMN_TOTAL_PRODUCTOS + " = " + COLUMN_TOTAL_PRODUCTOS + " - 1") + " END;",
+            "CREATE TRIGGER estadisticas_productos_au AFTER UPDATE OF " + COLUMN_PRECIO_CENTAVOS + " ON " + TABLE_PRODUCTOS +
+                    " WHEN new." + COLUMN_PRECIO_CENTAVOS + " IS NOT old." + COLUMN_PRECIO_CENTAVOS + " BEGIN " +
+                    actualizarEstadisticas(COLUMN_VALOR_CARRITO + " = " + COLUMN_VALOR_CARRITO +
+                            " + (new." + COLUMN_PRECIO_CENTAVOS + " - old." + COLUMN_PRECIO_CENTAVOS + ") * " +
+                            "IFNULL((SELECT " + COLUMN_CANTIDAD + " FROM " + TABLE_CARRITO +
+                            " WHERE " + COLUMN_ID + " = new." + COLUMN_ID + "), 0)") + " END;",
+
+            "CREATE TRIGGER estadisticas_carrito_ai AFTER INSERT ON " + TABLE_CARRITO + " BEGIN " +
+                    actualizarEstadisticas(
+                            COLUMN_UNIDADES_CARRITO + " = " + COLUMN_UNIDADES_CARRITO + " + new." + COLUMN_CANTIDAD + ", " +
+                            COLUMN_VALOR_CARRITO + " = " + COLUMN_VALOR_CARRITO + " + new." + COLUMN_CANTIDAD +
+                            " * " + precioDe("new." + COLUMN_ID)) + " END;",
+            "CREATE TRIGGER estadisticas_carrito_au AFTER UPDATE OF " + COLUMN_ID + ", " + COLUMN_CANTIDAD +
+                    " ON " + TABLE_CARRITO + " BEGIN " +
+                    actualizarEstadisticas(
+                            COLUMN_UNIDADES_CARRITO + " = " + COLUMN_UNIDADES_CARRITO +
+                            " + new." + COLUMN_CANTIDAD + " - old." + COLUMN_CANTIDAD + ", " +
+                            COLUMN_VALOR_CARRITO + " = " + COLUMN_VALOR_CARRITO +
+                            " + new." + COLUMN_CANTIDAD + " * " + precioDe("new." + COLUMN_ID) +
+                            " - old." + COLUMN_CANTIDAD + " * " + precioDe("old." + COLUMN_ID)) + " END;",
+            "CREATE TRIGGER estadisticas_carrito_ad AFTER DELETE ON " + TABLE_CARRITO + " BEGIN " +
+                    actualizarEstadisticas(
+                            COLUMN_UNIDADES_CARRITO + " = " + COLUMN_UNIDADES_CARRITO + " - old." + COLUMN_CANTIDAD + ", " +
+                            COLUMN_VALOR_CARRITO + " = " + COLUMN_VALOR_CARRITO + " - old." + COLUMN_CANTIDAD +
+                            " * " + precioDe("old." + COLUMN_ID)) + " END;",
+
+            "CREATE TRIGGER estadisticas_ordenes_ai AFTER INSERT ON " + TABLE_ORDENES + " BEGIN " +
+                    actualizarEstadisticas(
+                            COLUMN_TOTAL_ORDENES + " = " + COLUMN_TOTAL_ORDENES + " + 1, " +
+                            COLUMN_TOTAL_VENTAS_CENTAVOS + " = " + COLUMN_TOTAL_VENTAS_CENTAVOS +
+                            " + new." + COLUMN_TOTAL_CENTAVOS) + " END;",
+            "CREATE TRIGGER estadisticas_ordenes_ad AFTER DELETE ON " + TABLE_ORDENES + " BEGIN " +
+                    actualizarEstadisticas(
+                            COLUMN_TOTAL_ORDENES + " = " + COLUMN_TOTAL_ORDENES + " - 1, " +
+                            COLUMN_TOTAL_VENTAS_CENTAVOS + " = " + COLUMN_TOTAL_VENTAS_CENTAVOS +
+                            " - old." + COLUMN_TOTAL_CENTAVOS) + " END;"
+    };
+
+    private static void crearEstadisticas(SQLiteDatabase db) {
+        db.execSQL(TABLE_CREATE_ESTADISTICAS);
+        for (String trigger : TRIGGERS_ESTADISTICAS) {
+            db.execSQL(trigger);
+        }
+        recalcularEstadisticas(db);
+    }
+
+    static final String SQL_RECALCULAR_ESTADISTICAS =
+            "INSERT OR REPLACE INTO " + TABLE_ESTADISTICAS + " (id, " +
+                    COLUMN_TOTAL_USUARIOS + ", " + COLUMN_TOTAL_PRODUCTOS + ", " +
+                    COLUMN_UNIDADES_CARRITO + ", " + COLUMN_VALOR_CARRITO + ", " +
+                    COLUMN_TOTAL_ORDENES + ", " + COLUMN_TOTAL_VENTAS_CENTAVOS + ") SELECT 1, " +
+                    "(SELECT COUNT(*) FROM " + TABLE_USUARIOS + "), " +
+                    "(SELECT COUNT(*) FROM " + TABLE_PRODUCTOS + "), " +
+                    "(SELECT IFNULL(SUM(" + COLUMN_CANTIDAD + "), 0) FROM " + TABLE_CARRITO + "), " +
+                    "(SELECT IFNULL(SUM(c." + COLUMN_CANTIDAD + " * " + precioDe("c." + COLUMN_ID) + "), 0) " +
+                    "FROM " + TABLE_CARRITO + " c), " +
+                    "(SELECT COUNT(*) FROM " + TABLE_ORDENES + "), " +
+                    "(SELECT IFNULL(SUM(" + COLUMN_TOTAL_CENTAVOS + "), 0) FROM " + TABLE_ORDENES + ")";
+
+    /** Reescribe la fila del resumen a partir de las tablas base. */
+    static void recalcularEstadisticas(SQLiteDatabase db) {
+        db.execSQL(SQL_RECALCULAR_ESTADISTICAS);
+    }
+
+    // ==================================================================
+    // MIGRACIONES
+    // ==================================================================
+
+    private interface Paso {
+        void aplicar(SQLiteDatabase db);
+    }
+
+    private static final class Migracion {
+        final int version;
+        final Paso paso;
+
+        Migracion(int version, Paso paso) {
+            this.version = version;
+            this.paso = paso;
+        }
+    }
+
+    /**
+     * Migraciones en orden. Cada una usa el SQL de su época: no deben
+     * depender de las definiciones actuales de tabla, que siguen cambiando.
+     * ALTER TABLE no admite DEFAULT CURRENT_TIMESTAMP, por eso las columnas
+     * de fecha agregadas por migración no tienen valor por defecto.
+     */
+    private static final Migracion[] MIGRACIONES = {
+            new Migracion(2, db ->
+                    db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_IMAGEN_PATH + " TEXT;")),
+            new Migracion(3, db -> {
+                db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_STOCK + " INTEGER DEFAULT 0;");
+                db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_CARRITO + " (" +
+                        COLUMN_CARRITO_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        COLUMN_ID + " INTEGER NOT NULL, " +
+                        COLUMN_CANTIDAD + " INTEGER DEFAULT 1);");
+            }),
+            new Migracion(4, db ->
+                    db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_CANTIDAD + " INTEGER DEFAULT 1;")),
+            new Migracion(5, db ->
+                    db.execSQL("ALTER TABLE " + TABLE_USUARIOS + " ADD COLUMN " + COLUMN_SALT + " TEXT;")),
+            new Migracion(6, db -> {
+                db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_CATEGORIA + " TEXT DEFAULT 'General';");
+                db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_FECHA_CREACION + " DATETIME;");
+                db.execSQL("ALTER TABLE " + TABLE_USUARIOS + " ADD COLUMN " + COLUMN_EMAIL + " TEXT;");
+                db.execSQL("ALTER TABLE " + TABLE_USUARIOS + " ADD COLUMN " + COLUMN_FECHA_REGISTRO + " DATETIME;");
+                db.execSQL("ALTER TABLE " + TABLE_CARRITO + " ADD COLUMN " + COLUMN_FECHA_AGREGADO + " DATETIME;");
+            }),
+            // La versión 7 solo creaba índices; ahora los mantiene sincronizarIndices
+            new Migracion(8, db -> {
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_CARRITO);
+                db.execSQL(TABLE_CREATE_CARRITO);
+            }),
+            new Migracion(9, db -> {
+                // Consolidar filas duplicadas antes de crear el índice único
+                db.execSQL("UPDATE " + TABLE_CARRITO + " SET " + COLUMN_CANTIDAD + " = (" +
+                        "SELECT SUM(c2." + COLUMN_CANTIDAD + ") FROM " + TABLE_CARRITO + " c2 " +
+                        "WHERE c2." + COLUMN_ID + " = " + TABLE_CARRITO + "." + COLUMN_ID + ");");
+                db.execSQL("DELETE FROM " + TABLE_CARRITO + " WHERE " + COLUMN_CARRITO_ID + " NOT IN (" +
+                        "SELECT MIN(" + COLUMN_CARRITO_ID + ") FROM " + TABLE_CARRITO +
+                        " GROUP BY " + COLUMN_ID + ");");
+            }),
+            new Migracion(10, db ->
+                    db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_SKU + " TEXT;")),
+            new Migracion(11, db -> {
+                crearIndiceTextoProductos(db);
+                db.execSQL("INSERT INTO " + TABLE_PRODUCTOS_FTS + "(" + TABLE_PRODUCTOS_FTS + ") VALUES('rebuild');");
+            }),
+            // La versión 12 solo cambiaba índices ((categoria, nombre) reemplazó al de
+            // categoría sola); ahora los mantiene sincronizarIndices
+            new Migracion(13, db -> {
+                db.execSQL(TABLE_CREATE_ORDENES);
+                db.execSQL(TABLE_CREATE_ORDEN_ITEMS);
+            }),
+            new Migracion(14, db -> {
+                // Los triggers de texto completo pasan a dispararse solo con columnas indexadas
+                db.execSQL("DROP TRIGGER IF EXISTS productos_fts_bu");
+                db.execSQL("DROP TRIGGER IF EXISTS productos_fts_au");
+                for (String trigger : TRIGGERS_PRODUCTOS_FTS) {
+                    if (trigger.contains(" UPDATE OF ")) db.execSQL(trigger);
+                }
+                // Filas de carrito huérfanas de productos ya eliminados
+                db.execSQL("DELETE FROM " + TABLE_CARRITO + " WHERE " + COLUMN_ID +
+                        " NOT IN (SELECT " + COLUMN_ID + " FROM " + TABLE_PRODUCTOS + ")");
+                // El resumen de estadísticas lo crea la versión 18: sus triggers
+                // actuales ya leen columnas en centavos, que aquí todavía no existen
+            }),
+            new Migracion(15, Esquema::migrarPasswordsABinario),
+            new Migracion(16, Esquema::migrarPreciosACentavos),
+            new Migracion(17, db -> {
+                db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_MINIATURA_LISTA + " TEXT;");
+                db.execSQL("ALTER TABLE " + TABLE_PRODUCTOS + " ADD COLUMN " + COLUMN_MINIATURA_DETALLE + " TEXT;");
+                db.execSQL(TRIGGER_MINIATURAS_OBSOLETAS);
+            }),
+            new Migracion(18, Esquema::migrarOrdenesACentavos)
+    };
+
+    static final int VERSION = MIGRACIONES[MIGRACIONES.length - 1].version;
+
+    /**
+     * Versión 15: salt y hash pasan de hex en TEXT a BLOB, con el algoritmo y
+     * sus parámetros en hash_parametros. SQLite no cambia el tipo de una
+     * columna, así que la tabla se reconstruye y cada fila se convierte aquí;
+     * un hash que no se pueda leer queda vacío y ese usuario deberá cambiar
+     * su contraseña.
+     */
+    private static void migrarPasswordsABinario(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE usuarios_nuevo (" +
+                COLUMN_USUARIO_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_USERNAME + " TEXT NOT NULL UNIQUE, " +
+                COLUMN_PASSWORD + " BLOB NOT NULL, " +
+                COLUMN_SALT + " BLOB, " +
+                COLUMN_HASH_PARAMETROS + " TEXT NOT NULL, " +
+                COLUMN_ROL + " TEXT NOT NULL, " +
+                COLUMN_EMAIL + " TEXT, " +
+                COLUMN_FECHA_REGISTRO + " DATETIME DEFAULT CURRENT_TIMESTAMP);");
+
+        SQLiteStatement insertar = db.compileStatement("INSERT INTO usuarios_nuevo (" +
+                COLUMN_USUARIO_ID + ", " + COLUMN_USERNAME + ", " + COLUMN_PASSWORD + ", " +
+                COLUMN_SALT + ", " + COLUMN_HASH_PARAMETROS + ", " + COLUMN_ROL + ", " +
+                COLUMN_EMAIL + ", " + COLUMN_FECHA_REGISTRO + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_USUARIO_ID + ", " + COLUMN_USERNAME + ", " +
+                COLUMN_PASSWORD + ", " + COLUMN_SALT + ", " + COLUMN_ROL + ", " +
+                COLUMN_EMAIL + ", " + COLUMN_FECHA_REGISTRO + " FROM " + TABLE_USUARIOS, null);
+        try {
+            while (cursor.moveToNext()) {
+                HashPassword hash;
+                try {
+                    hash = HashPassword.desdeTexto(cursor.getString(2), cursor.getString(3));
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Hash ilegible para " + cursor.getString(1) + ": " + e.getMessage());
+                    hash = new HashPassword("", null, new byte[0]);
+                }
+                insertar.clearBindings();
+                insertar.bindLong(1, cursor.getLong(0));
+                insertar.bindString(2, cursor.getString(1));
+                insertar.bindBlob(3, hash.hash);
+                DatabaseUtils.bindObjectToProgram(insertar, 4, hash.salt);
+                insertar.bindString(5, hash.parametros);
+                insertar.bindString(6, cursor.getString(4));
+                DatabaseUtils.bindObjectToProgram(insertar, 7, cursor.getString(5));
+                DatabaseUtils.bindObjectToProgram(insertar, 8, cursor.getString(6));
+                insertar.executeInsert();
+            }
+        } finally {
+            cursor.close();
+            insertar.close();
+        }
+
+        // DROP TABLE se lleva los índices de usuarios; los repone sincronizarIndices
+        // al terminar la migración. Los triggers de estadísticas los crea la versión 18
+        db.execSQL("DROP TABLE " + TABLE_USUARIOS);
+        db.execSQL("ALTER TABLE usuarios_nuevo RENAME TO " + TABLE_USUARIOS);
+    }
+
+    /**
+     * Versión 16: productos.precio (REAL, pesos) pasa a precio_centavos
+     * (INTEGER), redondeado al centavo. La tabla se reconstruye como en la
+     * versión 15; los triggers que la leen se quitan antes porque
+     * RENAME valida todos los triggers del esquema contra tablas existentes.
+     * El resumen de estadísticas se vuelve a crear en la versión 18, cuando
+     * las órdenes también están en centavos.
+     */
+    private static void migrarPreciosACentavos(SQLiteDatabase db) {
+        quitarEstadisticas(db);
+
+        db.execSQL("CREATE TABLE productos_nuevo (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_NOMBRE + " TEXT NOT NULL, " +
+                COLUMN_DESCRIPCION + " TEXT, " +
+                COLUMN_PRECIO_CENTAVOS + " INTEGER NOT NULL, " +
+                COLUMN_IMAGEN_PATH + " TEXT, " +
+                COLUMN_STOCK + " INTEGER DEFAULT 0, " +
+                COLUMN_CANTIDAD + " INTEGER DEFAULT 1, " +
+                COLUMN_CATEGORIA + " TEXT DEFAULT 'General', " +
+                COLUMN_FECHA_CREACION + " DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                COLUMN_SKU + " TEXT);");
+        // ROUND devuelve REAL; el CAST lo deja entero. Mismo id: el índice de texto completo sigue valiendo
+        db.execSQL("INSERT INTO productos_nuevo (" +
+                COLUMN_ID + ", " + COLUMN_NOMBRE + ", " + COLUMN_DESCRIPCION + ", " +
+                COLUMN_PRECIO_CENTAVOS + ", " + COLUMN_IMAGEN_PATH + ", " + COLUMN_STOCK + ", " +
+                COLUMN_CANTIDAD + ", " + COLUMN_CATEGORIA + ", " + COLUMN_FECHA_CREACION + ", " + COLUMN_SKU +
+                ") SELECT " +
+                COLUMN_ID + ", " + COLUMN_NOMBRE + ", " + COLUMN_DESCRIPCION + ", " +
+                "CAST(ROUND(precio * 100) AS INTEGER), " + COLUMN_IMAGEN_PATH + ", " + COLUMN_STOCK + ", " +
+                COLUMN_CANTIDAD + ", " + COLUMN_CATEGORIA + ", " + COLUMN_FECHA_CREACION + ", " + COLUMN_SKU +
+                " FROM " + TABLE_PRODUCTOS);
+
+        // DROP TABLE se lleva los triggers de texto completo de productos
+        db.execSQL("DROP TABLE " + TABLE_PRODUCTOS);
+        db.execSQL("ALTER TABLE productos_nuevo RENAME TO " + TABLE_PRODUCTOS);
+        for (String trigger : TRIGGERS_PRODUCTOS_FTS) {
+            db.execSQL(trigger);
+        }
+    }
+
+    /**
+     * Versión 18: ordenes.total y orden_items.precio_unitario (REAL, pesos)
+     * pasan a total_centavos y precio_unitario_centavos (INTEGER), igual que
+     * los precios en la versión 16. Una base que pasó por la versión 13 con
+     * una app anterior tiene las columnas en pesos; una que la aplica ahora
+     * ya crea las tablas en centavos y no hay nada que convertir. El resumen
+     * se crea de nuevo con total_ventas_centavos y se recalcula desde las
+     * órdenes ya convertidas.
+     */
+    private static void migrarOrdenesACentavos(SQLiteDatabase db) {
+        quitarEstadisticas(db);
+        if (tieneColumna(db, TABLE_ORDENES, "total")) {
+            convertirOrdenesACentavos(db);
+        }
+        crearEstadisticas(db);
+    }
+
+    /** Reconstruye ambas tablas con los mismos ids; los índices los repone sincronizarIndices. */
+    private static void convertirOrdenesACentavos(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE ordenes_nuevo (" +
+                COLUMN_ORDEN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_USUARIO_ORDEN + " TEXT NOT NULL, " +
+                COLUMN_FECHA_ORDEN + " DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                COLUMN_TOTAL_CENTAVOS + " INTEGER NOT NULL, " +
+                COLUMN_ESTADO + " TEXT NOT NULL DEFAULT '" + ESTADO_COMPLETADA + "');");
+        db.execSQL("INSERT INTO ordenes_nuevo (" +
+                COLUMN_ORDEN_ID + ", " + COLUMN_USUARIO_ORDEN + ", " + COLUMN_FECHA_ORDEN + ", " +
+                COLUMN_TOTAL_CENTAVOS + ", " + COLUMN_ESTADO +
+                ") SELECT " +
+                COLUMN_ORDEN_ID + ", " + COLUMN_USUARIO_ORDEN + ", " + COLUMN_FECHA_ORDEN + ", " +
+                "CAST(ROUND(total * 100) AS INTEGER), " + COLUMN_ESTADO +
+                " FROM " + TABLE_ORDENES);
+        db.execSQL("DROP TABLE " + TABLE_ORDENES);
+        db.execSQL("ALTER TABLE ordenes_nuevo RENAME TO " + TABLE_ORDENES);
+
+        db.execSQL("CREATE TABLE orden_items_nuevo (" +
+                COLUMN_ITEM_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_ORDEN_ID + " INTEGER NOT NULL, " +
+                COLUMN_ID + " INTEGER NOT NULL, " +
+                COLUMN_NOMBRE + " TEXT NOT NULL, " +
+                COLUMN_PRECIO_UNITARIO_CENTAVOS + " INTEGER NOT NULL, " +
+                COLUMN_CANTIDAD + " INTEGER NOT NULL, " +
+                "FOREIGN KEY(" + COLUMN_ORDEN_ID + ") REFERENCES " +
+                TABLE_ORDENES + "(" + COLUMN_ORDEN_ID + ") ON DELETE CASCADE);");
+        db.execSQL("INSERT INTO orden_items_nuevo (" +
+                COLUMN_ITEM_ID + ", " + COLUMN_ORDEN_ID + ", " + COLUMN_ID + ", " + COLUMN_NOMBRE + ", " +
+                COLUMN_PRECIO_UNITARIO_CENTAVOS + ", " + COLUMN_CANTIDAD +
+                ") SELECT " +
+                COLUMN_ITEM_ID + ", " + COLUMN_ORDEN_ID + ", " + COLUMN_ID + ", " + COLUMN_NOMBRE + ", " +
+                "CAST(ROUND(precio_unitario * 100) AS INTEGER), " + COLUMN_CANTIDAD +
+                " FROM " + TABLE_ORDEN_ITEMS);
+        db.execSQL("DROP TABLE " + TABLE_ORDEN_ITEMS);
+        db.execSQL("ALTER TABLE orden_items_nuevo RENAME TO " + TABLE_ORDEN_ITEMS);
+    }
+
+    private static boolean tieneColumna(SQLiteDatabase db, String tabla, String columna) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tabla + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                if (columna.equals(cursor.getString(1))) return true;
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Quita el resumen y sus triggers antes de reconstruir una tabla que estos leen. */
+    private static void quitarEstadisticas(SQLiteDatabase db) {
+        for (String trigger : TRIGGERS_ESTADISTICAS) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + nombreTrigger(trigger));
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ESTADISTICAS);
+    }
+
+    private static String nombreTrigger(String definicion) {
+        int inicio = "CREATE TRIGGER ".length();
+        return definicion.substring(inicio, definicion.indexOf(' ', inicio));
+    }
+
+    // ==================================================================
+    // API
+    // ==================================================================
+
+    static void crear(SQLiteDatabase db) {
+        for (String tabla : TABLAS) {
+            db.execSQL(tabla);
+        }
+        crearIndiceTextoProductos(db);
+        db.execSQL(TRIGGER_MINIATURAS_OBSOLETAS);
+        crearEstadisticas(db);
+        sincronizarIndices(db);
+    }
+
+    static void migrar(SQLiteDatabase db, int desde, int hasta) {
+        for (Migracion migracion : MIGRACIONES) {
+            if (migracion.version > desde && migracion.version <= hasta) {
+                Log.d(TAG, "Aplicando migración " + migracion.version);
+                migracion.paso.aplicar(db);
+            }
+        }
+        sincronizarIndices(db);
+    }
+
+    static void sincronizarIndices(SQLiteDatabase db) {
+        for (String obsoleto : INDICES_OBSOLETOS) {
+            db.execSQL("DROP INDEX IF EXISTS " + obsoleto);
+        }
+        for (String indice : INDICES) {
+            db.execSQL(indice);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.example.myapplication.database;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import com.example.myapplication.models.Dinero;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Importación masiva del catálogo desde CSV o JSON.
+ *
+ * El archivo se lee fila por fila (nunca se carga completo en memoria), cada
+ * fila se enlaza a una sentencia compilada y los cambios se confirman en
+ * lotes de tamaño configurable. Cada lote es una escritura de ColaEscrituras,
+ * en orden con las demás escrituras de la app.
+ *
+ * Columnas reconocidas (encabezado CSV o claves JSON, sin distinguir
+ * mayúsculas): sku, nombre, descripcion, precio (en pesos, p. ej. "19.99"),
+ * imagen_path, stock, categoria.
+ */
+public class ImportadorProductos {
+
+    private static final String TAG = "ImportadorProductos";
+
+    public enum Formato { CSV, JSON }
+
+    /** Recibe el avance de la importación; se invoca en el hilo que importa. */
+    public interface Listener {
+        void onProgreso(int procesadas, int importadas);
+
+        void onErrorFila(int fila, String mensaje);
+    }
+
+    public static final class Resultado {
+        public final int procesadas;
+        public final int importadas;
+        public final int errores;
+
+        Resultado(int procesadas, int importadas, int errores) {
+            this.procesadas = procesadas;
+            this.importadas = importadas;
+            this.errores = errores;
+        }
+    }
+
+    private final DatabaseHelper dbHelper;
+    private int tamanoLote = 500;
+    private boolean upsertPorSku = false;
+    private Listener listener;
+
+    public ImportadorProductos(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    public ImportadorProductos setTamanoLote(int tamanoLote) {
+        if (tamanoLote <= 0) throw new IllegalArgumentException("El tamaño de lote debe ser positivo");
+        this.tamanoLote = tamanoLote;
+        return this;
+    }
+
+    /** Si está activo, las filas con un sku ya existente actualizan ese producto. */
+    public ImportadorProductos setUpsertPorSku(boolean upsertPorSku) {
+        this.upsertPorSku = upsertPorSku;
+        return this;
+    }
+
+    public ImportadorProductos setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public Resultado importar(File archivo) throws IOException {
+        Formato formato = archivo.getName().toLowerCase(Locale.ROOT).endsWith(".json")
+                ? Formato.JSON : Formato.CSV;
+        try (InputStream in = new FileInputStream(archivo)) {
+            return importar(in, formato);
+        }
+    }
+
+    public Resultado importar(InputStream in, Formato formato) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try (FuenteFilas fuente = formato == Formato.JSON ? new FuenteJson(reader) : new FuenteCsv(reader)) {
+            return importar(fuente);
+        }
+    }
+
+    static final String SQL_INSERTAR =
+            "INSERT INTO " + DatabaseHelper.TABLE_PRODUCTOS + " (" +
+                    DatabaseHelper.COLUMN_NOMBRE + ", " + DatabaseHelper.COLUMN_DESCRIPCION + ", " +
+                    DatabaseHelper.COLUMN_PRECIO_CENTAVOS + ", " + DatabaseHelper.COLUMN_IMAGEN_PATH + ", " +
+                    DatabaseHelper.COLUMN_STOCK + ", " + DatabaseHelper.COLUMN_CATEGORIA + ", " +
+                    DatabaseHelper.COLUMN_SKU + ", " + DatabaseHelper.COLUMN_CANTIDAD +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, 1)";
+
+    static final String SQL_ACTUALIZAR_POR_SKU =
+            "UPDATE " + DatabaseHelper.TABLE_PRODUCTOS + " SET " +
+                    DatabaseHelper.COLUMN_NOMBRE + " = ?, " + DatabaseHelper.COLUMN_DESCRIPCION + " = ?, " +
+                    DatabaseHelper.COLUMN_PRECIO_CENTAVOS + " = ?, " + DatabaseHelper.COLUMN_IMAGEN_PATH + " = ?, " +
+                    DatabaseHelper.COLUMN_STOCK + " = ?, " + DatabaseHelper.COLUMN_CATEGORIA + " = ? " +
+                    "WHERE " + DatabaseHelper.COLUMN_SKU + " = ?";
+
+    private Resultado importar(FuenteFilas fuente) throws IOException {
+        // Filas válidas del lote en curso; las instancias se reutilizan de un lote a otro
+        ArrayList<Fila> lote = new ArrayList<>(Math.min(tamanoLote, 1_024));
+        ArrayList<Fila> libres = new ArrayList<>();
+        int procesadas = 0;
+        int importadas = 0;
+        int errores = 0;
+
+        while (true) {
+            Fila fila = libres.isEmpty() ? new Fila() : libres.remove(libres.size() - 1);
+            if (!fuente.siguiente(fila)) {
+                libres.add(fila);
+                break;
+            }
+            procesadas++;
+            String error = fila.validar();
+            if (error != null) {
+                errores++;
+                reportarError(procesadas, error);
+                libres.add(fila);
+                continue;
+            }
+            fila.numero = procesadas;
+            lote.add(fila);
+
+            if (lote.size() >= tamanoLote) {
+                int escritas = confirmarLote(lote);
+                importadas += escritas;
+                errores += lote.size() - escritas;
+                libres.addAll(lote);
+                lote.clear();
+                if (listener != null) listener.onProgreso(procesadas, importadas);
+            }
+        }
+        if (!lote.isEmpty()) {
+            int escritas = confirmarLote(lote);
+            importadas += escritas;
+            errores += lote.size() - escritas;
+        }
+
+        if (listener != null) listener.onProgreso(procesadas, importadas);
+        Log.d(TAG, "Importación terminada: " + importadas + " de " + procesadas + " filas, " + errores + " errores");
+        return new Resultado(procesadas, importadas, errores);
+    }
+
+    /**
+     * Escribe el lote en el hilo escritor de la base y después avisa las
+     * filas que SQLite rechazó. Leer el archivo queda fuera del escritor.
+     *
+     * @return filas escritas
+     */
+    private int confirmarLote(List<Fila> lote) {
+        int escritas = dbHelper.escrituras().ejecutar(() -> escribirLote(lote));
+        for (Fila fila : lote) {
+            if (fila.errorSql != null) reportarError(fila.numero, fila.errorSql);
+        }
+        return escritas;
+    }
+
+    /**
+     * Tarea de ColaEscrituras: si su lote se deshace se repite entera, así
+     * que solo deja resultados en las filas y los rehace en cada ejecución.
+     */
+    private int escribirLote(List<Fila> lote) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insertar = db.compileStatement(SQL_INSERTAR);
+        SQLiteStatement actualizar = upsertPorSku ? db.compileStatement(SQL_ACTUALIZAR_POR_SKU) : null;
+        int escritas = 0;
+        try {
+            for (Fila fila : lote) {
+                fila.errorSql = null;
+                try {
+                    boolean actualizado = false;
+                    if (actualizar != null && fila.sku != null) {
+                        fila.enlazar(actualizar);
+                        actualizado = actualizar.executeUpdateDelete() > 0;
+                    }
+                    if (!actualizado) {
+                        fila.enlazar(insertar);
+                        insertar.executeInsert();
+                    }
+                    escritas++;
+                } catch (SQLException e) {
+                    fila.errorSql = e.getMessage();
+                }
+            }
+        } finally {
+            insertar.close();
+            if (actualizar != null) actualizar.close();
+        }
+        // Se anuncia cuando el escritor confirma: cada lote ya es visible para las pantallas
+        if (escritas > 0) dbHelper.cambiaron(DatabaseHelper.TABLE_PRODUCTOS);
+        return escritas;
+    }
+
+    private void reportarError(int fila, String mensaje) {
+        Log.w(TAG, "Fila " + fila + ": " + mensaje);
+        if (listener != null) listener.onErrorFila(fila, mensaje);
+    }
+
+    // ==================================================================
+    // FILA REUTILIZABLE
+    // ==================================================================
+
+    /** Nombre de columna tal como lo espera {@link Fila#asignar}. */
+    private static String columna(String nombre) {
+        return nombre.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Fila {
+        String sku;
+        String nombre;
+        String descripcion;
+        String precio;
+        String imagenPath;
+        String stock;
+        String categoria;
+
+        // Número de fila en el archivo y, tras escribirla, el error de SQLite si la rechazó
+        int numero;
+        String errorSql;
+
+        private long precioCentavos;
+        private long stockValor;
+
+        void limpiar() {
+            sku = nombre = descripcion = precio = imagenPath = stock = categoria = null;
+        }
+
+        void asignar(String columna, String valor) {
+            if (valor != null) {
+                valor = valor.trim();
+                if (valor.isEmpty()) valor = null;
+            }
+            switch (columna) {
+                case DatabaseHelper.COLUMN_SKU: sku = valor; break;
+                case DatabaseHelper.COLUMN_NOMBRE: nombre = valor; break;
+                case DatabaseHelper.COLUMN_DESCRIPCION: descripcion = valor; break;
+                case DatabaseHelper.COLUMN_PRECIO: precio = valor; break;
+                case DatabaseHelper.COLUMN_IMAGEN_PATH: imagenPath = valor; break;
+                case DatabaseHelper.COLUMN_STOCK: stock = valor; break;
+                case DatabaseHelper.COLUMN_CATEGORIA: categoria = valor; break;
+                default: break;
+            }
+        }
+
+        /** @return mensaje de error o null si la fila es válida */
+        String validar() {
+            if (nombre == null) return "nombre vacío";
+            // Se lee en decimal exacto: "19.99" no pasa por double
+            Long centavos = Dinero.deTexto(precio);
+            if (centavos == null || centavos < 0) return "precio inválido: " + precio;
+            precioCentavos = centavos;
+            try {
+                stockValor = stock == null ? 0 : Long.parseLong(stock);
+            } catch (NumberFormatException e) {
+                return "stock inválido: " + stock;
+            }
+            if (stockValor < 0) return "stock inválido: " + stock;
+            return null;
+        }
+
+        /** Ambas sentencias usan el mismo orden de parámetros. */
+        void enlazar(SQLiteStatement statement) {
+            statement.clearBindings();
+            statement.bindString(1, nombre);
+            bindNullable(statement, 2, descripcion);
+            statement.bindLong(3, precioCentavos);
+            bindNullable(statement, 4, imagenPath);
+            statement.bindLong(5, stockValor);
+            statement.bindString(6, categoria != null ? categoria : "General");
+            bindNullable(statement, 7, sku);
+        }
+
+        private static void bindNullable(SQLiteStatement statement, int index, String valor) {
+            if (valor == null) statement.bindNull(index);
+            else statement.bindString(index, valor);
+        }
+    }
+
+    // ==================================================================
+    // FUENTES DE FILAS
+    // ==================================================================
+
+    private interface FuenteFilas extends Closeable {
+        /** Llena {@code fila} con la siguiente fila; devuelve false al terminar. */
+        boolean siguiente(Fila fila) throws IOException;
+    }
+
+    /** CSV con encabezado, separado por comas, con soporte de campos entre comillas. */
+    private static final class FuenteCsv implements FuenteFilas {
+        private final Reader reader;
+        private final List<String> campos = new ArrayList<>();
+        private final StringBuilder campo = new StringBuilder();
+        private String[] encabezado;
+
+        FuenteCsv(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean siguiente(Fila fila) throws IOException {
+            if (encabezado == null) {
+                if (!leerRegistro()) return false;
+                encabezado = new String[campos.size()];
+                for (int i = 0; i < encabezado.length; i++) {
+                    encabezado[i] = columna(campos.get(i));
+                }
+            }
+            while (leerRegistro()) {
+                if (campos.size() == 1 && campos.get(0).trim().isEmpty()) continue; // línea vacía
+                fila.limpiar();
+                int n = Math.min(encabezado.length, campos.size());
+                for (int i = 0; i < n; i++) {
+                    fila.asignar(encabezado[i], campos.get(i));
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private boolean leerRegistro() throws IOException {
+            campos.clear();
+            campo.setLength(0);
+            boolean entreComillas = false;
+            boolean leyoAlgo = false;
+            int c;
+            while ((c = reader.read()) != -1) {
+                leyoAlgo = true;
+                if (entreComillas) {
+                    if (c == '"') {
+                        reader.mark(1);
+                        if (reader.read() == '"') {
+                            campo.append('"');
+                        } else {
+                            reader.reset();
+                            entreComillas = false;
+                        }
+                    } else {
+                        campo.append((char) c);
+                    }
+                } else if (c == '"') {
+                    entreComillas = true;
+                } else if (c == ',') {
+                    campos.add(campo.toString());
+                    campo.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    campo.append((char) c);
+                }
+            }
+            if (!leyoAlgo) return false;
+            campos.add(campo.toString());
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /** Arreglo JSON de objetos, leído en streaming con {@link JsonReader}. */
+    private static final class FuenteJson implements FuenteFilas {
+        private final JsonReader reader;
+        private boolean iniciado = false;
+
+        FuenteJson(Reader reader) {
+            this.reader = new JsonReader(reader);
+        }
+
+        @Override
+        public boolean siguiente(Fila fila) throws IOException {
+            if (!iniciado) {
+                reader.beginArray();
+                iniciado = true;
+            }
+            if (!reader.hasNext()) {
+                reader.endArray();
+                return false;
+            }
+            fila.limpiar();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String nombre = columna(reader.nextName());
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    fila.asignar(nombre, null);
+                } else if (reader.peek() == JsonToken.BEGIN_ARRAY || reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                } else {
+                    // nextString también acepta valores numéricos
+                    fila.asignar(nombre, reader.nextString());
+                }
+            }
+            reader.endObject();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.myapplication.database;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registro de qué tablas cambiaron. Cada método de escritura de
+ * DatabaseHelper anuncia las tablas que tocó, después de confirmar su
+ * transacción, y quien muestra datos puede:
+ * <ul>
+ *   <li>comparar {@link #version} con la que leyó la última vez: si no
+ *   cambió, no hace falta volver a consultar nada;</li>
+ *   <li>suscribirse con {@link #observar} para enterarse en el momento.</li>
+ * </ul>
+ */
+public final class InvalidacionTablas {
+
+    /**
+     * Se llama en el hilo que escribió, con la escritura ya confirmada. Debe
+     * ser rápido (marcar algo como desfasado, publicar una señal) y no
+     * volver a escribir en la base.
+     */
+    public interface Observador {
+        void onTablasCambiadas(Set<String> tablas);
+    }
+
+    public final class Suscripcion {
+        private final Set<String> tablas;
+        private final Observador observador;
+
+        private Suscripcion(Set<String> tablas, Observador observador) {
+            this.tablas = tablas;
+            this.observador = observador;
+        }
+
+        public void cancelar() {
+            suscripciones.remove(this);
+        }
+    }
+
+    // Solo crecen: la suma de varias tablas cambia si y solo si cambió alguna
+    private final ConcurrentHashMap<String, AtomicLong> versiones = new ConcurrentHashMap<>();
+
+    // Se recorre en cada escritura y se modifica solo al entrar o salir de una pantalla
+    private final CopyOnWriteArrayList<Suscripcion> suscripciones = new CopyOnWriteArrayList<>();
+
+    // Mientras se avisa en nombre de otro hilo (ColaEscrituras), ese hilo
+    private final ThreadLocal<Thread> origen = new ThreadLocal<>();
+
+    /** Anuncia que las tablas cambiaron; tablas repetidas cuentan una vez. */
+    public void notificar(String... tablas) {
+        Set<String> cambiadas = new HashSet<>(tablas.length * 2);
+        Collections.addAll(cambiadas, tablas);
+        for (String tabla : cambiadas) {
+            contador(tabla).incrementAndGet();
+        }
+
+        for (Suscripcion suscripcion : suscripciones) {
+            Set<String> afectadas = null;
+            for (String tabla : suscripcion.tablas) {
+                if (cambiadas.contains(tabla)) {
+                    if (afectadas == null) afectadas = new HashSet<>();
+                    afectadas.add(tabla);
+                }
+            }
+            if (afectadas != null) {
+                suscripcion.observador.onTablasCambiadas(Collections.unmodifiableSet(afectadas));
+            }
+        }
+    }
+
+    /**
+     * Como {@link #notificar}, para una escritura que este hilo ejecutó a
+     * pedido de otro: los observadores ven ese hilo en {@link #origen}.
+     */
+    public void notificarDesde(Thread hilo, String... tablas) {
+        origen.set(hilo);
+        try {
+            notificar(tablas);
+        } finally {
+            origen.remove();
+        }
+    }
+
+    /**
+     * Dentro de un Observador, el hilo que pidió la escritura anunciada: el
+     * actual, salvo que la haya ejecutado el escritor de la base por otro.
+     */
+    public Thread origen() {
+        Thread hilo = origen.get();
+        return hilo != null ? hilo : Thread.currentThread();
+    }
+
+    /**
+     * Número que cambia cada vez que se escribe alguna de las tablas. No
+     * cuesta ninguna consulta: guardarlo al leer y compararlo al volver a
+     * la pantalla dice si los datos mostrados siguen vigentes.
+     */
+    public long version(String... tablas) {
+        long suma = 0;
+        for (String tabla : tablas) {
+            suma += contador(tabla).get();
+        }
+        return suma;
+    }
+
+    /** El observador recibe solo los cambios de las tablas indicadas. */
+    public Suscripcion observar(Observador observador, String... tablas) {
+        Set<String> conjunto = new HashSet<>(tablas.length * 2);
+        Collections.addAll(conjunto, tablas);
+        Suscripcion suscripcion = new Suscripcion(conjunto, observador);
+        suscripciones.add(suscripcion);
+        return suscripcion;
+    }
+
+    private AtomicLong contador(String tabla) {
+        AtomicLong contador = versiones.get(tabla);
+        if (contador == null) {
+            AtomicLong nuevo = new AtomicLong();
+            contador = versiones.putIfAbsent(tabla, nuevo);
+            if (contador == null) contador = nuevo;
+        }
+        return contador;
+    }
+}
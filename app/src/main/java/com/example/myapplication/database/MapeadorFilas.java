@@ -0,0 +1,124 @@
+package com.example.myapplication.database;
+
+import android.database.Cursor;
+
+import com.example.myapplication.models.Producto;
+import com.example.myapplication.models.Usuario;
+
+import java.util.ArrayList;
+
+/**
+ * Convierte filas de un cursor en modelos. Los índices de las columnas se
+ * buscan una sola vez, al crear el mapeador para un cursor; después cada
+ * fila son solo lecturas por posición, sin búsquedas por nombre, logs ni
+ * reflexión.
+ *
+ * Las columnas obligatorias que falten en la proyección fallan al crear el
+ * mapeador, no en cada fila. Las opcionales toman el valor por defecto del
+ * modelo, así una consulta puede pedir solo lo que muestra.
+ */
+public abstract class MapeadorFilas<T> {
+
+    protected final Cursor cursor;
+
+    protected MapeadorFilas(Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /** Convierte la fila en la que está el cursor. */
+    public abstract T leer();
+
+    /** Convierte las filas que quedan desde la posición actual y cierra el cursor. */
+    public final ArrayList<T> listar() {
+        try {
+            ArrayList<T> lista = new ArrayList<>(Math.max(cursor.getCount() - cursor.getPosition() - 1, 0));
+            while (cursor.moveToNext()) {
+                lista.add(leer());
+            }
+            return lista;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static MapeadorFilas<Producto> productos(Cursor cursor) {
+        return new DeProducto(cursor);
+    }
+
+    public static MapeadorFilas<Usuario> usuarios(Cursor cursor) {
+        return new DeUsuario(cursor);
+    }
+
+    // -1 si la consulta no trae la columna
+    private static String texto(Cursor cursor, int indice, String porDefecto) {
+        if (indice < 0) return porDefecto;
+        String valor = cursor.getString(indice);
+        return valor != null ? valor : porDefecto;
+    }
+
+    // ===================== PRODUCTO =====================
+    private static final class DeProducto extends MapeadorFilas<Producto> {
+        private final int id, nombre, precio, stock;
+        private final int descripcion, imagen, cantidad, categoria, miniaturaLista, miniaturaDetalle;
+
+        DeProducto(Cursor cursor) {
+            super(cursor);
+            id = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID);
+            nombre = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOMBRE);
+            precio = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PRECIO_CENTAVOS);
+            stock = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_STOCK);
+            descripcion = cursor.getColumnIndex(DatabaseHelper.COLUMN_DESCRIPCION);
+            imagen = cursor.getColumnIndex(DatabaseHelper.COLUMN_IMAGEN_PATH);
+            cantidad = cursor.getColumnIndex(DatabaseHelper.COLUMN_CANTIDAD);
+            categoria = cursor.getColumnIndex(DatabaseHelper.COLUMN_CATEGORIA);
+            miniaturaLista = cursor.getColumnIndex(DatabaseHelper.COLUMN_MINIATURA_LISTA);
+            miniaturaDetalle = cursor.getColumnIndex(DatabaseHelper.COLUMN_MINIATURA_DETALLE);
+        }
+
+        @Override
+        public Producto leer() {
+            String n = cursor.getString(nombre);
+            return new Producto(
+                    cursor.getInt(id),
+                    // Producto no acepta nombres vacíos: una fila así no debe tirar toda la lista
+                    n == null || n.trim().isEmpty() ? "Sin nombre" : n,
+                    texto(cursor, descripcion, ""),
+                    cursor.getLong(precio),
+                    texto(cursor, imagen, ""),
+                    cursor.getInt(stock),
+                    cantidad < 0 ? 1 : cursor.getInt(cantidad),
+                    texto(cursor, categoria, "General"),
+                    texto(cursor, miniaturaLista, ""),
+                    texto(cursor, miniaturaDetalle, ""));
+        }
+    }
+
+    // ===================== USUARIO =====================
+    // Sin contraseña ni salt: las consultas de listados no los leen
+    private static final class DeUsuario extends MapeadorFilas<Usuario> {
+        private final int id, username;
+        private final int rol, email;
+
+        DeUsuario(Cursor cursor) {
+            super(cursor);
+            id = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USUARIO_ID);
+            username = cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_USERNAME);
+            rol = cursor.getColumnIndex(DatabaseHelper.COLUMN_ROL);
+            email = cursor.getColumnIndex(DatabaseHelper.COLUMN_EMAIL);
+        }
+
+        @Override
+        public Usuario leer() {
+            String r = texto(cursor, rol, "cliente");
+            return new Usuario(
+                    cursor.getInt(id),
+                    texto(cursor, username, ""),
+                    "",
+                    "",
+                    r,
+                    email < 0 ? null : cursor.getString(email),
+                    true,
+                    r.equalsIgnoreCase("admin"));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.myapplication.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registro de sentencias compiladas para consultas escalares frecuentes.
+ *
+ * Cada SQL se compila una sola vez por conexión compartida y se reutiliza con
+ * simpleQueryForLong / simpleQueryForString, sin Cursor ni CursorWindow.
+ * Un SQLiteStatement no admite uso concurrente, así que cada ejecución se
+ * sincroniza sobre su propia sentencia: consultas distintas no se bloquean.
+ */
+final class SentenciasPrecompiladas {
+
+    private final SQLiteDatabase db;
+    private final Map<String, SQLiteStatement> sentencias = new HashMap<>();
+    private boolean cerrado = false;
+
+    SentenciasPrecompiladas(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    boolean perteneceA(SQLiteDatabase otra) {
+        return db == otra && db.isOpen();
+    }
+
+    long paraLong(String sql, long porDefecto, String... args) {
+        SQLiteStatement statement = obtener(sql);
+        synchronized (statement) {
+            try {
+                statement.bindAllArgsAsStrings(args);
+                return statement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return porDefecto;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    String paraString(String sql, String... args) {
+        SQLiteStatement statement = obtener(sql);
+        synchronized (statement) {
+            try {
+                statement.bindAllArgsAsStrings(args);
+                return statement.simpleQueryForString();
+            } catch (SQLiteDoneException e) {
+                return null;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    private synchronized SQLiteStatement obtener(String sql) {
+        if (cerrado) throw new IllegalStateException("Registro de sentencias cerrado");
+        SQLiteStatement statement = sentencias.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            sentencias.put(sql, statement);
+        }
+        return statement;
+    }
+
+    synchronized void cerrar() {
+        cerrado = true;
+        for (SQLiteStatement statement : sentencias.values()) {
+            synchronized (statement) {
+                statement.close();
+            }
+        }
+        sentencias.clear();
+    }
+}
@@ -1,10 +1,11 @@
 package com.example.myapplication.fragments
 
-import android.database.Cursor
 import android.os.Bundle
+import android.util.Log
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
+import android.widget.Button
 import android.widget.TextView
 import android.widget.Toast
 import androidx.fragment.app.Fragment
@@ -13,19 +14,34 @@ import androidx.recyclerview.widget.RecyclerView
 import com.example.myapplication.R
 import com.example.myapplication.adapters.CarritoAdapter
 import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.helpers.CarritoRepositorio
+import com.example.myapplication.helpers.CarritoRepositorio.EstadoCarrito
+import com.example.myapplication.helpers.CarritoRepositorio.ResultadoCantidad
+import com.example.myapplication.managers.SessionManager
+import com.example.myapplication.models.Dinero
 import com.example.myapplication.models.Producto
-import java.text.NumberFormat
-import java.util.Locale
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
 
 class CarritoFragment : Fragment() {
 
     private lateinit var recyclerView: RecyclerView
     private lateinit var adapter: CarritoAdapter
-    private lateinit var db: DatabaseHelper
+    private lateinit var repositorio: CarritoRepositorio
     private lateinit var tvTotal: TextView
     private lateinit var tvEmpty: TextView
+    private lateinit var btnComprar: Button
 
-    private var productosEnCarrito: MutableList<Producto> = mutableListOf()
+    // Vive lo mismo que la vista: se cancela en onDestroyView
+    private var vistaScope: CoroutineScope? = null
+
+    companion object {
+        private const val TAG = "CarritoFragment"
+    }
 
     override fun onCreateView(
         inflater: LayoutInflater,
@@ -37,125 +53,108 @@ class CarritoFragment : Fragment() {
         recyclerView = view.findViewById(R.id.recyclerViewCarrito)
         tvTotal = view.findViewById(R.id.tvTotal)
         tvEmpty = view.findViewById(R.id.tvEmpty)
+        btnComprar = view.findViewById(R.id.btnComprar)
 
         recyclerView.layoutManager = LinearLayoutManager(requireContext())
-        db = DatabaseHelper(requireContext())
+        repositorio = CarritoRepositorio.getInstance(requireContext())
+
+        // Un solo adapter: cada foto del carrito entrega la lista nueva y solo cambian las filas distintas
+        adapter = CarritoAdapter(
+            productos = emptyList(),
+            onDeleteClick = { producto -> eliminarDelCarrito(producto) },
+            onQuantityChange = { producto, nuevaCantidad ->
+                actualizarCantidad(producto, nuevaCantidad)
+            }
+        )
+        recyclerView.adapter = adapter
 
-        cargarCarrito()
+        btnComprar.setOnClickListener { finalizarCompra() }
+
+        val scope = CoroutineScope(SupervisorJob() + Dispatchers.Main)
+        vistaScope = scope
+        scope.launch {
+            repositorio.estado.collect { mostrarCarrito(it) }
+        }
 
         return view
     }
 
-    private fun cargarCarrito() {
-        val cursor: Cursor? = try {
-            db.obtenerCarrito()
-        } catch (e: Exception) {
-            null
-        }
+    private fun mostrarCarrito(estado: EstadoCarrito) {
+        adapter.updateProductos(estado.productos)
+        tvTotal.text = Dinero.formatear(estado.totalCentavos)
 
-        productosEnCarrito = if (cursor != null) {
-            cursorToProductoList(cursor).toMutableList()
-        } else {
-            mutableListOf()
-        }
-
-        if (productosEnCarrito.isEmpty()) {
+        if (estado.vacio) {
             tvEmpty.visibility = View.VISIBLE
             recyclerView.visibility = View.GONE
-            tvTotal.text = formatPrice(0.0)
+            btnComprar.isEnabled = false
         } else {
             tvEmpty.visibility = View.GONE
             recyclerView.visibility = View.VISIBLE
-
-            adapter = CarritoAdapter(
-                productos = productosEnCarrito,
-                onDeleteClick = { producto -> eliminarDelCarrito(producto) },
-                onQuantityChange = { producto, nuevaCantidad ->
-                    actualizarCantidad(producto, nuevaCantidad)
-                }
-            )
-
-            recyclerView.adapter = adapter
-            actualizarTotal()
+            btnComprar.isEnabled = true
         }
     }
 
-    private fun eliminarDelCarrito(producto: Producto) {
-        val filasAfectadas = db.eliminarDelCarrito(producto.id)
-        if (filasAfectadas > 0) {
-            Toast.makeText(requireContext(), "${producto.nombre} eliminado", Toast.LENGTH_SHORT).show()
-            cargarCarrito()
-        } else {
-            Toast.makeText(requireContext(), "Error al eliminar ${producto.nombre}", Toast.LENGTH_SHORT).show()
+    /** Ejecuta una operación del carrito ligada a la vista; los errores se informan con un Toast. */
+    private fun enVista(operacion: suspend CoroutineScope.() -> Unit): Job? {
+        return vistaScope?.launch {
+            try {
+                operacion()
+            } catch (e: Exception) {
+                Log.e(TAG, "Error en el carrito: ${e.message}", e)
+                if (isAdded) Toast.makeText(requireContext(), "Error actualizando el carrito", Toast.LENGTH_SHORT).show()
+            }
         }
     }
 
-    private fun actualizarCantidad(producto: Producto, nuevaCantidad: Int) {
-        val stockDisponible = db.obtenerStockProducto(producto.id)
-
-        if (nuevaCantidad <= stockDisponible && nuevaCantidad > 0) {
-            val filasAfectadas = db.actualizarCantidadEnCarrito(producto.id, nuevaCantidad)
-            if (filasAfectadas > 0) {
-                val index = productosEnCarrito.indexOfFirst { it.id == producto.id }
-                if (index >= 0) {
-                    productosEnCarrito[index].cantidad = nuevaCantidad
-                    adapter.notifyItemChanged(index)
-                }
-                actualizarTotal()
-            }
-        } else if (nuevaCantidad <= 0) {
-            eliminarDelCarrito(producto)
-        } else {
-            Toast.makeText(requireContext(), "No hay suficiente stock disponible", Toast.LENGTH_SHORT).show()
-            cargarCarrito()
+    private fun eliminarDelCarrito(producto: Producto) {
+        enVista {
+            val eliminado = repositorio.eliminar(producto.id)
+            val mensaje = if (eliminado) "${producto.nombre} eliminado" else "Error al eliminar ${producto.nombre}"
+            Toast.makeText(requireContext(), mensaje, Toast.LENGTH_SHORT).show()
         }
     }
 
-    private fun actualizarTotal() {
-        val total = try {
-            productosEnCarrito.sumOf { it.precio * it.cantidad }
-        } catch (e: Exception) {
-            0.0
+    private fun finalizarCompra() {
+        val usuario = SessionManager.getCurrentUserEmail(requireContext())
+        if (usuario == null) {
+            Toast.makeText(requireContext(), "Inicia sesión para comprar", Toast.LENGTH_SHORT).show()
+            return
         }
-        tvTotal.text = formatPrice(total)
-    }
 
-    private fun formatPrice(price: Double): String {
-        val format = NumberFormat.getCurrencyInstance(Locale("es", "MX"))
-        return format.format(price)
+        btnComprar.isEnabled = false
+        enVista {
+            val ordenId = repositorio.finalizarCompra(usuario)
+            if (ordenId == DatabaseHelper.ORDEN_CARRITO_VACIO) {
+                Toast.makeText(requireContext(), "El carrito está vacío", Toast.LENGTH_SHORT).show()
+            } else {
+                Toast.makeText(requireContext(), "Compra realizada (orden #$ordenId)", Toast.LENGTH_SHORT).show()
+            }
+        }
     }
 
-    private fun cursorToProductoList(cursor: Cursor): List<Producto> {
-        val productos = mutableListOf<Producto>()
-        if (cursor.moveToFirst()) {
-            do {
-                val id = cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID))
-                val nombre = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOMBRE))
-                val descripcion = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_DESCRIPCION))
-                val precio = cursor.getDouble(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_PRECIO))
-                val imagen = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_IMAGEN_PATH)) ?: ""
-                val stock = cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_STOCK))
-                val cantidad = cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_CANTIDAD))
-
-                productos.add(
-                    Producto(
-                        id = id,
-                        nombre = nombre,
-                        descripcion = descripcion,
-                        precio = precio,
-                        imagen_path = imagen,
-                        stock = stock,
-                        cantidad = cantidad
-                    )
-                )
-            } while (cursor.moveToNext())
+    private fun actualizarCantidad(producto: Producto, nuevaCantidad: Int) {
+        enVista {
+            when (repositorio.actualizarCantidad(producto.id, nuevaCantidad)) {
+                ResultadoCantidad.SIN_STOCK ->
+                    Toast.makeText(requireContext(), "No hay suficiente stock disponible", Toast.LENGTH_SHORT).show()
+                ResultadoCantidad.ELIMINADO ->
+                    Toast.makeText(requireContext(), "${producto.nombre} eliminado", Toast.LENGTH_SHORT).show()
+                ResultadoCantidad.ERROR ->
+                    Toast.makeText(requireContext(), "Error al actualizar ${producto.nombre}", Toast.LENGTH_SHORT).show()
+                ResultadoCantidad.ACTUALIZADA -> Unit
+            }
         }
-        cursor.close()
-        return productos
     }
 
     override fun onResume() {
         super.onResume()
-        cargarCarrito()
+        // Consulta la base solo la primera vez o si algo invalidó el carrito
+        enVista { repositorio.cargarSiHaceFalta() }
+    }
+
+    override fun onDestroyView() {
+        vistaScope?.cancel()
+        vistaScope = null
+        super.onDestroyView()
     }
-}
\ No newline at end of file
+}
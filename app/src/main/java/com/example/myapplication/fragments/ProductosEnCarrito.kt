@@ -1,115 +1,169 @@
 package com.example.myapplication.fragments
 
-import android.content.Context
-import androidx.lifecycle.LiveData
-import androidx.lifecycle.MutableLiveData
+import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.database.MapeadorFilas
 import com.example.myapplication.models.Producto
 
-class ProductosEnCarrito {
-    private val _productos = mutableListOf<Producto>()
-    private val productos: List<Producto> get() = _productos.toList()
-
-    private val _productosLiveData = MutableLiveData<List<Producto>>()
-    val productosLiveData: LiveData<List<Producto>> = _productosLiveData
+/**
+ * Carrito en memoria indexado por id de producto. Cada cambio se escribe
+ * primero en la tabla carrito y, si la base lo acepta, se aplica aquí; así
+ * la copia en memoria no se separa de SQLite.
+ *
+ * Las búsquedas y los cambios de una línea son O(1): el mapa conserva el
+ * orden en que se agregaron las líneas y el total y las unidades se
+ * actualizan con la diferencia de cada cambio en lugar de volver a sumar.
+ *
+ * No es seguro entre hilos y los métodos que escriben hacen SQL: se usa
+ * desde un único hilo de fondo (CarritoRepositorio serializa el acceso).
+ * Cada escritura espera su turno en el escritor de la base (ColaEscrituras).
+ */
+class ProductosEnCarrito(private val db: DatabaseHelper) {
+
+    // De la línea más antigua a la más reciente; las instancias no se modifican,
+    // cada cambio guarda una copia para no alterar listas ya publicadas
+    private val lineas = LinkedHashMap<Int, Producto>()
+
+    // Centavos: sumas enteras, sin error acumulado por muchos cambios
+    private var totalCentavos = 0L
+    private var unidades = 0
+
+    /** Reemplaza el contenido con lo que hay en la tabla carrito. */
+    fun cargar() {
+        val leidos = MapeadorFilas.productos(db.obtenerCarrito()).listar()
+
+        limpiarMemoria()
+        // La consulta entrega primero la más reciente
+        for (i in leidos.indices.reversed()) {
+            poner(leidos[i])
+        }
+    }
 
-    private val _totalLiveData = MutableLiveData<Double>()
-    val totalLiveData: LiveData<Double> = _totalLiveData
+    /**
+     * Agrega unidades descontando stock en la base. Una línea existente solo
+     * cambia su cantidad; una nueva necesita leer los datos del producto.
+     *
+     * @return CARRITO_AGREGADO, CARRITO_SIN_STOCK o CARRITO_NO_ENCONTRADO
+     */
+    fun agregarProducto(productoId: Int, cantidad: Int = 1): Int {
+        val resultado = db.agregarAlCarrito(productoId, cantidad)
+        if (resultado != DatabaseHelper.CARRITO_AGREGADO) return resultado
 
-    fun agregarProducto(producto: Producto) {
-        val existingIndex = _productos.indexOfFirst { it.id == producto.id }
-        if (existingIndex == -1) {
-            _productos.add(producto)
+        val previo = lineas[productoId]
+        if (previo != null) {
+            poner(previo.copy(cantidad = previo.cantidad + cantidad, stock = previo.stock - cantidad))
         } else {
-            _productos[existingIndex] = producto
+            // El stock leído ya tiene aplicado el descuento
+            db.obtenerProductoPorId(productoId)?.let { poner(it.copy(cantidad = cantidad)) }
         }
-        actualizarEstados()
+        return resultado
+    }
+
+    /** Quita la línea y devuelve sus unidades al stock. */
+    fun eliminarProducto(productoId: Int): Boolean {
+        if (db.eliminarDelCarrito(productoId) == 0) return false
+        quitar(productoId)
+        return true
+    }
+
+    /**
+     * Cambia la cantidad de una línea existente; la base descuenta o devuelve
+     * al stock solo la diferencia, y aquí se aplica lo mismo.
+     *
+     * @return CARRITO_AGREGADO, CARRITO_SIN_STOCK o CARRITO_NO_ENCONTRADO
+     */
+    fun actualizarCantidad(productoId: Int, nuevaCantidad: Int): Int {
+        val resultado = db.actualizarCantidadEnCarrito(productoId, nuevaCantidad)
+        if (resultado != DatabaseHelper.CARRITO_AGREGADO) return resultado
+
+        val previo = lineas[productoId]
+        if (previo != null) {
+            val diferencia = nuevaCantidad - previo.cantidad
+            poner(previo.copy(cantidad = nuevaCantidad, stock = previo.stock - diferencia))
+        } else {
+            // La línea estaba en la base pero no aquí: se lee con el stock ya movido
+            db.obtenerProductoPorId(productoId)?.let { poner(it.copy(cantidad = nuevaCantidad)) }
+        }
+        return resultado
     }
 
-    fun eliminarProducto(productoId: Int) {
-        _productos.removeAll { it.id == productoId }
-        actualizarEstados()
+    fun incrementarCantidad(productoId: Int): Boolean {
+        val producto = lineas[productoId] ?: return false
+        return actualizarCantidad(productoId, producto.cantidad + 1) == DatabaseHelper.CARRITO_AGREGADO
     }
 
-    fun actualizarCantidad(productoId: Int, nuevaCantidad: Int) {
-        _productos.find { it.id == productoId }?.let { producto ->
-            val productoActualizado = producto.copy(cantidad = nuevaCantidad)
-            _productos[_productos.indexOf(producto)] = productoActualizado
-            actualizarEstados()
+    /** @return false si la línea no existe o se eliminó al llegar a cero */
+    fun decrementarCantidad(productoId: Int): Boolean {
+        val producto = lineas[productoId] ?: return false
+        if (producto.cantidad > 1) {
+            return actualizarCantidad(productoId, producto.cantidad - 1) == DatabaseHelper.CARRITO_AGREGADO
         }
+        eliminarProducto(productoId)
+        return false
     }
 
-    fun calcularTotal(): Double {
-        return _productos.sumOf { it.precio * it.cantidad }
+    /** Vacía el carrito restaurando el stock de todas las líneas. */
+    fun limpiarCarrito() {
+        db.vaciarCarrito()
+        limpiarMemoria()
+    }
+
+    /** @return id de la orden u ORDEN_CARRITO_VACIO */
+    fun finalizarCompra(usuario: String): Long {
+        val orden = db.finalizarCompra(usuario)
+        if (orden != DatabaseHelper.ORDEN_CARRITO_VACIO) {
+            limpiarMemoria()
+        } else if (lineas.isNotEmpty()) {
+            // La base dice que está vacío: la memoria estaba desfasada
+            cargar()
+        }
+        return orden
     }
 
+    /** Líneas de la más reciente a la más antigua, como las muestra la pantalla. */
     fun obtenerProductos(): List<Producto> {
+        val productos = ArrayList<Producto>(lineas.size)
+        productos.addAll(lineas.values)
+        productos.reverse()
         return productos
     }
 
-    fun limpiarCarrito() {
-        _productos.clear()
-        actualizarEstados()
-    }
+    /** Total en centavos. */
+    fun calcularTotal(): Long = totalCentavos
 
-    fun obtenerProductoPorId(productoId: Int): Producto? {
-        return _productos.find { it.id == productoId }
-    }
+    fun obtenerCantidadTotalProductos(): Int = unidades
 
-    fun contieneProducto(productoId: Int): Boolean {
-        return _productos.any { it.id == productoId }
-    }
+    fun obtenerProductoPorId(productoId: Int): Producto? = lineas[productoId]
 
-    fun obtenerCantidadTotalProductos(): Int {
-        return _productos.sumOf { it.cantidad }
-    }
-
-    fun obtenerCantidadProducto(productoId: Int): Int {
-        return _productos.find { it.id == productoId }?.cantidad ?: 0
-    }
-
-    fun incrementarCantidad(productoId: Int): Boolean {
-        return _productos.find { it.id == productoId }?.let { producto ->
-            val nuevaCantidad = producto.cantidad + 1
-            actualizarCantidad(productoId, nuevaCantidad)
-            true
-        } ?: false
-    }
+    fun contieneProducto(productoId: Int): Boolean = lineas.containsKey(productoId)
 
-    fun decrementarCantidad(productoId: Int): Boolean {
-        return _productos.find { it.id == productoId }?.let { producto ->
-            if (producto.cantidad > 1) {
-                val nuevaCantidad = producto.cantidad - 1
-                actualizarCantidad(productoId, nuevaCantidad)
-                true
-            } else {
-                eliminarProducto(productoId)
-                false
-            }
-        } ?: false
-    }
+    fun obtenerCantidadProducto(productoId: Int): Int = lineas[productoId]?.cantidad ?: 0
 
-    fun estaVacio(): Boolean {
-        return _productos.isEmpty()
-    }
+    fun calcularSubtotalProducto(productoId: Int): Long = lineas[productoId]?.subtotalCentavos() ?: 0L
 
-    fun obtenerNumeroItemsUnicos(): Int {
-        return _productos.size
-    }
+    fun estaVacio(): Boolean = lineas.isEmpty()
 
-    fun calcularSubtotalProducto(productoId: Int): Double {
-        return _productos.find { it.id == productoId }?.let { producto ->
-            producto.precio * producto.cantidad
-        } ?: 0.0
-    }
+    fun obtenerNumeroItemsUnicos(): Int = lineas.size
 
-    private fun actualizarEstados() {
-        _productosLiveData.value = productos
-        _totalLiveData.value = calcularTotal()
+    // Reemplazar el valor de una clave existente no cambia su posición en el mapa
+    private fun poner(producto: Producto) {
+        val previo = lineas.put(producto.id, producto)
+        if (previo != null) {
+            totalCentavos -= previo.subtotalCentavos()
+            unidades -= previo.cantidad
+        }
+        totalCentavos += producto.subtotalCentavos()
+        unidades += producto.cantidad
     }
 
-    private fun guardarCarrito(context: Context) {
+    private fun quitar(productoId: Int) {
+        val previo = lineas.remove(productoId) ?: return
+        totalCentavos -= previo.subtotalCentavos()
+        unidades -= previo.cantidad
     }
 
-    private fun cargarCarritoGuardado(context: Context) {
+    private fun limpiarMemoria() {
+        lineas.clear()
+        totalCentavos = 0L
+        unidades = 0
     }
-}
\ No newline at end of file
+}
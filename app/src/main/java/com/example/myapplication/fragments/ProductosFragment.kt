@@ -1,24 +1,33 @@
 package com.example.myapplication.fragments
 
 import android.content.Intent
-import android.database.Cursor
 import android.os.Bundle
 import android.util.Log
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
+import android.widget.SearchView
 import android.widget.Toast
 import androidx.fragment.app.Fragment
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader
+import com.bumptech.glide.util.FixedPreloadSizeProvider
 import com.example.myapplication.R
 import com.example.myapplication.activities.GestionProductoActivity
 import com.example.myapplication.adapters.ProductoAdapter
 import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.helpers.CarritoRepositorio
+import com.example.myapplication.helpers.PaginadorProductos
+import com.example.myapplication.helpers.VistaTablas
 import com.example.myapplication.managers.SessionManager
 import com.example.myapplication.models.Producto
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 
@@ -28,12 +37,23 @@ class ProductosFragment : Fragment() {
     private lateinit var adapter: ProductoAdapter
     private var listaProductos: MutableList<Producto> = mutableListOf()
     private lateinit var db: DatabaseHelper
-    private val coroutineScope = CoroutineScope(Dispatchers.Main)
+    private lateinit var paginador: PaginadorProductos
+    private lateinit var vistaProductos: VistaTablas
+    // Vive lo mismo que la vista: se cancela en onDestroyView
+    private var vistaScope: CoroutineScope? = null
+    private var cargandoPagina = false
+    private var busquedaPendiente: Job? = null
 
     private var esAdministrador: Boolean = false
 
     companion object {
         private const val TAG = "ProductosFragment"
+        // Filas restantes antes del final a partir de las cuales se pide la siguiente página
+        private const val UMBRAL_PRECARGA = 10
+        // Filas por delante de la última visible cuyas imágenes se decodifican de antemano
+        private const val IMAGENES_PRECARGADAS = 8
+        // Pausa al escribir antes de consultar: una búsqueda por palabra, no por tecla
+        private const val ESPERA_BUSQUEDA_MS = 250L
     }
 
     override fun onCreateView(
@@ -44,53 +64,107 @@ class ProductosFragment : Fragment() {
         val vista = inflater.inflate(R.layout.fragment_productos, container, false)
 
         recyclerView = vista.findViewById(R.id.recyclerViewProductos)
-        recyclerView.layoutManager = LinearLayoutManager(requireContext())
+        val layoutManager = LinearLayoutManager(requireContext())
+        recyclerView.layoutManager = layoutManager
 
-        db = DatabaseHelper(requireContext())
+        db = DatabaseHelper.getInstance(requireContext())
+        paginador = PaginadorProductos(db)
+        vistaProductos = VistaTablas(db, DatabaseHelper.TABLE_PRODUCTOS)
+        vistaScope = CoroutineScope(SupervisorJob() + Dispatchers.Main)
 
         verificarRolUsuario()
-        cargarProductos()
+        configurarAdapter()
+
+        recyclerView.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                if (dy <= 0) return
+                val ultimoVisible = layoutManager.findLastVisibleItemPosition()
+                if (ultimoVisible >= adapter.itemCount - UMBRAL_PRECARGA) {
+                    cargarSiguientePagina()
+                }
+            }
+        })
+
+        vista.findViewById<SearchView>(R.id.searchView).setOnQueryTextListener(
+            object : SearchView.OnQueryTextListener {
+                override fun onQueryTextSubmit(query: String?): Boolean {
+                    busquedaPendiente?.cancel()
+                    cargarProductos(query)
+                    return true
+                }
+
+                override fun onQueryTextChange(newText: String?): Boolean {
+                    buscarAlPausar(newText)
+                    return true
+                }
+            }
+        )
 
         return vista
     }
 
     private fun verificarRolUsuario() {
         try {
-            val userRole = SessionManager.getUserRole(requireContext())
-            esAdministrador = userRole?.equals("admin", ignoreCase = true) ?: false
-            Log.d(TAG, "Rol del usuario: $userRole, Es admin: $esAdministrador")
+            // Lectura en memoria: la sesión ya está cargada
+            esAdministrador = SessionManager.esAdmin(requireContext())
+            Log.d(TAG, "Es admin: $esAdministrador")
         } catch (e: Exception) {
             esAdministrador = false
             Log.e(TAG, "Error verificando rol", e)
         }
     }
 
-    private fun cargarProductos() {
-        coroutineScope.launch {
-            try {
-                Log.d(TAG, "Iniciando carga de productos...")
+    /**
+     * Reinicia el listado y carga solo la primera página; el resto llega
+     * con el desplazamiento a través de [cargarSiguientePagina].
+     */
+    private fun cargarProductos(busqueda: String? = paginador.busqueda) {
+        // Un paginador nuevo por recarga: una página en vuelo del anterior se descarta
+        paginador = PaginadorProductos(db).apply { reiniciar(busqueda = busqueda) }
+        listaProductos.clear()
+        adapter.updateProductos(emptyList())
+        cargandoPagina = false
+        cargarSiguientePagina()
+    }
 
-                val productos = withContext(Dispatchers.IO) {
-                    val cursor = db.obtenerTodosLosProductos()
-                    val lista = cursor.toProductoList()
-                    cursor.close()
-                    lista
-                }
+    /** Cada tecla reinicia la espera; solo el texto que queda quieto llega a la base. */
+    private fun buscarAlPausar(texto: String?) {
+        busquedaPendiente?.cancel()
+        busquedaPendiente = vistaScope?.launch {
+            delay(ESPERA_BUSQUEDA_MS)
+            // Espacios o el mismo texto de la lista actual no justifican recargar
+            val busqueda = texto?.takeIf { it.isNotBlank() }
+            if (busqueda != paginador.busqueda) cargarProductos(busqueda)
+        }
+    }
 
-                Log.d(TAG, "Productos cargados: ${productos.size}")
+    private fun cargarSiguientePagina() {
+        val paginadorActual = paginador
+        if (cargandoPagina || !paginadorActual.hayMas) return
+        val scope = vistaScope ?: return
+        cargandoPagina = true
 
-                listaProductos.clear()
-                listaProductos.addAll(productos)
+        scope.launch {
+            try {
+                val pagina = withContext(Dispatchers.IO) {
+                    paginadorActual.siguientePagina()
+                }
+                if (paginadorActual !== paginador) return@launch
 
-                configurarAdapter()
+                listaProductos.addAll(pagina)
+                adapter.agregarProductos(pagina)
+                Log.d(TAG, "Página cargada: ${pagina.size} productos (total ${listaProductos.size})")
 
-                if (productos.isEmpty()) {
+                if (listaProductos.isEmpty() && paginador.busqueda == null && isAdded) {
                     Toast.makeText(requireContext(), "No hay productos disponibles", Toast.LENGTH_SHORT).show()
                 }
 
             } catch (e: Exception) {
                 Log.e(TAG, "ERROR cargando productos: ${e.message}", e)
-                Toast.makeText(requireContext(), "Error cargando productos: ${e.message}", Toast.LENGTH_LONG).show()
+                vistaProductos.olvidar()
+                if (isAdded) Toast.makeText(requireContext(), "Error cargando productos: ${e.message}", Toast.LENGTH_LONG).show()
+            } finally {
+                if (paginadorActual === paginador) cargandoPagina = false
             }
         }
     }
@@ -98,7 +172,7 @@ class ProductosFragment : Fragment() {
     private fun configurarAdapter() {
         adapter = ProductoAdapter(
             context = requireContext(),
-            productos = listaProductos,
+            productos = emptyList(),
             onItemClick = { producto ->
                 if (esAdministrador) {
                     mostrarDetallesProducto(producto)
@@ -120,49 +194,74 @@ class ProductosFragment : Fragment() {
         )
 
         recyclerView.adapter = adapter
-        Log.d(TAG, "Adapter configurado con ${listaProductos.size} productos")
+
+        // Mismo tamaño que las filas: la precarga deja el bitmap en la caché de memoria con la clave que pedirá la fila
+        val tamanoImagen = FixedPreloadSizeProvider<Producto>(adapter.ladoImagen, adapter.ladoImagen)
+        recyclerView.addOnScrollListener(
+            RecyclerViewPreloader(this, adapter, tamanoImagen, IMAGENES_PRECARGADAS)
+        )
     }
 
     private fun agregarAlCarrito(producto: Producto) {
-        coroutineScope.launch {
+        if (producto.stock <= 0) {
+            Toast.makeText(requireContext(), "Producto sin stock disponible", Toast.LENGTH_SHORT).show()
+            return
+        }
+        val repositorio = CarritoRepositorio.getInstance(requireContext())
+        vistaScope?.launch {
             try {
                 Log.d(TAG, "Intentando agregar al carrito: ${producto.nombre}")
+                val resultado = repositorio.agregar(producto.id)
+                if (!isAdded) return@launch
 
-                if (producto.stock > 0) {
-                    val resultado = withContext(Dispatchers.IO) {
-                        db.agregarAlCarrito(producto.id, 1)
-                    }
-
-                    if (resultado > 0) {
+                when (resultado) {
+                    DatabaseHelper.CARRITO_AGREGADO -> {
                         Toast.makeText(requireContext(), "${producto.nombre} agregado al carrito", Toast.LENGTH_SHORT).show()
                         Log.d(TAG, "Producto agregado al carrito exitosamente")
-                    } else {
+                    }
+                    DatabaseHelper.CARRITO_SIN_STOCK -> {
+                        Toast.makeText(requireContext(), "Producto sin stock disponible", Toast.LENGTH_SHORT).show()
+                    }
+                    else -> {
                         Toast.makeText(requireContext(), "Error al agregar al carrito", Toast.LENGTH_SHORT).show()
-                        Log.e(TAG, "Error al agregar producto al carrito")
+                        Log.e(TAG, "Producto no encontrado al agregar al carrito: ${producto.id}")
                     }
-                } else {
-                    Toast.makeText(requireContext(), "Producto sin stock disponible", Toast.LENGTH_SHORT).show()
                 }
             } catch (e: Exception) {
                 Log.e(TAG, "ERROR agregando al carrito: ${e.message}", e)
-                Toast.makeText(requireContext(), "Error: ${e.message}", Toast.LENGTH_SHORT).show()
+                if (isAdded) Toast.makeText(requireContext(), "Error: ${e.message}", Toast.LENGTH_SHORT).show()
             }
         }
     }
 
-    private fun mostrarDetallesProducto(producto: Producto) {
-        androidx.appcompat.app.AlertDialog.Builder(requireContext())
-            .setTitle("Detalles del Producto")
-            .setMessage(
-                "Nombre: ${producto.nombre}\n" +
-                        "Descripción: ${producto.descripcion}\n" +
-                        "Precio: $${"%.2f".format(producto.precio)}\n" +
-                        "Stock: ${producto.stock}"
-            )
-            .setPositiveButton("Aceptar") { dialog, _ ->
-                dialog.dismiss()
+    // La fila del listado no trae la descripción: el detalle se lee por id al abrirlo
+    private fun mostrarDetallesProducto(fila: Producto) {
+        vistaScope?.launch {
+            val producto = try {
+                withContext(Dispatchers.IO) { db.obtenerProductoPorId(fila.id) }
+            } catch (e: Exception) {
+                Log.e(TAG, "ERROR leyendo detalle: ${e.message}", e)
+                null
+            }
+            if (!isAdded) return@launch
+            if (producto == null) {
+                Toast.makeText(requireContext(), "El producto ya no existe", Toast.LENGTH_SHORT).show()
+                return@launch
             }
-            .show()
+
+            androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                .setTitle("Detalles del Producto")
+                .setMessage(
+                    "Nombre: ${producto.nombre}\n" +
+                            "Descripción: ${producto.descripcion}\n" +
+                            "Precio: ${producto.precioFormateado()}\n" +
+                            "Stock: ${producto.stock}"
+                )
+                .setPositiveButton("Aceptar") { dialog, _ ->
+                    dialog.dismiss()
+                }
+                .show()
+        }
     }
 
     private fun editarProducto(producto: Producto) {
@@ -187,73 +286,40 @@ class ProductosFragment : Fragment() {
     }
 
     private fun eliminarProducto(producto: Producto) {
-        coroutineScope.launch {
+        vistaScope?.launch {
             try {
                 val filasAfectadas = withContext(Dispatchers.IO) {
                     db.eliminarProducto(producto.id)
                 }
+                if (!isAdded) return@launch
 
                 if (filasAfectadas > 0) {
                     Toast.makeText(requireContext(), "Producto eliminado", Toast.LENGTH_SHORT).show()
                     listaProductos.removeAll { it.id == producto.id }
-                    adapter.updateProductos(listaProductos.toList())
+                    adapter.eliminarProducto(producto.id)
                     Log.d(TAG, "Producto eliminado: ${producto.nombre}")
                 } else {
                     Toast.makeText(requireContext(), "Error al eliminar", Toast.LENGTH_SHORT).show()
                 }
             } catch (e: Exception) {
                 Log.e(TAG, "ERROR eliminando producto: ${e.message}", e)
-                Toast.makeText(requireContext(), "Error eliminando producto", Toast.LENGTH_SHORT).show()
+                if (isAdded) Toast.makeText(requireContext(), "Error eliminando producto", Toast.LENGTH_SHORT).show()
             }
         }
     }
 
-    private fun Cursor.toProductoList(): List<Producto> {
-        val productos = mutableListOf<Producto>()
-        try {
-            if (moveToFirst()) {
-                do {
-                    try {
-                        val id = getInt(getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID))
-                        val nombre = getString(getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOMBRE)) ?: "Sin nombre"
-                        val descripcion = getString(getColumnIndexOrThrow(DatabaseHelper.COLUMN_DESCRIPCION)) ?: "Sin descripción"
-                        val precio = getDouble(getColumnIndexOrThrow(DatabaseHelper.COLUMN_PRECIO))
-                        val imagenPath = getString(getColumnIndexOrThrow(DatabaseHelper.COLUMN_IMAGEN_PATH)) ?: ""
-                        val stock = getInt(getColumnIndexOrThrow(DatabaseHelper.COLUMN_STOCK))
-
-                        productos.add(Producto(
-                            id = id,
-                            nombre = nombre,
-                            descripcion = descripcion,
-                            precio = precio,
-                            imagen_path = imagenPath,
-                            stock = stock
-                        ))
-
-                        Log.d(TAG, "Producto cargado: $nombre (ID: $id)")
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Error procesando fila del cursor", e)
-                    }
-                } while (moveToNext())
-            }
-        } catch (e: Exception) {
-            Log.e(TAG, "Error en toProductoList", e)
-        }
-        return productos
-    }
-
     override fun onResume() {
         super.onResume()
-        Log.d(TAG, "onResume - Recargando productos")
-        cargarProductos()
+        // Volver sin cambios en productos conserva la lista y la posición, sin consultas
+        if (vistaProductos.desactualizada()) {
+            Log.d(TAG, "onResume - Recargando productos")
+            cargarProductos()
+        }
     }
 
-    override fun onDestroy() {
-        super.onDestroy()
-        try {
-            db.close()
-        } catch (e: Exception) {
-            Log.e(TAG, "Error cerrando DB", e)
-        }
+    override fun onDestroyView() {
+        vistaScope?.cancel()
+        vistaScope = null
+        super.onDestroyView()
     }
-}
\ No newline at end of file
+}
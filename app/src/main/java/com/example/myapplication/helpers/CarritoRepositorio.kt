@@ -0,0 +1,172 @@
+package com.example.myapplication.helpers
+
+import android.content.Context
+import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.fragments.ProductosEnCarrito
+import com.example.myapplication.models.Producto
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+
+/**
+ * Estado del carrito compartido por todas las pantallas. Los cambios pasan
+ * por [ProductosEnCarrito], que los escribe en la base y los aplica en
+ * memoria, todo en [io]; después de cada cambio se publica en [estado] una
+ * foto nueva del carrito, así quien lo muestra no vuelve a consultarlo al
+ * reanudarse.
+ *
+ * Cualquier otra escritura de productos o carrito (editar o eliminar
+ * productos, importar el catálogo, generar miniaturas) llega como aviso de
+ * [com.example.myapplication.database.InvalidacionTablas] y hace que la
+ * próxima lectura vuelva a la base.
+ */
+class CarritoRepositorio private constructor(
+    private val db: DatabaseHelper,
+    private val io: CoroutineDispatcher = Dispatchers.IO
+) {
+
+    data class EstadoCarrito(
+        val productos: List<Producto>,
+        /** En centavos. */
+        val totalCentavos: Long,
+        val unidades: Int
+    ) {
+        val vacio: Boolean get() = productos.isEmpty()
+    }
+
+    enum class ResultadoCantidad { ACTUALIZADA, ELIMINADO, SIN_STOCK, ERROR }
+
+    // Solo se toca con el mutex tomado; el SQL que hace corre en io
+    private val carrito = ProductosEnCarrito(db)
+
+    // null hasta la primera carga
+    private val actual = MutableStateFlow<EstadoCarrito?>(null)
+
+    // Serializa los cambios: cada uno parte de la foto que dejó el anterior
+    private val mutex = Mutex()
+
+    @Volatile
+    private var vigente = false
+
+    // Hilo que aplica un cambio propio: sus avisos de escritura no desfasan la memoria.
+    // El aviso llega desde el escritor de la base, que indica quién pidió la escritura.
+    @Volatile
+    private var hiloPropio: Thread? = null
+
+    init {
+        db.invalidacion().observar(
+            { if (db.invalidacion().origen() !== hiloPropio) vigente = false },
+            DatabaseHelper.TABLE_PRODUCTOS, DatabaseHelper.TABLE_CARRITO
+        )
+    }
+
+    companion object {
+        @Volatile
+        private var instance: CarritoRepositorio? = null
+
+        fun getInstance(context: Context): CarritoRepositorio {
+            return instance ?: synchronized(this) {
+                instance ?: CarritoRepositorio(DatabaseHelper.getInstance(context)).also { instance = it }
+            }
+        }
+    }
+
+    /** Fotos del carrito; la primera llega cuando termina la carga inicial. */
+    val estado: Flow<EstadoCarrito> = actual.filterNotNull()
+
+    /** Carga desde la base solo si nunca se cargó o se invalidó. */
+    suspend fun cargarSiHaceFalta() {
+        if (vigente) return
+        mutex.withLock {
+            if (!vigente) recargar()
+        }
+    }
+
+    /** @return CARRITO_AGREGADO, CARRITO_SIN_STOCK o CARRITO_NO_ENCONTRADO */
+    suspend fun agregar(productoId: Int, cantidad: Int = 1): Int = mutar {
+        val resultado = propio { carrito.agregarProducto(productoId, cantidad) }
+        if (resultado == DatabaseHelper.CARRITO_AGREGADO) publicar()
+        resultado
+    }
+
+    suspend fun eliminar(productoId: Int): Boolean = mutar {
+        val eliminado = propio { carrito.eliminarProducto(productoId) }
+        if (eliminado) publicar()
+        eliminado
+    }
+
+    /**
+     * Cambia la cantidad de una línea; una cantidad de cero o menos quita el
+     * producto. El stock se comprueba en la misma sentencia que descuenta la
+     * diferencia, así dos cambios simultáneos no pueden vender de más.
+     */
+    suspend fun actualizarCantidad(productoId: Int, nuevaCantidad: Int): ResultadoCantidad {
+        if (nuevaCantidad <= 0) {
+            return if (eliminar(productoId)) ResultadoCantidad.ELIMINADO else ResultadoCantidad.ERROR
+        }
+        return mutar {
+            val resultado = propio { carrito.actualizarCantidad(productoId, nuevaCantidad) }
+            when (resultado) {
+                DatabaseHelper.CARRITO_AGREGADO -> {
+                    publicar()
+                    ResultadoCantidad.ACTUALIZADA
+                }
+                DatabaseHelper.CARRITO_SIN_STOCK -> ResultadoCantidad.SIN_STOCK
+                else -> ResultadoCantidad.ERROR
+            }
+        }
+    }
+
+    /** @return id de la orden u ORDEN_CARRITO_VACIO */
+    suspend fun finalizarCompra(usuario: String): Long = mutar {
+        val orden = propio { carrito.finalizarCompra(usuario) }
+        publicar()
+        orden
+    }
+
+    /**
+     * Un cambio ya escrito en la base siempre se publica, aunque se cancele
+     * la pantalla que lo pidió; si no, la foto quedaría desfasada.
+     */
+    private suspend fun <T> mutar(cambio: suspend () -> T): T {
+        return withContext(NonCancellable) {
+            mutex.withLock { cambio() }
+        }
+    }
+
+    // Llamar con el mutex tomado: un solo cambio propio a la vez
+    private suspend fun <T> propio(cambio: () -> T): T = withContext(io) {
+        hiloPropio = Thread.currentThread()
+        try {
+            cambio()
+        } finally {
+            hiloPropio = null
+        }
+    }
+
+    // Llamar con el mutex tomado. Se marca vigente antes de leer: un aviso que
+    // llegue durante la carga la deja pendiente de repetirse.
+    private suspend fun recargar() {
+        vigente = true
+        withContext(io) { carrito.cargar() }
+        actual.value = foto()
+    }
+
+    // Llamar con el mutex tomado. Sin carga vigente la memoria puede estar
+    // desfasada: la próxima carga ya leerá el cambio de la base.
+    private fun publicar() {
+        if (vigente) actual.value = foto()
+    }
+
+    private fun foto() = EstadoCarrito(
+        carrito.obtenerProductos(),
+        carrito.calcularTotal(),
+        carrito.obtenerCantidadTotalProductos()
+    )
+}
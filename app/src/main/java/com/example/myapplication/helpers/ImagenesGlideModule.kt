@@ -0,0 +1,68 @@
+package com.example.myapplication.helpers
+
+import android.app.ActivityManager
+import android.content.Context
+import android.util.Log
+import com.bumptech.glide.GlideBuilder
+import com.bumptech.glide.annotation.GlideModule
+import com.bumptech.glide.load.DecodeFormat
+import com.bumptech.glide.load.engine.DiskCacheStrategy
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory
+import com.bumptech.glide.load.engine.cache.LruResourceCache
+import com.bumptech.glide.module.AppGlideModule
+import com.bumptech.glide.request.RequestOptions
+
+/**
+ * Configuración de Glide para toda la app; kapt genera el módulo que la
+ * registra. Los tamaños de caché dependen de la memoria que el sistema
+ * asigna a la app, no de una cifra fija.
+ */
+@GlideModule
+class ImagenesGlideModule : AppGlideModule() {
+
+    companion object {
+        private const val TAG = "ImagenesGlideModule"
+
+        private const val BYTES_POR_MB = 1024L * 1024
+
+        // Fracción del heap de la app para bitmaps en memoria (caché + pool)
+        private const val DIVISOR_MEMORIA = 8
+        private const val DIVISOR_MEMORIA_BAJA = 16
+
+        private const val DISCO_MB = 100L
+        private const val DISCO_BAJA_MEMORIA_MB = 40L
+        private const val DIRECTORIO_DISCO = "imagenes_glide"
+    }
+
+    override fun applyOptions(context: Context, builder: GlideBuilder) {
+        val am = context.getSystemService(Context.ACTIVITY_SERVICE) as ActivityManager
+        val bajaMemoria = am.isLowRamDevice
+        val heapBytes = am.memoryClass * BYTES_POR_MB
+        val presupuesto = heapBytes / if (bajaMemoria) DIVISOR_MEMORIA_BAJA else DIVISOR_MEMORIA
+
+        // Dos tercios para los recursos ya decodificados, el resto para reciclar bitmaps
+        val cacheBytes = presupuesto * 2 / 3
+        builder.setMemoryCache(LruResourceCache(cacheBytes))
+        builder.setBitmapPool(LruBitmapPool(presupuesto - cacheBytes))
+
+        val discoBytes = (if (bajaMemoria) DISCO_BAJA_MEMORIA_MB else DISCO_MB) * BYTES_POR_MB
+        builder.setDiskCache(InternalCacheDiskCacheFactory(context, DIRECTORIO_DISCO, discoBytes))
+
+        builder.setDefaultRequestOptions(
+            RequestOptions()
+                // Las fotos de productos no tienen transparencia: 2 bytes por píxel en lugar de 4.
+                // Con PREFER Glide vuelve a ARGB_8888 si la imagen sí tiene alfa.
+                .format(DecodeFormat.PREFER_RGB_565)
+                // Los originales son locales: solo vale la pena guardar el resultado ya
+                // recortado al tamaño de la vista, no una copia de la fuente
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+        )
+
+        Log.d(TAG, "Memoria: ${cacheBytes / BYTES_POR_MB} MB caché, " +
+                "${(presupuesto - cacheBytes) / BYTES_POR_MB} MB pool; disco: ${discoBytes / BYTES_POR_MB} MB")
+    }
+
+    // Ninguna dependencia declara módulos en el manifiesto
+    override fun isManifestParsingEnabled(): Boolean = false
+}
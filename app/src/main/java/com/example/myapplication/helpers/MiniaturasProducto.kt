@@ -0,0 +1,243 @@
+package com.example.myapplication.helpers
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Matrix
+import android.net.Uri
+import android.os.Build
+import android.os.Environment
+import android.util.Log
+import androidx.exifinterface.media.ExifInterface
+import com.example.myapplication.R
+import com.example.myapplication.database.DatabaseHelper
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.launch
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.util.UUID
+import java.util.concurrent.Executors
+
+/**
+ * Genera las miniaturas WebP de la imagen de un producto: una cuadrada del
+ * tamaño de la fila de lista y otra acotada para la pantalla de detalle.
+ * Así las listas no decodifican la foto original de la cámara, que puede
+ * pesar varios MB, en cada fila.
+ *
+ * Todo corre en un único hilo de fondo de baja prioridad: las fotos se
+ * procesan de una en una y nunca más de dos bitmaps grandes a la vez.
+ */
+object MiniaturasProducto {
+
+    private const val TAG = "MiniaturasProducto"
+
+    private const val DIRECTORIO = "miniaturas"
+
+    private const val LADO_MAXIMO_DETALLE = 1080
+    private const val CALIDAD_WEBP = 80
+
+    // Una foto más reciente puede pertenecer a un formulario que aún no se guardó
+    private const val EDAD_MINIMA_HUERFANO_MS = 24L * 60 * 60 * 1000
+    private const val PREFIJO_FOTO_CAMARA = "JPEG_"
+
+    private val dispatcher = Executors.newSingleThreadExecutor { r ->
+        Thread(r, "miniaturas").apply { priority = Thread.MIN_PRIORITY }
+    }.asCoroutineDispatcher()
+
+    // Sobrevive a la pantalla que guardó el producto: la miniatura se termina aunque se cierre
+    private val scope = CoroutineScope(SupervisorJob() + dispatcher)
+
+    /**
+     * Genera las miniaturas de la imagen actual del producto y las registra
+     * en la base. Si la imagen no se puede leer el producto se queda sin
+     * miniaturas y las listas siguen mostrando la original.
+     */
+    fun generar(context: Context, productoId: Int): Job {
+        val appContext = context.applicationContext
+        return scope.launch {
+            try {
+                generarAhora(appContext, productoId)
+            } catch (e: Exception) {
+                Log.e(TAG, "Error generando miniaturas del producto $productoId: ${e.message}", e)
+            }
+            limpiarHuerfanosAhora(appContext)
+        }
+    }
+
+    /** Borra fotos de cámara y miniaturas que ya no usa ningún producto. */
+    fun limpiarHuerfanos(context: Context): Job {
+        val appContext = context.applicationContext
+        return scope.launch { limpiarHuerfanosAhora(appContext) }
+    }
+
+    private fun generarAhora(context: Context, productoId: Int) {
+        val db = DatabaseHelper.getInstance(context)
+        val producto = db.obtenerProductoPorId(productoId) ?: return
+        val imagen = producto.imagen_path
+        if (imagen.isEmpty() || producto.miniaturaLista.isNotEmpty()) return
+
+        val original = decodificar(context, imagen, LADO_MAXIMO_DETALLE)
+        if (original == null) {
+            Log.w(TAG, "No se pudo leer la imagen del producto $productoId")
+            return
+        }
+
+        val directorio = File(context.filesDir, DIRECTORIO).apply { mkdirs() }
+        // El mismo tamaño que ocupa en la fila: Glide no tiene que volver a escalarla
+        val ladoLista = context.resources.getDimensionPixelSize(R.dimen.imagen_lista)
+        val base = "p${productoId}_${UUID.randomUUID()}"
+
+        val detalle: File
+        val lista: File
+        try {
+            detalle = escribirWebp(original, File(directorio, "${base}_detalle.webp"))
+            val cuadrada = recortarCuadrado(original, ladoLista)
+            try {
+                lista = escribirWebp(cuadrada, File(directorio, "${base}_lista.webp"))
+            } finally {
+                if (cuadrada !== original) cuadrada.recycle()
+            }
+        } finally {
+            original.recycle()
+        }
+
+        // Si la imagen cambió mientras tanto, estas miniaturas ya no sirven
+        if (!db.actualizarMiniaturas(productoId, imagen, lista.absolutePath, detalle.absolutePath)) {
+            lista.delete()
+            detalle.delete()
+            return
+        }
+        Log.d(TAG, "Miniaturas del producto $productoId: ${lista.length()} B y ${detalle.length()} B")
+    }
+
+    /**
+     * Decodifica con el inSampleSize potencia de dos más grande que deja el
+     * lado mayor en al menos [ladoMaximo], escala el resto y aplica la
+     * orientación EXIF, que la cámara suele dejar sin aplicar.
+     */
+    private fun decodificar(context: Context, imagen: String, ladoMaximo: Int): Bitmap? {
+        val limites = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        // Con inJustDecodeBounds decodeStream siempre devuelve null: solo importan las medidas
+        val flujo = abrir(context, imagen) ?: return null
+        flujo.use { BitmapFactory.decodeStream(it, null, limites) }
+        if (limites.outWidth <= 0 || limites.outHeight <= 0) return null
+
+        var muestreo = 1
+        while (maxOf(limites.outWidth, limites.outHeight) / (muestreo * 2) >= ladoMaximo) {
+            muestreo *= 2
+        }
+        val opciones = BitmapFactory.Options().apply { inSampleSize = muestreo }
+        val bitmap = abrir(context, imagen)?.use { BitmapFactory.decodeStream(it, null, opciones) } ?: return null
+
+        val orientacion = try {
+            abrir(context, imagen)?.use {
+                ExifInterface(it).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)
+            } ?: ExifInterface.ORIENTATION_NORMAL
+        } catch (e: IOException) {
+            ExifInterface.ORIENTATION_NORMAL
+        }
+
+        val matriz = Matrix()
+        val escala = ladoMaximo.toFloat() / maxOf(bitmap.width, bitmap.height)
+        if (escala < 1f) matriz.postScale(escala, escala)
+        when (orientacion) {
+            ExifInterface.ORIENTATION_ROTATE_90 -> matriz.postRotate(90f)
+            ExifInterface.ORIENTATION_ROTATE_180 -> matriz.postRotate(180f)
+            ExifInterface.ORIENTATION_ROTATE_270 -> matriz.postRotate(270f)
+        }
+        if (matriz.isIdentity) return bitmap
+
+        val transformado = Bitmap.createBitmap(bitmap, 0, 0, bitmap.width, bitmap.height, matriz, true)
+        if (transformado !== bitmap) bitmap.recycle()
+        return transformado
+    }
+
+    // Las imágenes de galería se guardan como content://, las de cámara como ruta
+    private fun abrir(context: Context, imagen: String): InputStream? {
+        return try {
+            if (imagen.startsWith("content:") || imagen.startsWith("file:")) {
+                context.contentResolver.openInputStream(Uri.parse(imagen))
+            } else {
+                FileInputStream(imagen)
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "No se pudo abrir $imagen: ${e.message}")
+            null
+        }
+    }
+
+    private fun recortarCuadrado(bitmap: Bitmap, lado: Int): Bitmap {
+        val menor = minOf(bitmap.width, bitmap.height)
+        val escala = lado.toFloat() / menor
+        val matriz = Matrix().apply { if (escala < 1f) postScale(escala, escala) }
+        return Bitmap.createBitmap(
+            bitmap,
+            (bitmap.width - menor) / 2,
+            (bitmap.height - menor) / 2,
+            menor,
+            menor,
+            matriz,
+            true
+        )
+    }
+
+    // Se escribe en un temporal y se renombra: nunca queda registrada una miniatura a medias
+    private fun escribirWebp(bitmap: Bitmap, destino: File): File {
+        val temporal = File(destino.parentFile, destino.name + ".tmp")
+        try {
+            FileOutputStream(temporal).use { salida ->
+                if (!bitmap.compress(formatoWebp(), CALIDAD_WEBP, salida)) {
+                    throw IOException("No se pudo comprimir ${destino.name}")
+                }
+            }
+            if (!temporal.renameTo(destino)) throw IOException("No se pudo renombrar ${temporal.name}")
+            return destino
+        } finally {
+            temporal.delete()
+        }
+    }
+
+    @Suppress("DEPRECATION")
+    private fun formatoWebp(): Bitmap.CompressFormat {
+        return if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bitmap.CompressFormat.WEBP_LOSSY
+        } else {
+            Bitmap.CompressFormat.WEBP
+        }
+    }
+
+    private fun limpiarHuerfanosAhora(context: Context) {
+        try {
+            val enUso = DatabaseHelper.getInstance(context).obtenerRutasImagenesEnUso()
+            val limite = System.currentTimeMillis() - EDAD_MINIMA_HUERFANO_MS
+            var borrados = 0
+
+            // Miniaturas de imágenes reemplazadas, productos eliminados o generaciones interrumpidas.
+            // Solo este hilo escribe aquí, así que no hay ninguna a medio registrar.
+            File(context.filesDir, DIRECTORIO).listFiles()?.forEach { archivo ->
+                if (archivo.absolutePath !in enUso && archivo.delete()) {
+                    borrados++
+                }
+            }
+
+            // Fotos de cámara canceladas o reemplazadas antes de guardar
+            context.getExternalFilesDir(Environment.DIRECTORY_PICTURES)?.listFiles()?.forEach { archivo ->
+                if (archivo.name.startsWith(PREFIJO_FOTO_CAMARA) && archivo.absolutePath !in enUso &&
+                    archivo.lastModified() < limite && archivo.delete()
+                ) {
+                    borrados++
+                }
+            }
+
+            if (borrados > 0) Log.d(TAG, "Archivos huérfanos eliminados: $borrados")
+        } catch (e: Exception) {
+            Log.e(TAG, "Error limpiando imágenes huérfanas: ${e.message}", e)
+        }
+    }
+}
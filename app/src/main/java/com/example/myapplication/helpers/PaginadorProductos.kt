@@ -0,0 +1,59 @@
+package com.example.myapplication.helpers
+
+import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.database.MapeadorFilas
+import com.example.myapplication.models.Producto
+
+/**
+ * Lee el catálogo por páginas usando paginación por clave (nombre, id).
+ * Guarda la última fila entregada para pedir la siguiente página sin OFFSET.
+ * No es seguro para uso concurrente: las páginas se piden de una en una.
+ */
+class PaginadorProductos(
+    private val db: DatabaseHelper,
+    private val tamanoPagina: Int = TAMANO_PAGINA
+) {
+
+    var categoria: String? = null
+        private set
+    var busqueda: String? = null
+        private set
+    var hayMas: Boolean = true
+        private set
+
+    private var ultimoNombre: String? = null
+    private var ultimoId: Int = 0
+
+    companion object {
+        const val TAMANO_PAGINA = 30
+    }
+
+    fun reiniciar(categoria: String? = this.categoria, busqueda: String? = this.busqueda) {
+        this.categoria = categoria
+        this.busqueda = busqueda?.takeIf { it.isNotBlank() }
+        ultimoNombre = null
+        ultimoId = 0
+        hayMas = true
+    }
+
+    /** Consulta bloqueante: llamar fuera del hilo principal. */
+    fun siguientePagina(): List<Producto> {
+        if (!hayMas) return emptyList()
+
+        val pagina = ArrayList<Producto>(tamanoPagina)
+        db.obtenerPaginaProductos(categoria, busqueda, ultimoNombre, ultimoId, tamanoPagina).use { c ->
+            val mapeador = MapeadorFilas.productos(c)
+            while (c.moveToNext()) {
+                pagina.add(mapeador.leer())
+            }
+            // La clave de la página se toma del valor crudo de la BD, no del nombre de respaldo
+            if (c.moveToLast()) {
+                ultimoNombre = c.getString(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_NOMBRE)) ?: ""
+                ultimoId = c.getInt(c.getColumnIndexOrThrow(DatabaseHelper.COLUMN_ID))
+            }
+        }
+
+        hayMas = pagina.size == tamanoPagina
+        return pagina
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.myapplication.helpers
+
+import com.example.myapplication.database.DatabaseHelper
+
+/**
+ * Recuerda qué versión de sus tablas leyó una pantalla, para que al volver
+ * a ella sepa sin consultar nada si lo que muestra sigue vigente.
+ */
+class VistaTablas(private val db: DatabaseHelper, private vararg val tablas: String) {
+
+    // -1: nunca se leyó
+    private var versionLeida = -1L
+
+    /**
+     * true si alguna tabla cambió desde la última lectura. Marca la versión
+     * actual como leída antes de consultar: una escritura que ocurra durante
+     * la consulta vuelve a dejar la vista desactualizada.
+     */
+    fun desactualizada(): Boolean {
+        val actual = db.invalidacion().version(*tablas)
+        if (actual == versionLeida) return false
+        versionLeida = actual
+        return true
+    }
+
+    /** La lectura falló o se descartó: la próxima vez se vuelve a consultar. */
+    fun olvidar() {
+        versionLeida = -1L
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.myapplication.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Montos en centavos (unidades menores enteras). Precios, subtotales y
+ * totales se suman y multiplican como long, así no acumulan el error de
+ * redondeo de double; solo se convierten al mostrarlos o al recibirlos.
+ */
+public final class Dinero {
+
+    public static final int CENTAVOS_POR_PESO = 100;
+
+    // "-$" + 19 dígitos + 6 separadores de miles + "." + 2 decimales
+    private static final int LARGO_MAXIMO = 30;
+
+    private Dinero() {}
+
+    /**
+     * Redondea al centavo más cercano, las mitades hacia arriba. Pasa por el
+     * texto más corto del double, de modo que 0.1 da 10 y no 9.
+     *
+     * @throws NumberFormatException si el valor no es finito
+     * @throws ArithmeticException si no cabe en un long
+     */
+    public static long deDecimal(double pesos) {
+        return BigDecimal.valueOf(pesos).movePointRight(2)
+                .setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * Monto escrito como "12", "12.5" o "1299.99", redondeado al centavo.
+     *
+     * @return centavos, o null si el texto no es un número que quepa en un long
+     */
+    public static Long deTexto(String texto) {
+        if (texto == null) return null;
+        try {
+            return new BigDecimal(texto.trim()).movePointRight(2)
+                    .setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /** Valor en pesos; solo para mostrar o para APIs que esperan double. */
+    public static double aDecimal(long centavos) {
+        return centavos / (double) CENTAVOS_POR_PESO;
+    }
+
+    /** @throws ArithmeticException si el resultado no cabe en un long */
+    public static long multiplicar(long centavos, int cantidad) {
+        return Math.multiplyExact(centavos, (long) cantidad);
+    }
+
+    /**
+     * Monto con símbolo y separador de miles: "$1,299.99", "-$0.50". No usa
+     * NumberFormat ni estado compartido, así que se puede llamar desde
+     * cualquier hilo; solo asigna un buffer local y el String resultante.
+     */
+    public static String formatear(long centavos) {
+        return escribir("", centavos, true);
+    }
+
+    /** Igual que formatear, precedido de un texto fijo: evita concatenar al enlazar filas. */
+    public static String formatear(String prefijo, long centavos) {
+        return escribir(prefijo, centavos, true);
+    }
+
+    /** Monto sin símbolo ni separadores ("1299.99"), que deTexto vuelve a leer. */
+    public static String aTexto(long centavos) {
+        return escribir("", centavos, false);
+    }
+
+    // Trabaja con el valor en negativo: así Long.MIN_VALUE no se desborda al cambiar de signo
+    private static String escribir(String prefijo, long centavos, boolean conSimbolo) {
+        char[] buffer = new char[prefijo.length() + LARGO_MAXIMO];
+        int i = buffer.length;
+        long resto = centavos > 0 ? -centavos : centavos;
+
+        buffer[--i] = (char) ('0' - resto % 10);
+        resto /= 10;
+        buffer[--i] = (char) ('0' - resto % 10);
+        resto /= 10;
+        buffer[--i] = '.';
+
+        int digitos = 0;
+        do {
+            if (conSimbolo && digitos > 0 && digitos % 3 == 0) buffer[--i] = ',';
+            buffer[--i] = (char) ('0' - resto % 10);
+            resto /= 10;
+            digitos++;
+        } while (resto != 0);
+
+        if (conSimbolo) buffer[--i] = '$';
+        if (centavos < 0) buffer[--i] = '-';
+        i -= prefijo.length();
+        prefijo.getChars(0, prefijo.length(), buffer, i);
+        return new String(buffer, i, buffer.length - i);
+    }
+}
@@ -4,11 +4,16 @@ data class Producto(
     val id: Int,
     val nombre: String,
     val descripcion: String = "",
-    val precio: Double,
+    /** Precio unitario en centavos; ver [Dinero]. */
+    val precioCentavos: Long,
     val imagen_path: String = "",
     val stock: Int,
     var cantidad: Int = 1,
-    val categoria: String = "General"
+    val categoria: String = "General",
+    /** Miniatura WebP para filas de lista; vacía mientras no se genera. */
+    val miniaturaLista: String = "",
+    /** Miniatura WebP para la pantalla de detalle; vacía mientras no se genera. */
+    val miniaturaDetalle: String = ""
 
 ) {
 
@@ -31,17 +36,30 @@ data class Producto(
     init {
         require(id >= 0) { "El ID debe ser positivo" }
         require(nombre.isNotBlank()) { "El nombre no puede estar vacío" }
-        require(precio >= 0) { "El precio no puede ser negativo" }
+        require(precioCentavos >= 0) { "El precio no puede ser negativo" }
         require(cantidad >= 0) { "La cantidad no puede ser negativa" }
     }
 
+    /**
+     * Precio ya formateado. Se calcula una vez por instancia, normalmente en
+     * el hilo que leyó la base, y las filas de las listas solo lo asignan.
+     */
+    val precioTexto: String = Dinero.formatear(precioCentavos)
 
-    fun subtotal(): Double {
-        return precio * cantidad
+
+    /** Precio por cantidad, en centavos. */
+    fun subtotalCentavos(): Long {
+        return Dinero.multiplicar(precioCentavos, cantidad)
     }
 
 
     fun precioFormateado(): String {
-        return "$${"%.2f".format(precio)}"
+        return precioTexto
     }
+
+    /** Imagen para una fila de lista: la miniatura si ya existe, si no la original. */
+    fun imagenLista(): String = miniaturaLista.ifEmpty { imagen_path }
+
+    /** Imagen para la pantalla de detalle, con el mismo respaldo. */
+    fun imagenDetalle(): String = miniaturaDetalle.ifEmpty { imagen_path }
 }
\ No newline at end of file
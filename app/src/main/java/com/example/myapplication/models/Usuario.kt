@@ -7,6 +7,8 @@ import android.widget.Toast
 import com.example.myapplication.activities.AdminActivity
 import com.example.myapplication.activities.MainActivity
 import com.example.myapplication.database.DatabaseHelper
+import com.example.myapplication.database.MapeadorFilas
+import com.example.myapplication.managers.SessionManager
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 
@@ -38,7 +40,7 @@ data class Usuario(
 
         // ===================== REGISTRAR USUARIO =====================
         fun registrarUsuario(context: Context, nuevoUsuario: Usuario): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
 
             // AGREGAR LOGS PARA DEBUG
             Log.d("REGISTRO_USUARIO", "=== INICIANDO REGISTRO EN BD ===")
@@ -94,7 +96,7 @@ data class Usuario(
 
         // ===================== REGISTRAR USUARIO SIN TOAST (PARA CONTROL MANUAL) =====================
         fun registrarUsuarioSilencioso(context: Context, nuevoUsuario: Usuario): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
 
             if (usuarioExiste(context, nuevoUsuario.username)) {
                 return false
@@ -121,19 +123,19 @@ data class Usuario(
 
         // ===================== VALIDAR LOGIN =====================
         fun validarLogin(context: Context, username: String, password: String): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return dbHelper.validarUsuario(username, password)
         }
 
         // ===================== VERIFICAR EXISTENCIA DE USUARIO =====================
         fun usuarioExiste(context: Context, username: String): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return dbHelper.usuarioExiste(username)
         }
 
         // ===================== OBTENER USUARIO POR NOMBRE =====================
         fun obtenerUsuarioPorNombre(context: Context, username: String): Usuario? {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 val dbUsuario = dbHelper.obtenerUsuarioPorNombre(username)
                 dbUsuario?.let {
@@ -160,7 +162,7 @@ data class Usuario(
 
         // ===================== OBTENER USUARIO POR ID =====================
         fun obtenerUsuarioPorId(context: Context, usuarioId: Int): Usuario? {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 val dbUsuario = dbHelper.obtenerUsuarioPorId(usuarioId)
                 dbUsuario?.let {
@@ -181,13 +183,13 @@ data class Usuario(
 
         // ===================== OBTENER ROL =====================
         fun obtenerRol(context: Context, username: String): String {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return dbHelper.obtenerRol(username) ?: "Desconocido"
         }
 
         // ===================== OBTENER ACTIVIDAD SEGÚN ROL =====================
         fun obtenerActividadSegunRol(context: Context, username: String): Class<*> {
-            val rol = obtenerRol(context, username)
+            val rol = SessionManager.rolSiEsSesion(context, username) ?: obtenerRol(context, username)
             return when (rol.lowercase()) {
                 "admin" -> AdminActivity::class.java
                 "cliente" -> MainActivity::class.java
@@ -197,44 +199,23 @@ data class Usuario(
 
         // ===================== OBTENER TODOS LOS USUARIOS =====================
         fun obtenerTodosLosUsuarios(context: Context): List<Usuario> {
-            val dbHelper = DatabaseHelper(context)
-            val usuarios = mutableListOf<Usuario>()
-            try {
-                val cursor = dbHelper.obtenerTodosLosUsuarios()
-                cursor?.use { c ->
-                    val idIndex = c.getColumnIndex(DatabaseHelper.COLUMN_USUARIO_ID)
-                    val usernameIndex = c.getColumnIndex(DatabaseHelper.COLUMN_USERNAME)
-                    val rolIndex = c.getColumnIndex(DatabaseHelper.COLUMN_ROL)
-
-                    while (c.moveToNext()) {
-                        val id = if (idIndex >= 0) c.getInt(idIndex) else 0
-                        val username = if (usernameIndex >= 0) c.getString(usernameIndex) else ""
-                        val rol = if (rolIndex >= 0) c.getString(rolIndex) else "cliente"
-
-                        if (username.isNotBlank()) {
-                            usuarios.add(
-                                Usuario(
-                                    id = id,
-                                    username = username,
-                                    password = "", // No obtenemos la contraseña por seguridad
-                                    rol = rol,
-                                    isAdmin = rol.equals("admin", ignoreCase = true)
-                                )
-                            )
-                        }
-                    }
-                }
+            val dbHelper = DatabaseHelper.getInstance(context)
+            return try {
+                val usuarios = MapeadorFilas.usuarios(dbHelper.obtenerTodosLosUsuarios()).listar()
+                usuarios.removeAll { it.username.isBlank() }
+                usuarios
             } catch (e: Exception) {
                 Log.e("Usuario", "Error obteniendo usuarios: ${e.message}")
+                emptyList()
             }
-            return usuarios
         }
 
         // ===================== ACTUALIZAR USUARIO =====================
         fun actualizarUsuario(context: Context, username: String, nuevoRol: String): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 val resultado = dbHelper.actualizarUsuario(username, nuevoRol)
+                if (resultado > 0) SessionManager.rolActualizado(context, username, nuevoRol)
                 resultado > 0
             } catch (e: Exception) {
                 Log.e("Usuario", "Error actualizando usuario: ${e.message}")
@@ -244,9 +225,10 @@ data class Usuario(
 
         // ===================== ELIMINAR USUARIO =====================
         fun eliminarUsuario(context: Context, username: String): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 val resultado = dbHelper.eliminarUsuario(username)
+                if (resultado > 0) SessionManager.usuarioEliminado(context, username)
                 resultado > 0
             } catch (e: Exception) {
                 Log.e("Usuario", "Error eliminando usuario: ${e.message}")
@@ -256,7 +238,7 @@ data class Usuario(
 
         // ===================== CAMBIAR CONTRASEÑA =====================
         fun cambiarPassword(context: Context, username: String, nuevaPassword: String): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 val resultado = dbHelper.cambiarPassword(username, nuevaPassword)
                 resultado > 0
@@ -268,7 +250,7 @@ data class Usuario(
 
         // ===================== OBTENER CANTIDAD DE USUARIOS =====================
         fun obtenerCantidadUsuarios(context: Context): Int {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 dbHelper.obtenerCantidadUsuarios()
             } catch (e: Exception) {
@@ -279,12 +261,13 @@ data class Usuario(
 
         // ===================== ACTUALIZAR ROL DE USUARIO =====================
         fun actualizarRolUsuario(context: Context, username: String, nuevoRol: String): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 Log.d("ACTUALIZAR_ROL", "Actualizando rol de usuario: $username a $nuevoRol")
                 val resultado = dbHelper.actualizarRolUsuario(username, nuevoRol)
 
                 if (resultado > 0) {
+                    SessionManager.rolActualizado(context, username, nuevoRol)
                     Log.i("ACTUALIZAR_ROL", "Rol actualizado exitosamente para: $username")
                     true
                 } else {
@@ -299,7 +282,7 @@ data class Usuario(
 
         // ===================== ELIMINAR USUARIO CON LOGS =====================
         fun eliminarUsuarioConLogs(context: Context, username: String): Boolean {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 Log.d("ELIMINAR_USUARIO", "Intentando eliminar usuario: $username")
 
@@ -312,6 +295,7 @@ data class Usuario(
                 val resultado = dbHelper.eliminarUsuario(username)
 
                 if (resultado > 0) {
+                    SessionManager.usuarioEliminado(context, username)
                     Log.i("ELIMINAR_USUARIO", "Usuario eliminado exitosamente: $username")
                     true
                 } else {
@@ -326,49 +310,28 @@ data class Usuario(
 
         // ===================== OBTENER USUARIOS POR ROL =====================
         fun obtenerUsuariosPorRol(context: Context, rol: String): List<Usuario> {
-            val dbHelper = DatabaseHelper(context)
-            val usuarios = mutableListOf<Usuario>()
-            try {
-                val cursor = dbHelper.obtenerUsuariosPorRol(rol)
-                cursor?.use { c ->
-                    val idIndex = c.getColumnIndex(DatabaseHelper.COLUMN_USUARIO_ID)
-                    val usernameIndex = c.getColumnIndex(DatabaseHelper.COLUMN_USERNAME)
-                    val rolIndex = c.getColumnIndex(DatabaseHelper.COLUMN_ROL)
-
-                    while (c.moveToNext()) {
-                        val id = if (idIndex >= 0) c.getInt(idIndex) else 0
-                        val username = if (usernameIndex >= 0) c.getString(usernameIndex) else ""
-                        val usuarioRol = if (rolIndex >= 0) c.getString(rolIndex) else rol
-
-                        if (username.isNotBlank()) {
-                            usuarios.add(
-                                Usuario(
-                                    id = id,
-                                    username = username,
-                                    password = "",
-                                    rol = usuarioRol,
-                                    isAdmin = usuarioRol.equals("admin", ignoreCase = true)
-                                )
-                            )
-                        }
-                    }
-                }
+            val dbHelper = DatabaseHelper.getInstance(context)
+            return try {
+                val cursor = dbHelper.obtenerUsuariosPorRol(rol) ?: return emptyList()
+                val usuarios = MapeadorFilas.usuarios(cursor).listar()
+                usuarios.removeAll { it.username.isBlank() }
                 Log.d("OBTENER_USUARIOS_ROL", "Usuarios con rol '$rol': ${usuarios.size}")
+                usuarios
             } catch (e: Exception) {
                 Log.e("OBTENER_USUARIOS_ROL", "Error obteniendo usuarios por rol: ${e.message}")
+                emptyList()
             }
-            return usuarios
         }
 
         // ===================== VERIFICAR SI USUARIO ES ADMIN =====================
         fun esUsuarioAdmin(context: Context, username: String): Boolean {
-            val rol = obtenerRol(context, username)
+            val rol = SessionManager.rolSiEsSesion(context, username) ?: obtenerRol(context, username)
             return rol.equals("admin", ignoreCase = true)
         }
 
         // ===================== CONTAR USUARIOS POR ROL =====================
         fun contarUsuariosPorRol(context: Context, rol: String): Int {
-            val dbHelper = DatabaseHelper(context)
+            val dbHelper = DatabaseHelper.getInstance(context)
             return try {
                 val cantidad = dbHelper.contarUsuariosPorRol(rol)
                 Log.d("CONTAR_USUARIOS", "Usuarios con rol '$rol': $cantidad")
@@ -0,0 +1,102 @@
+package com.example.myapplication.seguridad;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Hexadecimal por tabla sobre buffers que entrega el llamador, salts
+ * aleatorios y comparación en tiempo constante. Nada de esto pasa por
+ * String.format ni crea objetos por byte: el login, el registro y el cambio
+ * de contraseña lo usan en cada llamada.
+ */
+public final class Codec {
+
+    private static final char[] DIGITOS = "0123456789abcdef".toCharArray();
+
+    // Valor de cada carácter ASCII como dígito hex, -1 si no lo es
+    private static final byte[] VALORES = new byte[128];
+
+    // SecureRandom es thread-safe; crearlo en cada salt paga la siembra una y otra vez
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static {
+        Arrays.fill(VALORES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            VALORES[DIGITOS[i]] = (byte) i;
+            VALORES[Character.toUpperCase(DIGITOS[i])] = (byte) i;
+        }
+    }
+
+    private Codec() {}
+
+    /** Escribe {@code bytes.length * 2} dígitos en destino a partir de offset. */
+    public static void codificarHex(byte[] bytes, char[] destino, int offset) {
+        for (byte b : bytes) {
+            destino[offset++] = DIGITOS[(b >> 4) & 0xf];
+            destino[offset++] = DIGITOS[b & 0xf];
+        }
+    }
+
+    /** Igual que {@link #codificarHex(byte[], char[], int)} pero en bytes ASCII. */
+    public static void codificarHex(byte[] bytes, byte[] destino, int offset) {
+        for (byte b : bytes) {
+            destino[offset++] = (byte) DIGITOS[(b >> 4) & 0xf];
+            destino[offset++] = (byte) DIGITOS[b & 0xf];
+        }
+    }
+
+    public static String codificarHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        codificarHex(bytes, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Decodifica todo hex en destino a partir de offset.
+     *
+     * @return cantidad de bytes escritos
+     * @throws IllegalArgumentException si la longitud es impar o hay un carácter no hex
+     */
+    public static int decodificarHex(CharSequence hex, byte[] destino, int offset) {
+        int largo = hex.length();
+        if (largo % 2 != 0) throw new IllegalArgumentException("Hex de longitud impar");
+        for (int i = 0; i < largo; i += 2) {
+            int alto = valor(hex.charAt(i));
+            int bajo = valor(hex.charAt(i + 1));
+            if ((alto | bajo) < 0) throw new IllegalArgumentException("Hex inválido");
+            destino[offset++] = (byte) ((alto << 4) | bajo);
+        }
+        return largo / 2;
+    }
+
+    public static byte[] decodificarHex(CharSequence hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        decodificarHex(hex, bytes, 0);
+        return bytes;
+    }
+
+    private static int valor(char c) {
+        return c < 128 ? VALORES[c] : -1;
+    }
+
+    /** Llena destino con bytes aleatorios del generador compartido. */
+    public static void salt(byte[] destino) {
+        RANDOM.nextBytes(destino);
+    }
+
+    public static byte[] salt(int bytes) {
+        byte[] salt = new byte[bytes];
+        salt(salt);
+        return salt;
+    }
+
+    /** Recorre siempre todos los bytes: el tiempo no revela dónde difieren. */
+    public static boolean igualesTiempoConstante(byte[] a, byte[] b) {
+        if (a == null || b == null || a.length != b.length) return false;
+        int diferencia = 0;
+        for (int i = 0; i < a.length; i++) {
+            diferencia |= a[i] ^ b[i];
+        }
+        return diferencia == 0;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.myapplication.seguridad;
+
+/**
+ * Hash de contraseña tal como se guarda en usuarios: los parámetros en
+ * texto (algoritmo y, si aplica, iteraciones, p. ej. "pbkdf2-sha256$100000")
+ * y el salt y el hash en binario, sin pasar por hexadecimal.
+ */
+public final class HashPassword {
+
+    public final String parametros;
+    public final byte[] salt;
+    public final byte[] hash;
+
+    public HashPassword(String parametros, byte[] salt, byte[] hash) {
+        this.parametros = parametros;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /** Algoritmo: lo que va antes del primer '$' de los parámetros. */
+    public String algoritmo() {
+        if (parametros == null) return null;
+        int separador = parametros.indexOf('$');
+        return separador < 0 ? parametros : parametros.substring(0, separador);
+    }
+
+    /**
+     * Convierte el formato en texto anterior: la cadena
+     * {@code pbkdf2-sha256$<iter>$<salt hex>$<hash hex>} o bien un hash
+     * SHA-256 en hex con el salt en su propia columna.
+     *
+     * @throws IllegalArgumentException si el texto no es de ninguno de los dos formatos
+     */
+    public static HashPassword desdeTexto(String password, String salt) {
+        if (password == null) throw new IllegalArgumentException("Hash vacío");
+        int ultimo = password.lastIndexOf('$');
+        if (ultimo < 0) {
+            // El hash legado se calculó sobre el texto del salt, no sobre sus bytes decodificados
+            byte[] saltLegado = salt != null ? salt.getBytes() : new byte[0];
+            return new HashPassword(Sha256LegadoVerificador.ID, saltLegado, Codec.decodificarHex(password));
+        }
+        int penultimo = password.lastIndexOf('$', ultimo - 1);
+        if (penultimo < 0) throw new IllegalArgumentException("Hash mal formado");
+        return new HashPassword(password.substring(0, penultimo),
+                Codec.decodificarHex(password.substring(penultimo + 1, ultimo)),
+                Codec.decodificarHex(password.substring(ultimo + 1)));
+    }
+}
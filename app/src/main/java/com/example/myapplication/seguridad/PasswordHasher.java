@@ -0,0 +1,11 @@
+package com.example.myapplication.seguridad;
+
+/**
+ * Algoritmo de hash de contraseñas. Cada hash que produce lleva en
+ * {@link HashPassword#parametros} su algoritmo ({@link #id()}) y sus
+ * parámetros, de modo que se puede verificar aunque cambien después.
+ */
+public interface PasswordHasher extends VerificadorPassword {
+
+    HashPassword hash(String password);
+}
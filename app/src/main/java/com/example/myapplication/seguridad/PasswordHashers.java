@@ -0,0 +1,79 @@
+package com.example.myapplication.seguridad;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Punto de entrada del hash de contraseñas: elige el algoritmo actual,
+ * reconoce los hashes de cualquier algoritmo registrado por sus parámetros y
+ * ofrece un ejecutor acotado para correr los hashes fuera del hilo principal.
+ */
+public final class PasswordHashers {
+
+    /**
+     * Iteraciones de PBKDF2 por clase de dispositivo, con objetivo de unos
+     * 250 ms por hash. Se ajustan con CalibracionPbkdf2Benchmark; subirlas
+     * es seguro porque los hashes viejos se rehacen en el siguiente login.
+     */
+    public static final int ITERACIONES_ESTANDAR = 100_000;
+    public static final int ITERACIONES_BAJA_MEMORIA = 30_000;
+
+    // Esquemas anteriores: solo se verifican, para rehacer el hash en el login
+    private static final VerificadorPassword[] VERIFICADORES = {
+            new Sha256LegadoVerificador()
+    };
+
+    // Pocos hilos y cola corta: una ráfaga de intentos no puede acaparar la CPU
+    private static final ThreadPoolExecutor EJECUTOR;
+
+    static {
+        AtomicInteger contador = new AtomicInteger();
+        EJECUTOR = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(8),
+                r -> {
+                    Thread hilo = new Thread(r, "hash-password-" + contador.incrementAndGet());
+                    hilo.setPriority(Thread.NORM_PRIORITY - 1);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        EJECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private PasswordHashers() {}
+
+    /** Algoritmo para hashes nuevos según la clase del dispositivo. */
+    public static PasswordHasher paraDispositivo(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean bajaMemoria = am != null && am.isLowRamDevice();
+        return new Pbkdf2PasswordHasher(bajaMemoria ? ITERACIONES_BAJA_MEMORIA : ITERACIONES_ESTANDAR);
+    }
+
+    /** Verifica contra el algoritmo que indiquen los parámetros del hash. */
+    public static boolean verificar(PasswordHasher actual, String password, HashPassword almacenado) {
+        if (almacenado == null) return false;
+        String algoritmo = almacenado.algoritmo();
+        if (actual.id().equals(algoritmo)) return actual.verificar(password, almacenado);
+        for (VerificadorPassword verificador : VERIFICADORES) {
+            if (verificador.id().equals(algoritmo)) return verificador.verificar(password, almacenado);
+        }
+        return false;
+    }
+
+    /** true si el hash no es del algoritmo actual o usa parámetros más débiles. */
+    public static boolean necesitaRehash(PasswordHasher actual, HashPassword almacenado) {
+        return almacenado == null
+                || !actual.id().equals(almacenado.algoritmo())
+                || actual.necesitaRehash(almacenado);
+    }
+
+    /** Ejecutor acotado para hashes; rechaza trabajo si la cola está llena. */
+    public static Executor ejecutor() {
+        return EJECUTOR;
+    }
+}
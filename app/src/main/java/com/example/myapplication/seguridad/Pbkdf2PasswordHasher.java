@@ -0,0 +1,97 @@
+package com.example.myapplication.seguridad;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * PBKDF2-HMAC-SHA256 con salt aleatorio de 16 bytes y 32 bytes de salida.
+ * Parámetros: {@code pbkdf2-sha256$<iteraciones>}; salt y hash van en binario.
+ *
+ * La derivación se implementa sobre {@link Mac}: SecretKeyFactory
+ * "PBKDF2WithHmacSHA256" solo existe desde API 26 y la app soporta API 23.
+ */
+public final class Pbkdf2PasswordHasher implements PasswordHasher {
+
+    public static final String ID = "pbkdf2-sha256";
+
+    private static final int BYTES_SALT = 16;
+    private static final int BYTES_HASH = 32;
+
+    private final int iteraciones;
+
+    public Pbkdf2PasswordHasher(int iteraciones) {
+        if (iteraciones < 1) throw new IllegalArgumentException("Iteraciones inválidas: " + iteraciones);
+        this.iteraciones = iteraciones;
+    }
+
+    public int getIteraciones() {
+        return iteraciones;
+    }
+
+    @Override
+    public String id() {
+        return ID;
+    }
+
+    @Override
+    public HashPassword hash(String password) {
+        byte[] salt = Codec.salt(BYTES_SALT);
+        return new HashPassword(ID + "$" + iteraciones, salt, derivar(password, salt, iteraciones));
+    }
+
+    @Override
+    public boolean verificar(String password, HashPassword almacenado) {
+        int iter = iteraciones(almacenado);
+        if (iter < 1 || almacenado.salt == null
+                || almacenado.hash == null || almacenado.hash.length != BYTES_HASH) {
+            return false;
+        }
+        return Codec.igualesTiempoConstante(derivar(password, almacenado.salt, iter), almacenado.hash);
+    }
+
+    @Override
+    public boolean necesitaRehash(HashPassword almacenado) {
+        return iteraciones(almacenado) < iteraciones;
+    }
+
+    /** Iteraciones de los parámetros, o -1 si no son de este algoritmo o están mal formados. */
+    private static int iteraciones(HashPassword almacenado) {
+        String parametros = almacenado.parametros;
+        if (parametros == null || !parametros.startsWith(ID + "$")) return -1;
+        try {
+            return Integer.parseInt(parametros.substring(ID.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** PBKDF2 (RFC 8018) para un solo bloque de salida de HMAC-SHA256. */
+    static byte[] derivar(String password, byte[] salt, int iteraciones) {
+        try {
+            byte[] clave = password.getBytes(StandardCharsets.UTF_8);
+            // HMAC rellena la clave con ceros: una clave {0} equivale a la clave vacía,
+            // que SecretKeySpec no acepta
+            if (clave.length == 0) clave = new byte[1];
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(clave, "HmacSHA256"));
+
+            mac.update(salt);
+            mac.update(new byte[]{0, 0, 0, 1});
+            byte[] u = mac.doFinal();
+            byte[] resultado = u.clone();
+            for (int i = 1; i < iteraciones; i++) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+                for (int j = 0; j < resultado.length; j++) {
+                    resultado[j] ^= u[j];
+                }
+            }
+            return resultado;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 no disponible", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.myapplication.seguridad;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Verificador del esquema anterior: un SHA-256 de salt + password. Solo
+ * sirve para aceptar esas contraseñas una última vez y reemplazarlas en el
+ * login; nunca genera hashes nuevos. Parámetros: {@code sha256}. El salt son
+ * los bytes del texto hex original, que es lo que entraba al digest.
+ */
+final class Sha256LegadoVerificador implements VerificadorPassword {
+
+    static final String ID = "sha256";
+
+    private static final int BYTES_HASH = 32;
+
+    @Override
+    public String id() {
+        return ID;
+    }
+
+    @Override
+    public boolean verificar(String password, HashPassword almacenado) {
+        if (!ID.equals(almacenado.parametros) || almacenado.salt == null
+                || almacenado.hash == null || almacenado.hash.length != BYTES_HASH) {
+            return false;
+        }
+        try {
+            // Mismos bytes que el cálculo original: charset por defecto sobre el password
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(almacenado.salt);
+            return Codec.igualesTiempoConstante(digest.digest(password.getBytes()), almacenado.hash);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    @Override
+    public boolean necesitaRehash(HashPassword almacenado) {
+        return true;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.myapplication.seguridad;
+
+/**
+ * Comprueba contraseñas contra hashes de un algoritmo, identificado en
+ * {@link HashPassword#parametros} por {@link #id()}. Los esquemas que ya no
+ * generan hashes, como el SHA-256 legado, solo implementan esta interfaz.
+ */
+public interface VerificadorPassword {
+
+    /** Algoritmo de los hashes que reconoce, por ejemplo "pbkdf2-sha256". */
+    String id();
+
+    /** Compara en tiempo constante; false si el hash no es de este algoritmo o está mal formado. */
+    boolean verificar(String password, HashPassword almacenado);
+
+    /** true si el hash es válido pero se generó con parámetros más débiles que los actuales. */
+    boolean necesitaRehash(HashPassword almacenado);
+}
@@ -0,0 +1,33 @@
+package com.example.myapplication
+
+import org.junit.Assume.assumeTrue
+import java.lang.management.ManagementFactory
+
+/**
+ * Bytes asignados por el hilo actual, con el contador por hilo de la JVM
+ * (HotSpot). Lo comparten los benchmarks de asignaciones de los tests locales.
+ */
+object MedidorAsignaciones {
+
+    private val mxBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+    /** Salta el test si la JVM no cuenta asignaciones por hilo. */
+    fun requerir() {
+        assumeTrue("La JVM no mide asignaciones por hilo",
+            mxBean != null && mxBean.isThreadAllocatedMemorySupported)
+    }
+
+    /**
+     * Promedio de bytes asignados en cada llamada a operacion, que recibe el
+     * número de iteración. Las rondas de calentamiento no se cuentan, para que
+     * el JIT ya haya compilado el camino medido.
+     */
+    fun medir(calentamiento: Int, operaciones: Int, operacion: (Int) -> Unit): Double {
+        val bean = checkNotNull(mxBean)
+        val hilo = Thread.currentThread().id
+        repeat(calentamiento) { operacion(it) }
+        val inicio = bean.getThreadAllocatedBytes(hilo)
+        repeat(operaciones) { operacion(it) }
+        return (bean.getThreadAllocatedBytes(hilo) - inicio).toDouble() / operaciones
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.myapplication.database
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class CacheConsultasTest {
+
+    private val invalidacion = InvalidacionTablas()
+
+    private fun poner(cache: CacheConsultas, clave: String, peso: Long, vararg tablas: String) {
+        cache.poner(clave, "valor $clave", peso, cache.versionDe(*tablas), *tablas)
+    }
+
+    @Test
+    fun desalojaLaUsadaHaceMasTiempoAlPasarDelPeso() {
+        val cache = CacheConsultas(300, invalidacion)
+        poner(cache, "a", 100, "productos")
+        poner(cache, "b", 100, "productos")
+        poner(cache, "c", 100, "productos")
+        assertNotNull(cache.obtener("a")) // "b" queda como la menos reciente
+
+        poner(cache, "d", 100, "productos")
+        assertNull(cache.obtener("b"))
+        assertNotNull(cache.obtener("a"))
+        assertNotNull(cache.obtener("c"))
+        assertNotNull(cache.obtener("d"))
+        assertEquals(1, cache.desalojos())
+        assertEquals(300, cache.bytes())
+        assertEquals(4, cache.aciertos())
+        assertEquals(1, cache.fallos())
+    }
+
+    @Test
+    fun escribirUnaTablaSoloDescartaLoQueLaLeyo() {
+        val cache = CacheConsultas(1_000, invalidacion)
+        invalidacion.observar(cache::invalidar, "productos", "usuarios")
+        poner(cache, "categorias", 100, "productos")
+        poner(cache, "roles", 100, "usuarios")
+
+        invalidacion.notificar("productos", "estadisticas")
+        assertNull(cache.obtener("categorias"))
+        assertEquals("valor roles", cache.obtener("roles"))
+        assertEquals(1, cache.invalidadas())
+    }
+
+    @Test
+    fun sinAvisoLaVersionIgualDescartaLoViejo() {
+        // Nadie llama a invalidar(): la lectura compara la versión por su cuenta
+        val cache = CacheConsultas(1_000, invalidacion)
+        poner(cache, "producto\u00001", 100, "productos")
+        invalidacion.notificar("productos")
+        assertNull(cache.obtener("producto\u00001"))
+        assertEquals(0, cache.bytes())
+    }
+
+    @Test
+    fun noGuardaUnResultadoLeidoAntesDeUnaEscritura() {
+        val cache = CacheConsultas(1_000, invalidacion)
+        val version = cache.versionDe("productos")
+        invalidacion.notificar("productos") // escritura mientras se consultaba
+        cache.poner("categorias", "viejo", 100, version, "productos")
+        assertNull(cache.obtener("categorias"))
+    }
+
+    @Test
+    fun unValorMasGrandeQueLaCacheNoSeGuarda() {
+        val cache = CacheConsultas(100, invalidacion)
+        poner(cache, "a", 50, "productos")
+        poner(cache, "enorme", 101, "productos")
+        assertNull(cache.obtener("enorme"))
+        assertNotNull(cache.obtener("a"))
+    }
+}
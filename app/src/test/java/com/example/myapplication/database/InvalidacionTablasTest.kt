@@ -0,0 +1,55 @@
+package com.example.myapplication.database
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class InvalidacionTablasTest {
+
+    @Test
+    fun versionSoloCambiaConEscriturasDeSusTablas() {
+        val invalidacion = InvalidacionTablas()
+        val inicial = invalidacion.version("productos", "carrito")
+
+        invalidacion.notificar("usuarios")
+        assertEquals(inicial, invalidacion.version("productos", "carrito"))
+
+        invalidacion.notificar("carrito")
+        val trasCarrito = invalidacion.version("productos", "carrito")
+        assertNotEquals(inicial, trasCarrito)
+
+        // Una tabla repetida en el mismo aviso cuenta una vez
+        invalidacion.notificar("productos", "productos")
+        assertEquals(trasCarrito + 1, invalidacion.version("productos", "carrito"))
+    }
+
+    @Test
+    fun observadorRecibeSoloLasTablasQueObserva() {
+        val invalidacion = InvalidacionTablas()
+        val recibidos = ArrayList<Set<String>>()
+        val suscripcion = invalidacion.observar({ recibidos.add(it) }, "productos", "carrito")
+
+        invalidacion.notificar("usuarios", "estadisticas")
+        invalidacion.notificar("productos", "estadisticas")
+        assertEquals(listOf(setOf("productos")), recibidos)
+
+        suscripcion.cancelar()
+        invalidacion.notificar("carrito")
+        assertEquals(1, recibidos.size)
+    }
+
+    @Test
+    fun origenEsElHiloQuePidioLaEscritura() {
+        val invalidacion = InvalidacionTablas()
+        val otro = Thread()
+        val origenes = ArrayList<Thread>()
+        invalidacion.observar({ origenes.add(invalidacion.origen()) }, "carrito")
+
+        invalidacion.notificarDesde(otro, "carrito")
+        invalidacion.notificar("carrito")
+
+        assertSame(otro, origenes[0])
+        assertSame(Thread.currentThread(), origenes[1])
+        // Fuera del aviso no queda rastro del hilo prestado
+        assertSame(Thread.currentThread(), invalidacion.origen())
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.myapplication.models
+
+import com.example.myapplication.MedidorAsignaciones
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Bytes asignados por los textos de precio que pide cada fila, antes y
+ * después del texto precalculado en Producto. "Antes" reproduce lo que
+ * hacían los adapters: "%.2f".format por cada enlace, que crea un Formatter,
+ * su StringBuilder y el BigDecimal intermedio.
+ *
+ * Solo cubre los textos; lo que cuesta enlazar la fila entera (vistas y
+ * Glide incluidos) lo mide ListaFramesBenchmark en el dispositivo.
+ */
+class AsignacionesFormatoBenchmark {
+
+    companion object {
+        private const val CALENTAMIENTO = 20_000
+        private const val OPERACIONES = 20_000
+    }
+
+    private val productos = List(1_000) { i ->
+        Producto(id = i, nombre = "Producto $i", precioCentavos = 1_999L + i * 137L, stock = 10, cantidad = 1 + i % 7)
+    }
+
+    // Destino de cada texto para que el JIT no elimine el formateo
+    private var ultimo: CharSequence = ""
+
+    @Test
+    fun textosDePrecioAsignanMenos() {
+        MedidorAsignaciones.requerir()
+
+        // Fila del catálogo: solo el precio
+        val catalogoAntes = medir { p -> ultimo = "$${"%.2f".format(Dinero.aDecimal(p.precioCentavos))}" }
+        val catalogoDespues = medir { p -> ultimo = p.precioTexto }
+
+        // Fila del carrito: precio y subtotal
+        val carritoAntes = medir { p ->
+            val precio = Dinero.aDecimal(p.precioCentavos)
+            ultimo = "$${"%.2f".format(precio)}"
+            ultimo = "Subtotal: $${"%.2f".format(precio * p.cantidad)}"
+        }
+        val carritoDespues = medir { p ->
+            ultimo = p.precioTexto
+            ultimo = Dinero.formatear("Subtotal: ", p.subtotalCentavos())
+        }
+
+        println("Bytes asignados en textos de precio por fila (antes -> después)")
+        println("  catálogo: ${"%.0f".format(catalogoAntes)} -> ${"%.0f".format(catalogoDespues)}")
+        println("  carrito:  ${"%.0f".format(carritoAntes)} -> ${"%.0f".format(carritoDespues)}")
+
+        assertTrue("catálogo: $catalogoDespues >= $catalogoAntes", catalogoDespues < catalogoAntes)
+        assertTrue("carrito: $carritoDespues >= $carritoAntes", carritoDespues < carritoAntes)
+        // El texto ya existe: el precio del catálogo no debería asignar nada
+        assertTrue("catálogo asigna $catalogoDespues bytes por fila", catalogoDespues < 8)
+    }
+
+    private fun medir(textos: (Producto) -> Unit): Double {
+        return MedidorAsignaciones.medir(CALENTAMIENTO, OPERACIONES) { textos(productos[it % productos.size]) }
+    }
+}
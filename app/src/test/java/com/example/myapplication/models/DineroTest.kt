@@ -0,0 +1,94 @@
+package com.example.myapplication.models
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.math.BigDecimal
+import java.text.NumberFormat
+import java.util.Locale
+import java.util.Random
+
+class DineroTest {
+
+    companion object {
+        private const val CARRITOS = 1_000_000
+        private const val PRECIO_MAXIMO = 1_000_000 // $10,000.00
+    }
+
+    /**
+     * Propiedad: para cualquier carrito, el total que se mantiene con
+     * diferencias (como ProductosEnCarrito) y el que se vuelve a sumar
+     * coinciden exactamente con la suma en BigDecimal. La semilla es fija
+     * para que un fallo se pueda reproducir.
+     */
+    @Test
+    fun totalesDeCarritosAleatoriosSonExactos() {
+        val random = Random(20_261_018L)
+        val pesos = NumberFormat.getCurrencyInstance(Locale("es", "MX"))
+        val lineas = ArrayList<Producto>(8)
+
+        repeat(CARRITOS) { carrito ->
+            lineas.clear()
+            var corriente = 0L
+            repeat(1 + random.nextInt(8)) { i ->
+                val producto = Producto(id = i, nombre = "P$i", precioCentavos = random.nextInt(PRECIO_MAXIMO).toLong(),
+                    stock = 100, cantidad = 1 + random.nextInt(20))
+                lineas.add(producto)
+                corriente += producto.subtotalCentavos()
+            }
+            // Cambios de cantidad aplicados como diferencia sobre el total corriente
+            repeat(random.nextInt(4)) {
+                val i = random.nextInt(lineas.size)
+                val nueva = lineas[i].copy(cantidad = random.nextInt(30))
+                corriente += nueva.subtotalCentavos() - lineas[i].subtotalCentavos()
+                lineas[i] = nueva
+            }
+
+            val sumado = lineas.sumOf { it.subtotalCentavos() }
+            var oraculo = BigDecimal.ZERO
+            for (p in lineas) {
+                oraculo += BigDecimal.valueOf(p.precioCentavos, 2) * BigDecimal.valueOf(p.cantidad.toLong())
+            }
+
+            assertEquals(sumado, corriente)
+            if (BigDecimal.valueOf(sumado, 2).compareTo(oraculo) != 0) {
+                fail("carrito $carrito: $sumado centavos, se esperaba $oraculo")
+            }
+            if (carrito % 1_000 == 0) {
+                assertEquals(pesos.format(oraculo), Dinero.formatear(sumado))
+            }
+        }
+    }
+
+    @Test
+    fun textoIdaYVuelta() {
+        val random = Random(7L)
+        repeat(100_000) {
+            val centavos = random.nextLong() / 1_000
+            assertEquals(centavos, Dinero.deTexto(Dinero.aTexto(centavos)))
+        }
+        for (centavos in longArrayOf(0, 5, -5, Long.MAX_VALUE, Long.MIN_VALUE)) {
+            assertEquals(centavos, Dinero.deTexto(Dinero.aTexto(centavos)))
+        }
+    }
+
+    @Test
+    fun conversionesRedondeanAlCentavo() {
+        assertEquals(10L, Dinero.deDecimal(0.1))
+        assertEquals(129_999L, Dinero.deDecimal(1299.99))
+        assertEquals(1L, Dinero.deDecimal(0.005))
+        assertEquals(1_250L, Dinero.deTexto("12.5"))
+        assertEquals(1_999L, Dinero.deTexto(" 19.99 "))
+        assertNull(Dinero.deTexto("12,50"))
+        assertNull(Dinero.deTexto(""))
+        assertNull(Dinero.deTexto(null))
+    }
+
+    @Test
+    fun formato() {
+        assertEquals("$0.00", Dinero.formatear(0))
+        assertEquals("$0.05", Dinero.formatear(5))
+        assertEquals("$1,299.99", Dinero.formatear(129_999))
+        assertEquals("-$1,234,567.89", Dinero.formatear(-123_456_789))
+        assertEquals("1299.99", Dinero.aTexto(129_999))
+    }
+}
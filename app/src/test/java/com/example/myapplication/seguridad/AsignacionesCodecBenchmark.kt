@@ -0,0 +1,85 @@
+package com.example.myapplication.seguridad
+
+import com.example.myapplication.MedidorAsignaciones
+import org.junit.Assert.*
+import org.junit.Test
+import java.security.MessageDigest
+import java.security.SecureRandom
+
+/**
+ * Bytes asignados por operación en el camino de autenticación, antes y
+ * después de Codec. "Antes" reproduce el código que tenía DatabaseHelper:
+ * String.format por byte y un SecureRandom nuevo por salt, con el hash en hex.
+ *
+ * Se mide con MedidorAsignaciones, tras rondas de calentamiento para que el
+ * JIT ya haya compilado ambos caminos. Los resultados se imprimen en la
+ * salida del test.
+ */
+class AsignacionesCodecBenchmark {
+
+    companion object {
+        private const val CALENTAMIENTO = 20_000
+        private const val OPERACIONES = 20_000
+        private const val PASSWORD = "admin123"
+    }
+
+    @Test
+    fun saltHexYLoginAsignanMenos() {
+        MedidorAsignaciones.requerir()
+
+        val hash = MessageDigest.getInstance("SHA-256").digest(PASSWORD.toByteArray())
+        val saltBuffer = ByteArray(16)
+        val hexBuffer = CharArray(hash.size * 2)
+
+        val saltAntes = medir { generarSaltAntes() }
+        val saltDespues = medir { Codec.salt(saltBuffer) }
+
+        val hexAntes = medir { hexAntes(hash) }
+        val hexDespues = medir { Codec.codificarHex(hash, hexBuffer, 0) }
+
+        val saltLegado = generarSaltAntes()
+        val guardadoAntes = hashPasswordAntes(PASSWORD, saltLegado)
+        val guardadoDespues = HashPassword.desdeTexto(guardadoAntes, saltLegado)
+        val verificador = Sha256LegadoVerificador()
+        val loginAntes = medir { check(hashPasswordAntes(PASSWORD, saltLegado) == guardadoAntes) }
+        val loginDespues = medir { check(verificador.verificar(PASSWORD, guardadoDespues)) }
+
+        println("Bytes asignados por operación (antes -> después)")
+        println("  salt de 16 bytes: ${"%.0f".format(saltAntes)} -> ${"%.0f".format(saltDespues)}")
+        println("  hex de 32 bytes:  ${"%.0f".format(hexAntes)} -> ${"%.0f".format(hexDespues)}")
+        println("  login:            ${"%.0f".format(loginAntes)} -> ${"%.0f".format(loginDespues)}")
+
+        assertTrue("salt: $saltDespues >= $saltAntes", saltDespues < saltAntes)
+        assertTrue("hex: $hexDespues >= $hexAntes", hexDespues < hexAntes)
+        assertTrue("login: $loginDespues >= $loginAntes", loginDespues < loginAntes)
+        // Sobre un buffer preasignado el codificador no debería asignar nada
+        assertTrue("hex sobre buffer asigna $hexDespues bytes", hexDespues < 8)
+    }
+
+    private fun medir(operacion: () -> Unit): Double {
+        return MedidorAsignaciones.medir(CALENTAMIENTO, OPERACIONES) { operacion() }
+    }
+
+    // Copias del código anterior de DatabaseHelper, solo como referencia de la medición
+
+    private fun generarSaltAntes(): String {
+        val random = SecureRandom()
+        val salt = ByteArray(16)
+        random.nextBytes(salt)
+        return hexAntes(salt)
+    }
+
+    private fun hashPasswordAntes(password: String, salt: String): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(salt.toByteArray())
+        return hexAntes(digest.digest(password.toByteArray()))
+    }
+
+    private fun hexAntes(bytes: ByteArray): String {
+        val sb = StringBuilder()
+        for (b in bytes) {
+            sb.append(String.format("%02x", b))
+        }
+        return sb.toString()
+    }
+}
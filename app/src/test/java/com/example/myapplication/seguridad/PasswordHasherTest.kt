@@ -0,0 +1,99 @@
+package com.example.myapplication.seguridad
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.security.MessageDigest
+
+class PasswordHasherTest {
+
+    @Test
+    fun pbkdf2CoincideConVectoresConocidos() {
+        val salt = "salt".toByteArray()
+        assertEquals("120fb6cffcf8b32c43e7225256c4f837a86548c92ccc35480805987cb70be17b",
+            Codec.codificarHex(Pbkdf2PasswordHasher.derivar("password", salt, 1)))
+        assertEquals("ae4d0c95af6b46d32d0adff928f06dd02a303f8ef3c251dfd6e2d85a95474c43",
+            Codec.codificarHex(Pbkdf2PasswordHasher.derivar("password", salt, 2)))
+        assertEquals("c5e478d59288c841aa530db6845c4c8d962893a001ce4e11a4963873aa98134a",
+            Codec.codificarHex(Pbkdf2PasswordHasher.derivar("password", salt, 4096)))
+    }
+
+    @Test
+    fun hexIdaYVueltaSobreBuffers() {
+        val bytes = ByteArray(256) { it.toByte() }
+        val chars = CharArray(2 + bytes.size * 2)
+        Codec.codificarHex(bytes, chars, 2)
+        val hex = String(chars, 2, bytes.size * 2)
+        assertEquals("000102", hex.substring(0, 6))
+        assertEquals("feff", hex.substring(hex.length - 4))
+
+        val destino = ByteArray(bytes.size + 1)
+        assertEquals(bytes.size, Codec.decodificarHex(hex.uppercase(), destino, 1))
+        assertArrayEquals(bytes, destino.copyOfRange(1, destino.size))
+        assertThrows(IllegalArgumentException::class.java) { Codec.decodificarHex("0g") }
+        assertThrows(IllegalArgumentException::class.java) { Codec.decodificarHex("abc") }
+    }
+
+    @Test
+    fun hashVersionadoSeVerifica() {
+        val hasher = Pbkdf2PasswordHasher(1000)
+        val hash = hasher.hash("secreto123")
+
+        assertEquals("pbkdf2-sha256$1000", hash.parametros)
+        assertEquals(16, hash.salt.size)
+        assertEquals(32, hash.hash.size)
+        assertTrue(PasswordHashers.verificar(hasher, "secreto123", hash))
+        assertFalse(PasswordHashers.verificar(hasher, "secreto124", hash))
+        assertFalse("El salt debe ser aleatorio", hash.salt.contentEquals(hasher.hash("secreto123").salt))
+    }
+
+    @Test
+    fun rehashCuandoSubenLasIteraciones() {
+        val hash = Pbkdf2PasswordHasher(1000).hash("secreto123")
+        val actual = Pbkdf2PasswordHasher(2000)
+
+        // Se sigue verificando con las iteraciones que trae el hash
+        assertTrue(PasswordHashers.verificar(actual, "secreto123", hash))
+        assertTrue(PasswordHashers.necesitaRehash(actual, hash))
+        assertFalse(PasswordHashers.necesitaRehash(actual, actual.hash("secreto123")))
+    }
+
+    @Test
+    fun hashLegadoSeConvierteYPideRehash() {
+        val salt = "0123456789abcdef0123456789abcdef"
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(salt.toByteArray())
+        val legado = HashPassword.desdeTexto(Codec.codificarHex(digest.digest("admin123".toByteArray())), salt)
+        val actual = Pbkdf2PasswordHasher(1000)
+
+        assertEquals("sha256", legado.parametros)
+        assertTrue(PasswordHashers.verificar(actual, "admin123", legado))
+        assertFalse(PasswordHashers.verificar(actual, "admin124", legado))
+        assertTrue(PasswordHashers.necesitaRehash(actual, legado))
+    }
+
+    @Test
+    fun hashTextoPbkdf2SeConvierte() {
+        // Formato en texto de la versión 14 de la base
+        val hasher = Pbkdf2PasswordHasher(1000)
+        val binario = hasher.hash("secreto123")
+        val texto = "pbkdf2-sha256$1000$" + Codec.codificarHex(binario.salt) + "$" + Codec.codificarHex(binario.hash)
+
+        val convertido = HashPassword.desdeTexto(texto, null)
+        assertEquals(binario.parametros, convertido.parametros)
+        assertArrayEquals(binario.salt, convertido.salt)
+        assertArrayEquals(binario.hash, convertido.hash)
+        assertTrue(PasswordHashers.verificar(hasher, "secreto123", convertido))
+    }
+
+    @Test
+    fun hashMalFormadoNoVerifica() {
+        val actual = Pbkdf2PasswordHasher(1000)
+        val salt = ByteArray(16)
+        assertFalse(PasswordHashers.verificar(actual, "x", null))
+        assertFalse(PasswordHashers.verificar(actual, "x", HashPassword("pbkdf2-sha256$1000", salt, ByteArray(3))))
+        assertFalse(PasswordHashers.verificar(actual, "x", HashPassword("pbkdf2-sha256\$abc", salt, ByteArray(32))))
+        assertFalse(PasswordHashers.verificar(actual, "x", HashPassword("md5", salt, ByteArray(16))))
+        assertFalse(PasswordHashers.verificar(actual, "x", HashPassword("", null, ByteArray(0))))
+        assertThrows(IllegalArgumentException::class.java) { HashPassword.desdeTexto("pbkdf2-sha256\$zz", null) }
+    }
+}